@@ -1,16 +1,32 @@
 package org.webbitserver;
 
-import java.util.regex.Pattern;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 
+/**
+ * A message to send to an {@link EventSourceConnection}.
+ * <p/>
+ * The message is encoded as UTF-8 while it is being built, so sending it needs no further copying. Once built, the
+ * same message can be sent to any number of connections and is only encoded once.
+ */
 public class EventSourceMessage {
-    private static final Pattern START = Pattern.compile("^", Pattern.MULTILINE);
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
     private static final String DATA = "data: ";
     private static final String COLON = ": ";
     private static final String ID = "id";
     private static final String EVENT = "event";
     private static final String RETRY = "retry";
-    private static final String LF = "\n";
-    private final StringBuilder payload = new StringBuilder();
+    private static final byte LF = '\n';
+    // Spare room left when growing, enough for the id, event and final line break that usually follow the data.
+    private static final int SLACK = 64;
+    private static final byte[] EMPTY = new byte[0];
+
+    private byte[] bytes = EMPTY;
+    private int length;
+    private String id;
+    // Whether bytes have been handed out by toByteBuffer(), so must be copied before being changed.
+    private boolean shared;
 
     public EventSourceMessage() {
     }
@@ -36,9 +52,17 @@ public class EventSourceMessage {
 
     public EventSourceMessage id(String id) {
         appendFieldValue(EventSourceMessage.ID, id);
+        this.id = id == null || id.isEmpty() ? null : id;
         return this;
     }
 
+    /**
+     * The id this message sets, or null if it doesn't set one.
+     */
+    public String id() {
+        return id;
+    }
+
     public EventSourceMessage event(String event) {
         appendFieldValue(EventSourceMessage.EVENT, event);
         return this;
@@ -50,20 +74,115 @@ public class EventSourceMessage {
     }
 
     public String build() {
-        return payload.toString() + "\n";
+        terminate();
+        return new String(bytes, 0, length + 1, UTF_8);
+    }
+
+    /**
+     * The complete message as UTF-8, without copying. Adding to the message afterwards does not change buffers
+     * already returned.
+     */
+    public ByteBuffer toByteBuffer() {
+        terminate();
+        shared = true;
+        return ByteBuffer.wrap(bytes, 0, length + 1).asReadOnlyBuffer();
+    }
+
+    /**
+     * Puts the blank line that ends the message after the payload, without making it part of the payload.
+     */
+    private void terminate() {
+        if (bytes.length == length) {
+            grow(1);
+        }
+        bytes[length] = LF;
     }
 
     private void appendFieldValue(String field, String value) {
-        payload.append(field);
+        append(field);
         if (value != null && !value.isEmpty()) {
-            payload.append(EventSourceMessage.COLON);
-            payload.append(value);
+            append(EventSourceMessage.COLON);
+            append(value);
         }
-        payload.append(EventSourceMessage.LF);
+        appendByte(LF);
     }
 
+    /**
+     * Writes the value with the field at the start of each line. CR, LF and CRLF all end a line, as they do for
+     * the client, and are written as LF. A line break at the very end doesn't start another line.
+     */
     private void prependOnAllLines(String field, String value) {
-        String multilineField = EventSourceMessage.START.matcher(value).replaceAll(field);
-        payload.append(multilineField).append(EventSourceMessage.LF);
+        int end = value.length();
+        int lineStart = 0;
+        for (int i = 0; i < end; i++) {
+            char c = value.charAt(i);
+            if (c == '\n' || c == '\r') {
+                append(field);
+                append(value, lineStart, i);
+                appendByte(LF);
+                if (c == '\r' && i + 1 < end && value.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart < end) {
+            append(field);
+            append(value, lineStart, end);
+        }
+        appendByte(LF);
+    }
+
+    private void append(String s) {
+        append(s, 0, s.length());
+    }
+
+    /**
+     * Encodes the chars as UTF-8, with unpaired surrogates replaced by '?' as String.getBytes does.
+     */
+    private void append(String s, int start, int end) {
+        // Room for one byte per char, plus more as wider chars turn up.
+        ensureCapacity(end - start);
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes[length++] = (byte) c;
+                continue;
+            }
+            ensureCapacity(4 + end - i - 1);
+            byte[] b = bytes;
+            if (c < 0x800) {
+                b[length++] = (byte) (0xC0 | (c >> 6));
+                b[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                b[length++] = (byte) (0xF0 | (codePoint >> 18));
+                b[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                b[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                b[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                b[length++] = '?';
+            } else {
+                b[length++] = (byte) (0xE0 | (c >> 12));
+                b[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void appendByte(byte b) {
+        ensureCapacity(1);
+        bytes[length++] = b;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (shared || bytes.length - length < extra) {
+            grow(extra);
+        }
+    }
+
+    private void grow(int extra) {
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra + SLACK));
+        shared = false;
     }
 }
@@ -8,4 +8,16 @@ public interface HttpConnection extends Executor, DataHolder {
     HttpConnection close();
 
     Executor handlerExecutor();
+
+    /**
+     * Whether more can be sent without being queued in memory. A connection stops being writable when the client
+     * reads more slowly than data is sent to it.
+     */
+    boolean writable();
+
+    /**
+     * Runs the task once, on the handler executor, as soon as the connection is {@link #writable()}: straight away
+     * if it is now, or otherwise when the client has caught up.
+     */
+    void whenWritable(Runnable task);
 }
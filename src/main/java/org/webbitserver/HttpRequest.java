@@ -17,6 +17,39 @@ public interface HttpRequest extends DataHolder {
 
     String COOKIE_HEADER = "Cookie";
 
+    /**
+     * Receives each HTTP header in turn from {@link HttpRequest#visitHeaders(HeaderVisitor)}.
+     */
+    interface HeaderVisitor {
+        /**
+         * @return true to carry on visiting, false to stop.
+         */
+        boolean header(String name, String value);
+    }
+
+    /**
+     * Points in handling a request whose timing is recorded by {@link HttpRequest#phaseNanos(Phase)}.
+     */
+    enum Phase {
+        /**
+         * The whole request, including any body, has been read and decoded.
+         */
+        DECODED,
+        /**
+         * The first handler has been called, after waiting in the handler executor's queue.
+         */
+        DISPATCHED,
+        /**
+         * The first byte of the response has gone to the socket, which may have waited on responses to earlier
+         * requests pipelined on the same connection.
+         */
+        FIRST_BYTE_WRITTEN,
+        /**
+         * The last byte of the response has gone to the socket.
+         */
+        LAST_BYTE_FLUSHED
+    }
+
     String uri();
 
     /**
@@ -46,6 +79,14 @@ public interface HttpRequest extends DataHolder {
      */
     boolean hasHeader(String name);
 
+    /**
+     * Pass every HTTP header, in the order received, to the visitor until it returns false.
+     * <p/>
+     * Unlike {@link #allHeaders()} and {@link #headers(String)} this does not need to build a List, so prefer it
+     * when inspecting headers on every request.
+     */
+    void visitHeaders(HeaderVisitor visitor);
+
     /**
      * @return all inbound cookies
      */
@@ -147,13 +188,31 @@ public interface HttpRequest extends DataHolder {
 
     /**
      * A unique identifier for this request. This should be treated as an opaque object,
-     * that can be used to track the lifecycle of a request.
+     * that can be used to track the lifecycle of a request. Each request on a keep-alive
+     * connection has its own id.
      */
     Object id();
 
+    /**
+     * Identifies the connection this request arrived on, which is shared by all the requests
+     * made over a keep-alive connection.
+     */
+    long connectionId();
+
     /**
      * Timestamp (millis since epoch) of when this request was first received by the server.
      */
     long timestamp();
 
+    /**
+     * {@link System#nanoTime()} of when this request was first received by the server, to measure latency against,
+     * as the clock behind {@link #timestamp()} may jump and only counts milliseconds.
+     */
+    long startNanos();
+
+    /**
+     * Nanoseconds from {@link #startNanos()} until this request reached the phase, or -1 if it hasn't (yet).
+     */
+    long phaseNanos(Phase phase);
+
 }
@@ -64,6 +64,14 @@ public interface HttpResponse {
      */
     boolean containsHeader(String name);
 
+    /**
+     * Whether the content may be compressed, if the client accepts it and the server's compression policy allows.
+     * Defaults to true. Turn it off for content that is already compressed but has a type the policy doesn't know
+     * about, or that must reach the client byte for byte. Responses sent with {@link #write(String)} are never
+     * compressed.
+     */
+    HttpResponse compress(boolean compress);
+
     /**
      * Adds a cookie
      *
@@ -98,6 +106,9 @@ public interface HttpResponse {
 
     /**
      * Write binary based content back to the client.
+     * <p/>
+     * A read-only buffer is taken as a promise that its content won't change, so it may be sent without being
+     * copied. This lets a handler share one pre-encoded buffer between all its responses.
      *
      * @see #content(String)
      */
@@ -1,6 +1,13 @@
 package org.webbitserver;
 
+import org.webbitserver.helpers.SniConfig;
+import org.webbitserver.helpers.SslConfig;
+import org.webbitserver.metrics.WebServerMetrics;
+
 import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <p>Configures an event based webserver.</p>
@@ -53,6 +60,20 @@ public interface WebServer extends Endpoint<WebServer> {
      */
     WebServer add(HttpHandler handler);
 
+    /**
+     * Remove an HttpHandler that was added with {@link #add(HttpHandler)}. This may be done while the server is
+     * running: requests already being handled carry on with the handlers they started with, and new requests will
+     * no longer reach it. Connections that have already become WebSockets or EventSources are not affected.
+     */
+    WebServer remove(HttpHandler handler);
+
+    /**
+     * Replace all the HttpHandlers at once, in the order given. This may be done while the server is running, to
+     * change routes without a restart: each request sees either the old handlers or the new ones, never a mix of
+     * the two, and open WebSocket and EventSource connections stay open.
+     */
+    WebServer replaceHandlers(List<? extends HttpHandler> handlers);
+
     /**
      * Add an HttpHandler that will only respond to a certain path (e.g "/some/page").
      * <p/>
@@ -94,12 +115,53 @@ public interface WebServer extends Endpoint<WebServer> {
      */
     int getPort();
 
+    /**
+     * Stops the server at once, closing every open connection whatever it is in the middle of. Use
+     * {@link #drain(long, TimeUnit)} to let clients finish first.
+     */
+    @Override
+    Future<? extends WebServer> stop();
+
+    /**
+     * Stops the server gracefully: stops accepting connections, asks the clients of the open ones to go away,
+     * then waits up to the timeout for them to do so before stopping as {@link #stop()} does.
+     * <ul>
+     * <li>HTTP connections that are idle are closed straight away. Requests already received are finished, with
+     * a "Connection: close" header, and then the connection is closed.</li>
+     * <li>WebSocket clients are sent a close frame with status 1001 (going away).</li>
+     * <li>EventSource clients are told to reconnect after a random delay within the
+     * {@link #drainReconnectDelay(long, long) reconnect delay}, so they don't all come back at once, and their
+     * streams are closed.</li>
+     * </ul>
+     */
+    Future<? extends WebServer> drain(long timeout, TimeUnit unit);
+
+    /**
+     * The range within which {@link #drain(long, TimeUnit)} spreads EventSource clients' reconnection delays.
+     * Defaults to 1 to 10 seconds.
+     */
+    WebServer drainReconnectDelay(long minMillis, long maxMillis);
+
     /**
      * Number of milliseconds before a stale HTTP keep-alive connection is closed by the server. A HTTP connection
      * is considered stale if it remains open without sending more data within the timeout window.
      */
     WebServer staleConnectionTimeout(long millis);
 
+    /**
+     * Start recording connection, request and WebSocket statistics. Must be called before the server is started.
+     * When metrics are not enabled nothing is recorded and there is no overhead.
+     *
+     * @see #metrics()
+     * @see org.webbitserver.handler.MetricsHandler
+     */
+    WebServer enableMetrics();
+
+    /**
+     * @return the metrics recorded by this server, or null if {@link #enableMetrics()} has not been called
+     */
+    WebServerMetrics metrics();
+
     /**
      * Setup SSL/TLS handler
      *
@@ -112,4 +174,22 @@ public interface WebServer extends Endpoint<WebServer> {
      * @see #setupSsl(String, String, String)
      */
     WebServer setupSsl(InputStream keyStore, String storePass, String keyPass) throws WebbitException;
+
+    /**
+     * Setup SSL/TLS handler with control over protocols, cipher suites, session resumption and how
+     * each connection's {@link javax.net.ssl.SSLEngine} is created.
+     *
+     * @return current WebServer instance
+     * @see SslConfig
+     */
+    WebServer setupSsl(SslConfig sslConfig);
+
+    /**
+     * Setup SSL/TLS handler that picks the certificate for each connection from the hostname the client asks
+     * for (SNI), so one listener can serve many hostnames.
+     *
+     * @return current WebServer instance
+     * @see SniConfig
+     */
+    WebServer setupSsl(SniConfig sniConfig);
 }
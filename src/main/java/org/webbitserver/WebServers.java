@@ -1,6 +1,7 @@
 package org.webbitserver;
 
 import org.webbitserver.netty.NettyWebServer;
+import org.webbitserver.netty.Transport;
 
 import java.net.SocketAddress;
 import java.net.URI;
@@ -48,4 +49,33 @@ public class WebServers {
         return new NettyWebServer(executor, socketAddress, publicUri);
     }
 
+    /**
+     * Returns a new {@link WebServer} object, which runs on the provided port
+     * and does its socket I/O with the given transport.
+     *
+     * @param port
+     * @param transport
+     * @return {@link WebServer} object
+     * @see NettyWebServer#transport(Transport)
+     */
+    public static WebServer createWebServer(int port, Transport transport) {
+        return new NettyWebServer(port).transport(transport);
+    }
+
+    /**
+     * Returns a new {@link WebServer} object, adding the executor to the list
+     * of executor services, running on the stated socket address, accessible
+     * from the provided public URI and doing its socket I/O with the given transport.
+     *
+     * @param executor
+     * @param socketAddress
+     * @param publicUri
+     * @param transport
+     * @return {@link WebServer} object
+     * @see NettyWebServer#transport(Transport)
+     */
+    public static WebServer createWebServer(Executor executor, SocketAddress socketAddress, URI publicUri, Transport transport) {
+        return new NettyWebServer(executor, socketAddress, publicUri).transport(transport);
+    }
+
 }
@@ -5,18 +5,17 @@ import org.webbitserver.HttpControl;
 import org.webbitserver.HttpHandler;
 import org.webbitserver.HttpRequest;
 import org.webbitserver.HttpResponse;
-
-import java.util.Date;
+import org.webbitserver.helpers.DateHelper;
 
 /**
- * Handler that sets the HTTP 'Server' response header.
+ * Handler that sets the HTTP 'Date' response header, unless it has already been set.
  */
 public class DateHeaderHandler implements HttpHandler {
 
     @Override
     public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control) throws Exception {
         if (!response.containsHeader(HttpHeaders.Names.DATE)) {
-            response.header(HttpHeaders.Names.DATE, new Date());
+            response.header(HttpHeaders.Names.DATE, DateHelper.rfc1123Now());
         }
         control.nextHandler();
     }
@@ -0,0 +1,36 @@
+package org.webbitserver.handler;
+
+import org.webbitserver.HttpControl;
+import org.webbitserver.HttpHandler;
+import org.webbitserver.HttpRequest;
+import org.webbitserver.HttpResponse;
+import org.webbitserver.metrics.TextMetricsReporter;
+import org.webbitserver.metrics.WebServerMetrics;
+
+/**
+ * Serves the current server metrics as plain text.
+ * <pre>
+ * webServer.enableMetrics();
+ * webServer.add("/metrics", new MetricsHandler(webServer.metrics()));
+ * </pre>
+ *
+ * @see TextMetricsReporter
+ */
+public class MetricsHandler implements HttpHandler {
+
+    private final WebServerMetrics metrics;
+
+    public MetricsHandler(WebServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control) throws Exception {
+        TextMetricsReporter reporter = new TextMetricsReporter();
+        metrics.report(reporter);
+        response.header("Content-Type", "text/plain; charset=UTF-8")
+                .header("Cache-Control", "no-cache")
+                .content(reporter.toString())
+                .end();
+    }
+}
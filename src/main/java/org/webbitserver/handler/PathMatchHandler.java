@@ -4,6 +4,7 @@ import org.webbitserver.HttpControl;
 import org.webbitserver.HttpHandler;
 import org.webbitserver.HttpRequest;
 import org.webbitserver.HttpResponse;
+import org.webbitserver.metrics.WebServerMetrics;
 
 import java.net.URI;
 import java.util.regex.Matcher;
@@ -28,6 +29,7 @@ public class PathMatchHandler implements HttpHandler {
         String path = URI.create(request.uri()).getPath();
         Matcher matcher = pathPattern.matcher(path);
         if (matcher.matches()) {
+            request.data(WebServerMetrics.ROUTE, pathPattern.pattern());
             httpHandler.handleHttpRequest(request, response, control);
         } else {
             control.nextHandler();
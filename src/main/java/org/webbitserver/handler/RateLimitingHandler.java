@@ -0,0 +1,95 @@
+package org.webbitserver.handler;
+
+import org.webbitserver.HttpControl;
+import org.webbitserver.HttpHandler;
+import org.webbitserver.HttpRequest;
+import org.webbitserver.HttpResponse;
+import org.webbitserver.helpers.RateLimiter;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits how often each client may make requests, answering those over the limit with 429 Too Many Requests and a
+ * Retry-After header, so they never reach the handlers after this one.
+ * <p/>
+ * Clients are told apart by a {@link Key}: by default their IP address, or else a header (such as
+ * X-Forwarded-For behind a proxy) or request data (such as the {@link
+ * org.webbitserver.handler.authentication.BasicAuthenticationHandler#USERNAME} set by an earlier handler).
+ * Requests without a key are let through.
+ *
+ * @see RateLimiter
+ * @see RateLimitingWebSocketHandler
+ */
+public class RateLimitingHandler implements HttpHandler {
+
+    /**
+     * Picks out what a request's rate is limited by.
+     */
+    public abstract static class Key {
+        /**
+         * @return the key, or null for requests that aren't limited
+         */
+        public abstract Object of(HttpRequest request);
+
+        public static Key remoteAddress() {
+            return new Key() {
+                @Override
+                public Object of(HttpRequest request) {
+                    SocketAddress address = request.remoteAddress();
+                    return address instanceof InetSocketAddress ? ((InetSocketAddress) address).getAddress() : address;
+                }
+            };
+        }
+
+        public static Key header(final String name) {
+            return new Key() {
+                @Override
+                public Object of(HttpRequest request) {
+                    return request.header(name);
+                }
+            };
+        }
+
+        public static Key data(final String key) {
+            return new Key() {
+                @Override
+                public Object of(HttpRequest request) {
+                    return request.data(key);
+                }
+            };
+        }
+    }
+
+    private final RateLimiter limiter;
+    private final Key key;
+
+    public RateLimitingHandler(RateLimiter limiter) {
+        this(limiter, Key.remoteAddress());
+    }
+
+    public RateLimitingHandler(RateLimiter limiter, Key key) {
+        this.limiter = limiter;
+        this.key = key;
+    }
+
+    @Override
+    public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control) throws Exception {
+        Object k = key.of(request);
+        long wait = k == null ? 0 : limiter.tryAcquire(k);
+        if (wait == 0) {
+            control.nextHandler();
+        } else {
+            response.status(429)
+                    .header("Retry-After", retryAfterSeconds(wait))
+                    .content("Too Many Requests")
+                    .end();
+        }
+    }
+
+    static long retryAfterSeconds(long waitNanos) {
+        long second = TimeUnit.SECONDS.toNanos(1);
+        return (waitNanos + second - 1) / second;
+    }
+}
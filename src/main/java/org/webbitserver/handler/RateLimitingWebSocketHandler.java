@@ -0,0 +1,80 @@
+package org.webbitserver.handler;
+
+import org.webbitserver.WebSocketConnection;
+import org.webbitserver.WebSocketHandler;
+import org.webbitserver.helpers.RateLimiter;
+
+/**
+ * Limits how often each client may send WebSocket messages and pings. Those over the limit are passed to
+ * {@link #rateLimited(WebSocketConnection)} instead of the wrapped handler, which by default just drops them;
+ * override it to close the connection instead, say.
+ * <p/>
+ * Clients are told apart by a {@link RateLimitingHandler.Key} applied to the request that opened the connection,
+ * so they can share a {@link RateLimiter} with a {@link RateLimitingHandler}.
+ */
+public class RateLimitingWebSocketHandler implements WebSocketHandler {
+    private final RateLimiter limiter;
+    private final RateLimitingHandler.Key key;
+    private final WebSocketHandler handler;
+
+    public RateLimitingWebSocketHandler(RateLimiter limiter, WebSocketHandler handler) {
+        this(limiter, RateLimitingHandler.Key.remoteAddress(), handler);
+    }
+
+    public RateLimitingWebSocketHandler(RateLimiter limiter, RateLimitingHandler.Key key, WebSocketHandler handler) {
+        this.limiter = limiter;
+        this.key = key;
+        this.handler = handler;
+    }
+
+    @Override
+    public void onOpen(WebSocketConnection connection) throws Throwable {
+        handler.onOpen(connection);
+    }
+
+    @Override
+    public void onClose(WebSocketConnection connection) throws Throwable {
+        handler.onClose(connection);
+    }
+
+    @Override
+    public void onMessage(WebSocketConnection connection, String msg) throws Throwable {
+        if (allowed(connection)) {
+            handler.onMessage(connection, msg);
+        }
+    }
+
+    @Override
+    public void onMessage(WebSocketConnection connection, byte[] msg) throws Throwable {
+        if (allowed(connection)) {
+            handler.onMessage(connection, msg);
+        }
+    }
+
+    @Override
+    public void onPing(WebSocketConnection connection, byte[] msg) throws Throwable {
+        if (allowed(connection)) {
+            handler.onPing(connection, msg);
+        }
+    }
+
+    @Override
+    public void onPong(WebSocketConnection connection, byte[] msg) throws Throwable {
+        handler.onPong(connection, msg);
+    }
+
+    /**
+     * Called instead of the wrapped handler for each message over the limit.
+     */
+    protected void rateLimited(WebSocketConnection connection) {
+    }
+
+    private boolean allowed(WebSocketConnection connection) {
+        Object k = key.of(connection.httpRequest());
+        if (k == null || limiter.tryAcquire(k) == 0) {
+            return true;
+        }
+        rateLimited(connection);
+        return false;
+    }
+}
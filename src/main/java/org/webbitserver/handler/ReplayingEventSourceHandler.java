@@ -0,0 +1,48 @@
+package org.webbitserver.handler;
+
+import org.webbitserver.EventSourceConnection;
+import org.webbitserver.EventSourceHandler;
+import org.webbitserver.helpers.EventSourceHistory;
+
+/**
+ * Catches up EventSource clients that reconnect with a Last-Event-ID, by replaying what they missed from an
+ * {@link EventSourceHistory}, before passing the connection on to the wrapped handler.
+ * <p/>
+ * The replay and the wrapped handler's onOpen both run while holding the history's lock. So if the application
+ * adds each message to the history and sends it to its connections while holding the same lock, a reconnecting
+ * client gets every message exactly once:
+ * <pre>
+ * synchronized (history) {
+ *     history.add(message);
+ *     for (EventSourceConnection connection : connections) {
+ *         connection.send(message);
+ *     }
+ * }
+ * </pre>
+ * Clients that are too far behind to be replayed to are passed on all the same. The handler can tell them from the
+ * "replayed" data on the connection, which holds the result of {@link EventSourceHistory#replay(EventSourceConnection)}.
+ */
+public class ReplayingEventSourceHandler implements EventSourceHandler {
+    public static final String REPLAYED = "replayed";
+
+    private final EventSourceHistory history;
+    private final EventSourceHandler handler;
+
+    public ReplayingEventSourceHandler(EventSourceHistory history, EventSourceHandler handler) {
+        this.history = history;
+        this.handler = handler;
+    }
+
+    @Override
+    public void onOpen(EventSourceConnection connection) throws Exception {
+        synchronized (history) {
+            connection.data(REPLAYED, history.replay(connection));
+            handler.onOpen(connection);
+        }
+    }
+
+    @Override
+    public void onClose(EventSourceConnection connection) throws Exception {
+        handler.onClose(connection);
+    }
+}
@@ -5,12 +5,16 @@ import org.webbitserver.HttpHandler;
 import org.webbitserver.HttpRequest;
 import org.webbitserver.HttpResponse;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
+/**
+ * Responds with the same content every time. The body is encoded once, up front, and shared by every response.
+ */
 public class StringHttpHandler implements HttpHandler {
 
     private final String contentType;
-    private final String body;
+    private final ByteBuffer body;
     private final Charset charset;
 
     public StringHttpHandler(String contentType, String body) {
@@ -18,16 +22,16 @@ public class StringHttpHandler implements HttpHandler {
     }
 
     public StringHttpHandler(String contentType, String body, Charset charset) {
-        this.contentType = contentType;
+        this.contentType = contentType + "; charset=" + charset.name();
         this.charset = charset;
-        this.body = body;
+        this.body = ByteBuffer.wrap(body.getBytes(charset)).asReadOnlyBuffer();
     }
 
     @Override
     public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control) {
         response.charset(charset)
-                .header("Content-Type", contentType + "; charset=" + charset.name())
-                .header("Content-Length", body.length())
+                .header("Content-Type", contentType)
+                .header("Content-Length", body.remaining())
                 .content(body)
                 .end();
     }
@@ -0,0 +1,554 @@
+package org.webbitserver.handler.logging;
+
+import org.webbitserver.EventSourceConnection;
+import org.webbitserver.HttpRequest;
+import org.webbitserver.HttpRequest.Phase;
+import org.webbitserver.WebSocketConnection;
+import org.webbitserver.wrapper.EventSourceConnectionWrapper;
+import org.webbitserver.wrapper.HttpRequestWrapper;
+import org.webbitserver.wrapper.WebSocketConnectionWrapper;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Wraps any {@link LogSink} so that its IO happens off the handler thread.
+ * <p/>
+ * Each event is handed to a dedicated writer thread through a lock-free ring buffer, and the writer thread passes it
+ * on to the wrapped sink. The time of the event is taken when it is queued, and Webbit's own sinks log that time
+ * rather than the time the writer gets to it. The request's URI, data values and phase timings are copied as the event
+ * is queued too, because the handler may go on changing them; the sink sees the copy, with everything else read
+ * through to the request. If the wrapped sink is {@link Flushable}, as all of Webbit's sinks are, it is flushed once
+ * {@link #flushEvery(int)} events have been written or {@link #flushInterval(long)} has passed, whichever is first.
+ * A wrapped {@link SimpleLogSink} is told to stop flushing every entry itself.
+ * <p/>
+ * What happens when the buffer is full is decided by the {@link OverflowPolicy}.
+ * Call {@link #close()} to write out anything still buffered and stop the writer thread.
+ */
+public class AsyncLogSink implements ResponseLogSink {
+
+    public enum OverflowPolicy {
+        /**
+         * Wait for the writer to make room. Nothing is lost, but a slow disk slows down the caller.
+         */
+        BLOCK,
+        /**
+         * Silently discard the event.
+         */
+        DROP,
+        /**
+         * Discard the event, but count it. The count is available from {@link AsyncLogSink#dropped()}, and is logged
+         * as a {@value #DROPPED} event against the next event's request when there is room again.
+         */
+        COUNT
+    }
+
+    public static final int DEFAULT_CAPACITY = 8192;
+    public static final String DROPPED = "DROPPED-LOG-ENTRIES";
+
+    private final LogSink sink;
+    private final RingBuffer<Event> buffer;
+    private final OverflowPolicy overflowPolicy;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+
+    private volatile int flushEvery = 256;
+    private volatile long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(100);
+    private volatile boolean writerSleeping = false;
+    private volatile boolean closed = false;
+
+    public AsyncLogSink(LogSink sink, int capacity, OverflowPolicy overflowPolicy) {
+        if (sink instanceof SimpleLogSink) {
+            ((SimpleLogSink) sink).flushEachEntry(false);
+        }
+        this.sink = sink;
+        this.buffer = new RingBuffer<Event>(capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.writer = new Thread(new Writer(), "WEBBIT-LOG-WRITER");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public AsyncLogSink(LogSink sink) {
+        this(sink, DEFAULT_CAPACITY, OverflowPolicy.COUNT);
+    }
+
+    /**
+     * Flush after this many events have been written since the last flush.
+     */
+    public AsyncLogSink flushEvery(int entries) {
+        this.flushEvery = entries;
+        return this;
+    }
+
+    /**
+     * Flush events that have been written but not yet flushed after this long.
+     */
+    public AsyncLogSink flushInterval(long millis) {
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        return this;
+    }
+
+    /**
+     * Number of events discarded because the buffer was full.
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public void httpStart(HttpRequest request) {
+        enqueue(new Event(new RequestSnapshot(request)) {
+            @Override
+            void writeTo(LogSink sink) {
+                sink.httpStart(request);
+            }
+        });
+    }
+
+    @Override
+    public void httpEnd(HttpRequest request) {
+        enqueue(new Event(new RequestSnapshot(request)) {
+            @Override
+            void writeTo(LogSink sink) {
+                sink.httpEnd(request);
+            }
+        });
+    }
+
+    @Override
+    public void httpEnd(HttpRequest request, final int status, final long bytesSent) {
+        enqueue(new Event(new RequestSnapshot(request)) {
+            @Override
+            void writeTo(LogSink sink) {
+                LoggingHandler.httpEnd(sink, request, status, bytesSent);
+            }
+        });
+    }
+
+    @Override
+    public void webSocketConnectionOpen(WebSocketConnection connection) {
+        final WebSocketConnection snapshot = new WebSocketConnectionSnapshot(connection);
+        enqueue(new Event(snapshot.httpRequest()) {
+            @Override
+            void writeTo(LogSink sink) {
+                sink.webSocketConnectionOpen(snapshot);
+            }
+        });
+    }
+
+    @Override
+    public void webSocketConnectionClose(WebSocketConnection connection) {
+        final WebSocketConnection snapshot = new WebSocketConnectionSnapshot(connection);
+        enqueue(new Event(snapshot.httpRequest()) {
+            @Override
+            void writeTo(LogSink sink) {
+                sink.webSocketConnectionClose(snapshot);
+            }
+        });
+    }
+
+    @Override
+    public void webSocketInboundData(WebSocketConnection connection, final String data) {
+        final WebSocketConnection snapshot = new WebSocketConnectionSnapshot(connection);
+        enqueue(new Event(snapshot.httpRequest()) {
+            @Override
+            void writeTo(LogSink sink) {
+                sink.webSocketInboundData(snapshot, data);
+            }
+        });
+    }
+
+    @Override
+    public void webSocketInboundData(WebSocketConnection connection, final byte[] message) {
+        final WebSocketConnection snapshot = new WebSocketConnectionSnapshot(connection);
+        enqueue(new Event(snapshot.httpRequest()) {
+            @Override
+            void writeTo(LogSink sink) {
+                sink.webSocketInboundData(snapshot, message);
+            }
+        });
+    }
+
+    @Override
+    public void webSocketInboundPing(WebSocketConnection connection, final byte[] msg) {
+        final WebSocketConnection snapshot = new WebSocketConnectionSnapshot(connection);
+        enqueue(new Event(snapshot.httpRequest()) {
+            @Override
+            void writeTo(LogSink sink) {
+                sink.webSocketInboundPing(snapshot, msg);
+            }
+        });
+    }
+
+    @Override
+    public void webSocketInboundPong(WebSocketConnection connection, final byte[] msg) {
+        final WebSocketConnection snapshot = new WebSocketConnectionSnapshot(connection);
+        enqueue(new Event(snapshot.httpRequest()) {
+            @Override
+            void writeTo(LogSink sink) {
+                sink.webSocketInboundPong(snapshot, msg);
+            }
+        });
+    }
+
+    @Override
+    public void webSocketOutboundData(WebSocketConnection connection, final String data) {
+        final WebSocketConnection snapshot = new WebSocketConnectionSnapshot(connection);
+        enqueue(new Event(snapshot.httpRequest()) {
+            @Override
+            void writeTo(LogSink sink) {
+                sink.webSocketOutboundData(snapshot, data);
+            }
+        });
+    }
+
+    @Override
+    public void webSocketOutboundData(WebSocketConnection connection, final byte[] data) {
+        final WebSocketConnection snapshot = new WebSocketConnectionSnapshot(connection);
+        enqueue(new Event(snapshot.httpRequest()) {
+            @Override
+            void writeTo(LogSink sink) {
+                sink.webSocketOutboundData(snapshot, data);
+            }
+        });
+    }
+
+    @Override
+    public void webSocketOutboundPing(WebSocketConnection connection, final byte[] msg) {
+        final WebSocketConnection snapshot = new WebSocketConnectionSnapshot(connection);
+        enqueue(new Event(snapshot.httpRequest()) {
+            @Override
+            void writeTo(LogSink sink) {
+                sink.webSocketOutboundPing(snapshot, msg);
+            }
+        });
+    }
+
+    @Override
+    public void webSocketOutboundPong(WebSocketConnection connection, final byte[] msg) {
+        final WebSocketConnection snapshot = new WebSocketConnectionSnapshot(connection);
+        enqueue(new Event(snapshot.httpRequest()) {
+            @Override
+            void writeTo(LogSink sink) {
+                sink.webSocketOutboundPong(snapshot, msg);
+            }
+        });
+    }
+
+    @Override
+    public void error(HttpRequest request, final Throwable error) {
+        enqueue(new Event(new RequestSnapshot(request)) {
+            @Override
+            void writeTo(LogSink sink) {
+                sink.error(request, error);
+            }
+        });
+    }
+
+    @Override
+    public void custom(HttpRequest request, final String action, final String data) {
+        enqueue(new Event(new RequestSnapshot(request)) {
+            @Override
+            void writeTo(LogSink sink) {
+                sink.custom(request, action, data);
+            }
+        });
+    }
+
+    @Override
+    public void eventSourceConnectionOpen(EventSourceConnection connection) {
+        final EventSourceConnection snapshot = new EventSourceConnectionSnapshot(connection);
+        enqueue(new Event(snapshot.httpRequest()) {
+            @Override
+            void writeTo(LogSink sink) {
+                sink.eventSourceConnectionOpen(snapshot);
+            }
+        });
+    }
+
+    @Override
+    public void eventSourceConnectionClose(EventSourceConnection connection) {
+        final EventSourceConnection snapshot = new EventSourceConnectionSnapshot(connection);
+        enqueue(new Event(snapshot.httpRequest()) {
+            @Override
+            void writeTo(LogSink sink) {
+                sink.eventSourceConnectionClose(snapshot);
+            }
+        });
+    }
+
+    @Override
+    public void eventSourceOutboundData(EventSourceConnection connection, final String data) {
+        final EventSourceConnection snapshot = new EventSourceConnectionSnapshot(connection);
+        enqueue(new Event(snapshot.httpRequest()) {
+            @Override
+            void writeTo(LogSink sink) {
+                sink.eventSourceOutboundData(snapshot, data);
+            }
+        });
+    }
+
+    private void enqueue(Event event) {
+        if (closed) {
+            return;
+        }
+        while (!buffer.offer(event)) {
+            if (overflowPolicy == OverflowPolicy.BLOCK && !closed) {
+                wakeWriter();
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            } else {
+                if (overflowPolicy == OverflowPolicy.COUNT) {
+                    dropped.incrementAndGet();
+                }
+                return;
+            }
+        }
+        if (writerSleeping) {
+            wakeWriter();
+        }
+    }
+
+    private void wakeWriter() {
+        writerSleeping = false;
+        LockSupport.unpark(writer);
+    }
+
+    /**
+     * Writes out everything still buffered, then stops the writer thread.
+     */
+    public void close() throws InterruptedException {
+        closed = true;
+        wakeWriter();
+        writer.join();
+    }
+
+    /**
+     * A call to the sink, made later on the writer thread.
+     */
+    private abstract static class Event {
+        final HttpRequest request;
+        final long millis = System.currentTimeMillis();
+        final long nanos = System.nanoTime();
+
+        Event(HttpRequest request) {
+            this.request = request;
+        }
+
+        abstract void writeTo(LogSink sink);
+    }
+
+    /**
+     * The parts of a request that can change while it is handled, as they were when the event was queued.
+     */
+    private static class RequestSnapshot extends HttpRequestWrapper {
+        private final String uri;
+        private final Map<String, Object> data;
+        private final long[] phaseNanos = new long[Phase.values().length];
+
+        RequestSnapshot(HttpRequest request) {
+            super(request);
+            this.uri = request.uri();
+            this.data = new HashMap<String, Object>(request.data());
+            for (Phase phase : Phase.values()) {
+                phaseNanos[phase.ordinal()] = request.phaseNanos(phase);
+            }
+        }
+
+        @Override
+        public String uri() {
+            return uri;
+        }
+
+        @Override
+        public Map<String, Object> data() {
+            return data;
+        }
+
+        @Override
+        public Object data(String key) {
+            return data.get(key);
+        }
+
+        @Override
+        public RequestSnapshot data(String key, Object value) {
+            data.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Set<String> dataKeys() {
+            return data.keySet();
+        }
+
+        @Override
+        public long phaseNanos(Phase phase) {
+            return phaseNanos[phase.ordinal()];
+        }
+    }
+
+    private static class WebSocketConnectionSnapshot extends WebSocketConnectionWrapper {
+        private final RequestSnapshot request;
+
+        WebSocketConnectionSnapshot(WebSocketConnection connection) {
+            super(connection);
+            this.request = new RequestSnapshot(connection.httpRequest());
+        }
+
+        @Override
+        public HttpRequest httpRequest() {
+            return request;
+        }
+
+        @Override
+        public Map<String, Object> data() {
+            return request.data();
+        }
+
+        @Override
+        public Object data(String key) {
+            return request.data(key);
+        }
+
+        @Override
+        public WebSocketConnectionSnapshot data(String key, Object value) {
+            request.data(key, value);
+            return this;
+        }
+
+        @Override
+        public Set<String> dataKeys() {
+            return request.dataKeys();
+        }
+    }
+
+    private static class EventSourceConnectionSnapshot extends EventSourceConnectionWrapper {
+        private final RequestSnapshot request;
+
+        EventSourceConnectionSnapshot(EventSourceConnection connection) {
+            super(connection);
+            this.request = new RequestSnapshot(connection.httpRequest());
+        }
+
+        @Override
+        public HttpRequest httpRequest() {
+            return request;
+        }
+
+        @Override
+        public Map<String, Object> data() {
+            return request.data();
+        }
+
+        @Override
+        public Object data(String key) {
+            return request.data(key);
+        }
+
+        @Override
+        public EventSourceConnectionSnapshot data(String key, Object value) {
+            request.data(key, value);
+            return this;
+        }
+
+        @Override
+        public Set<String> dataKeys() {
+            return request.dataKeys();
+        }
+    }
+
+    private class Writer implements Runnable {
+        private Flushable flushable = sink instanceof Flushable ? (Flushable) sink : null;
+        private int unflushed = 0;
+        private long lastFlush = System.nanoTime();
+        private long reportedDropped = 0;
+
+        @Override
+        public void run() {
+            try {
+                while (!closed || !buffer.isEmpty()) {
+                    if (!drain()) {
+                        idle();
+                    }
+                }
+                flushIfNeeded(true);
+            } finally {
+                LogClock.reset();
+            }
+        }
+
+        /**
+         * @return whether anything was written
+         */
+        private boolean drain() {
+            boolean wroteAny = false;
+            Event event;
+            while ((event = buffer.poll()) != null) {
+                LogClock.set(event.millis, event.nanos);
+                reportDropped(event.request);
+                write(event);
+                wroteAny = true;
+                flushIfNeeded(false);
+            }
+            flushIfNeeded(false);
+            return wroteAny;
+        }
+
+        private void idle() {
+            long wait = unflushed > 0 ? flushIntervalNanos - (System.nanoTime() - lastFlush) : flushIntervalNanos;
+            if (wait <= 0) {
+                flushIfNeeded(true);
+                return;
+            }
+            writerSleeping = true;
+            if (buffer.isEmpty() && !closed) {
+                LockSupport.parkNanos(wait);
+            }
+            writerSleeping = false;
+            if (unflushed > 0 && System.nanoTime() - lastFlush >= flushIntervalNanos) {
+                flushIfNeeded(true);
+            }
+        }
+
+        private void reportDropped(HttpRequest request) {
+            long total = dropped.get();
+            if (total != reportedDropped) {
+                sink.custom(request, DROPPED, String.valueOf(total - reportedDropped));
+                reportedDropped = total;
+            }
+        }
+
+        private void write(Event event) {
+            try {
+                event.writeTo(sink);
+                unflushed++;
+            } catch (RuntimeException e) {
+                // Keep going: one bad event shouldn't stop everything after it being logged.
+                e.printStackTrace();
+            }
+        }
+
+        private void flushIfNeeded(boolean force) {
+            if (flushable == null || unflushed == 0) {
+                return;
+            }
+            if (force || unflushed >= flushEvery || System.nanoTime() - lastFlush >= flushIntervalNanos) {
+                try {
+                    flushable.flush();
+                } catch (IOException e) {
+                    // If we can't log, be rude! Then stop trying.
+                    e.printStackTrace();
+                    flushable = null;
+                }
+                unflushed = 0;
+                lastFlush = System.nanoTime();
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.webbitserver.handler.logging;
+
+import org.webbitserver.HttpRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Writes compact binary log records, for high-volume logging where text is too slow to produce or too large to keep.
+ * <p/>
+ * The stream starts with a header: the magic bytes {@code WBLOG}, a format version byte, then the number of
+ * logged data values and their names. Each record that follows is:
+ * <pre>
+ * varint  record length (excluding this field)
+ * long    timestamp (millis since epoch)
+ * varint  latency in millis since the request was received
+ * short   HTTP status, or -1
+ * varlong bytes sent + 1 (0 when unknown)
+ * string  request id, remote address, action, method, uri, data
+ * string  one per logged data value, in header order
+ * </pre>
+ * Strings are a varint length + 1 (0 for null) followed by UTF-8 bytes. Varints are unsigned LEB128.
+ * Each record, length included, is assembled in a reusable buffer and written with a single {@code write} call.
+ * Records are not flushed as they are written: call {@link #flush()}, or wrap the sink in an {@link AsyncLogSink},
+ * which flushes in batches.
+ */
+public class BinaryLogSink extends StructuredLogSink {
+
+    public static final byte[] MAGIC = {'W', 'B', 'L', 'O', 'G'};
+    public static final int VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final OutputStream out;
+    private final RecordBuffer record = new RecordBuffer();
+    private final DataOutputStream recordData = new DataOutputStream(record);
+
+    public BinaryLogSink(OutputStream out, String... dataValuesToLog) {
+        super(dataValuesToLog);
+        this.out = out;
+        try {
+            out.write(MAGIC);
+            out.write(VERSION);
+            writeVarLong(out, dataValuesToLog.length);
+            for (String key : dataValuesToLog) {
+                writeString(out, key);
+            }
+            out.flush();
+        } catch (IOException e) {
+            trouble = true;
+            panic(e);
+        }
+    }
+
+    @Override
+    protected synchronized void writeRecord(HttpRequest request, String action, String data,
+                                            long now, long latency, int status, long bytesSent) throws IOException {
+        record.start();
+        recordData.writeLong(now);
+        writeVarLong(record, Math.max(0, latency));
+        recordData.writeShort(status);
+        writeVarLong(record, bytesSent + 1);
+        writeString(record, request.id() == null ? null : request.id().toString());
+        writeString(record, address(request.remoteAddress()));
+        writeString(record, action);
+        writeString(record, request.method());
+        writeString(record, request.uri());
+        writeString(record, data);
+        for (String key : dataValuesToLog) {
+            Object value = request.data(key);
+            writeString(record, value == null ? null : value.toString());
+        }
+        record.writeFramed(out);
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    private static void writeString(OutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        writeVarLong(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Leaves room at the start for the record's length, which is filled in once the record is complete, so that
+     * the length and record go out together without copying the record.
+     */
+    private static class RecordBuffer extends ByteArrayOutputStream {
+        // A varint of an int length takes at most 5 bytes.
+        private static final int LENGTH_ROOM = 5;
+
+        RecordBuffer() {
+            super(256);
+        }
+
+        void start() {
+            count = LENGTH_ROOM;
+        }
+
+        void writeFramed(OutputStream out) throws IOException {
+            long length = count - LENGTH_ROOM;
+            int start = LENGTH_ROOM - varLongSize(length);
+            int position = start;
+            while ((length & ~0x7FL) != 0) {
+                buf[position++] = (byte) ((length & 0x7F) | 0x80);
+                length >>>= 7;
+            }
+            buf[position] = (byte) length;
+            out.write(buf, start, count - start);
+        }
+
+        private static int varLongSize(long value) {
+            int size = 1;
+            while ((value & ~0x7FL) != 0) {
+                value >>>= 7;
+                size++;
+            }
+            return size;
+        }
+    }
+}
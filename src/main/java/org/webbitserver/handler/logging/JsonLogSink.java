@@ -0,0 +1,201 @@
+package org.webbitserver.handler.logging;
+
+import org.webbitserver.HttpRequest;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Writes one JSON object per line:
+ * <pre>
+ * {"time":"2012-02-20T10:15:30.042Z","timestamp":1329732930042,"latency_ms":3,"id":12,"connection":5,
+ *  "remote":"127.0.0.1","action":"HTTP-END","method":"GET","uri":"/index.html","status":200,"bytes":1042,
+ *  "dispatch_us":85,"user":"joe"}
+ * </pre>
+ * (shown wrapped here). {@code dispatch_us} is how long the request waited for the handler executor. Keys for the
+ * configured data values are escaped once at construction, and the date part of the timestamp is only formatted once
+ * per second. Each line is appended to the output in one call and is not flushed: call {@link #flush()}, or wrap the
+ * sink in an {@link AsyncLogSink}, which flushes in batches.
+ */
+public class JsonLogSink extends StructuredLogSink {
+
+    private final Appendable out;
+    private final String lineSeparator = System.getProperty("line.separator", "\n");
+    private final String[] dataKeys;
+    private final StringBuilder line = new StringBuilder(256);
+    private final CachedIsoTimestamp timestamps = new CachedIsoTimestamp();
+
+    public JsonLogSink(Appendable out, String... dataValuesToLog) {
+        super(dataValuesToLog);
+        this.out = out;
+        this.dataKeys = new String[dataValuesToLog.length];
+        for (int i = 0; i < dataValuesToLog.length; i++) {
+            StringBuilder key = new StringBuilder(",");
+            appendString(key, dataValuesToLog[i]);
+            dataKeys[i] = key.append(':').toString();
+        }
+    }
+
+    public JsonLogSink(String... dataValuesToLog) {
+        this(System.out, dataValuesToLog);
+    }
+
+    @Override
+    protected synchronized void writeRecord(HttpRequest request, String action, String data,
+                                            long now, long latency, int status, long bytesSent) throws IOException {
+        StringBuilder line = this.line;
+        line.setLength(0);
+        line.append("{\"time\":\"");
+        timestamps.append(line, now);
+        line.append("\",\"timestamp\":").append(now);
+        line.append(",\"latency_ms\":").append(latency);
+        line.append(",\"id\":");
+        appendValue(line, request.id());
+        line.append(",\"connection\":").append(request.connectionId());
+        line.append(",\"remote\":");
+        appendString(line, address(request.remoteAddress()));
+        line.append(",\"action\":");
+        appendString(line, action);
+        line.append(",\"method\":");
+        appendString(line, request.method());
+        line.append(",\"uri\":");
+        appendString(line, request.uri());
+        if (status != -1) {
+            line.append(",\"status\":").append(status);
+        }
+        if (bytesSent != -1) {
+            line.append(",\"bytes\":").append(bytesSent);
+        }
+        if (status != -1) {
+            long dispatched = request.phaseNanos(HttpRequest.Phase.DISPATCHED);
+            if (dispatched != -1) {
+                line.append(",\"dispatch_us\":").append((dispatched - request.phaseNanos(HttpRequest.Phase.DECODED)) / 1000);
+            }
+        }
+        if (data != null) {
+            line.append(",\"data\":");
+            appendString(line, data);
+        }
+        for (int i = 0; i < dataValuesToLog.length; i++) {
+            Object value = request.data(dataValuesToLog[i]);
+            if (value != null) {
+                line.append(dataKeys[i]);
+                appendValue(line, value);
+            }
+        }
+        line.append('}').append(lineSeparator);
+
+        out.append(line);
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (out instanceof Flushable) {
+            ((Flushable) out).flush();
+        }
+    }
+
+    private static void appendValue(StringBuilder out, Object value) {
+        if (value instanceof Number || value instanceof Boolean) {
+            out.append(value);
+        } else {
+            appendString(out, value == null ? null : value.toString());
+        }
+    }
+
+    static void appendString(StringBuilder out, String value) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append("\\u00");
+                        out.append(Character.forDigit(c >> 4, 16));
+                        out.append(Character.forDigit(c & 0xF, 16));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * Formats ISO 8601 UTC timestamps, reusing the formatted date and time for the current second.
+     */
+    static class CachedIsoTimestamp {
+        private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+        private static class Second {
+            final long second;
+            final String prefix;
+
+            Second(long second, String prefix) {
+                this.second = second;
+                this.prefix = prefix;
+            }
+        }
+
+        private volatile Second current = new Second(Long.MIN_VALUE, null);
+
+        void append(StringBuilder out, long millis) {
+            long second = millis / 1000;
+            Second cached = current;
+            if (cached.second != second) {
+                cached = new Second(second, format(second * 1000));
+                current = cached;
+            }
+            int fraction = (int) (millis - second * 1000);
+            out.append(cached.prefix);
+            if (fraction < 100) {
+                out.append('0');
+            }
+            if (fraction < 10) {
+                out.append('0');
+            }
+            out.append(fraction).append('Z');
+        }
+
+        private static String format(long millis) {
+            Calendar calendar = Calendar.getInstance(UTC);
+            calendar.setTimeInMillis(millis);
+            StringBuilder result = new StringBuilder(20);
+            result.append(calendar.get(Calendar.YEAR)).append('-');
+            pad(result, calendar.get(Calendar.MONTH) + 1).append('-');
+            pad(result, calendar.get(Calendar.DAY_OF_MONTH)).append('T');
+            pad(result, calendar.get(Calendar.HOUR_OF_DAY)).append(':');
+            pad(result, calendar.get(Calendar.MINUTE)).append(':');
+            pad(result, calendar.get(Calendar.SECOND)).append('.');
+            return result.toString();
+        }
+
+        private static StringBuilder pad(StringBuilder out, int value) {
+            if (value < 10) {
+                out.append('0');
+            }
+            return out.append(value);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.webbitserver.handler.logging;
+
+/**
+ * When the event being logged happened. That is now, except on an {@link AsyncLogSink}'s writer thread, where it is
+ * when the event was queued, so that sinks it wraps log the right time and latency however far behind it is.
+ */
+class LogClock {
+    private static final ThreadLocal<long[]> queuedAt = new ThreadLocal<long[]>();
+
+    static long currentTimeMillis() {
+        long[] time = queuedAt.get();
+        return time == null ? System.currentTimeMillis() : time[0];
+    }
+
+    static long nanoTime() {
+        long[] time = queuedAt.get();
+        return time == null ? System.nanoTime() : time[1];
+    }
+
+    /**
+     * Makes the current thread report this time until {@link #reset()}.
+     */
+    static void set(long millis, long nanos) {
+        long[] time = queuedAt.get();
+        if (time == null) {
+            time = new long[2];
+            queuedAt.set(time);
+        }
+        time[0] = millis;
+        time[1] = nanos;
+    }
+
+    static void reset() {
+        queuedAt.remove();
+    }
+}
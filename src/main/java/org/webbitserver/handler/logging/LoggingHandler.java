@@ -11,8 +11,13 @@ import org.webbitserver.WebSocketHandler;
 import org.webbitserver.wrapper.HttpControlWrapper;
 import org.webbitserver.wrapper.HttpResponseWrapper;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
 public class LoggingHandler implements HttpHandler {
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     private final LogSink logSink;
 
     public LoggingHandler(LogSink logSink) {
@@ -28,15 +33,41 @@ public class LoggingHandler implements HttpHandler {
         logSink.httpStart(request);
 
         HttpResponseWrapper responseWrapper = new HttpResponseWrapper(response) {
+            private long bytesSent = 0;
+
+            @Override
+            public HttpResponseWrapper content(String content) {
+                bytesSent += byteLength(content, charset());
+                return super.content(content);
+            }
+
+            @Override
+            public HttpResponseWrapper write(String content) {
+                bytesSent += byteLength(content, UTF_8);
+                return super.write(content);
+            }
+
+            @Override
+            public HttpResponseWrapper content(byte[] content) {
+                bytesSent += content.length;
+                return super.content(content);
+            }
+
+            @Override
+            public HttpResponseWrapper content(ByteBuffer buffer) {
+                bytesSent += buffer.remaining();
+                return super.content(buffer);
+            }
+
             @Override
             public HttpResponseWrapper end() {
-                logSink.httpEnd(request);
+                httpEnd(logSink, request, status(), bytesSent);
                 return super.end();
             }
 
             @Override
             public HttpResponseWrapper error(Throwable error) {
-                logSink.httpEnd(request);
+                httpEnd(logSink, request, 500, bytesSent);
                 logSink.error(request, error);
                 return super.error(error);
             }
@@ -72,5 +103,35 @@ public class LoggingHandler implements HttpHandler {
         control.nextHandler(request, responseWrapper, controlWrapper);
     }
 
+    static void httpEnd(LogSink logSink, HttpRequest request, int status, long bytesSent) {
+        if (logSink instanceof ResponseLogSink) {
+            ((ResponseLogSink) logSink).httpEnd(request, status, bytesSent);
+        } else {
+            logSink.httpEnd(request);
+        }
+    }
+
+    // Counts UTF-8 without encoding, as that is what almost every response uses.
+    private static long byteLength(String content, Charset charset) {
+        if (!charset.equals(UTF_8)) {
+            return content.getBytes(charset).length;
+        }
+        long length = 0;
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < content.length() && Character.isLowSurrogate(content.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
 
 }
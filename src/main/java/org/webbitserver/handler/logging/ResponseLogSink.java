@@ -0,0 +1,16 @@
+package org.webbitserver.handler.logging;
+
+import org.webbitserver.HttpRequest;
+
+/**
+ * A {@link LogSink} that also wants each response's status and size. {@link LoggingHandler} calls
+ * {@link #httpEnd(HttpRequest, int, long)} instead of {@link #httpEnd(HttpRequest)} on sinks that implement this.
+ */
+public interface ResponseLogSink extends LogSink {
+
+    /**
+     * @param status    HTTP status code of the response
+     * @param bytesSent number of body bytes written, or -1 if not known
+     */
+    void httpEnd(HttpRequest request, int status, long bytesSent);
+}
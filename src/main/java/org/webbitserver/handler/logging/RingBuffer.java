@@ -0,0 +1,78 @@
+package org.webbitserver.handler.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free queue for many producers and a single consumer.
+ * <p/>
+ * Each slot carries a sequence number telling producers whether it is free and the consumer whether it has been
+ * published, so neither side ever blocks the other.
+ */
+class RingBuffer<T> {
+    private final AtomicReferenceArray<T> elements;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private volatile long tail = 0;
+
+    RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        elements = new AtomicReferenceArray<T>(size);
+        sequences = new AtomicLongArray(size);
+        mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * @return false if the buffer is full
+     */
+    boolean offer(T element) {
+        long position;
+        int index;
+        while (true) {
+            position = head.get();
+            index = (int) (position & mask);
+            long available = sequences.get(index) - position;
+            if (available == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (available < 0) {
+                return false;
+            }
+        }
+        elements.set(index, element);
+        sequences.lazySet(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Must only be called from the consumer thread.
+     *
+     * @return the oldest element, or null if there is none
+     */
+    T poll() {
+        long position = tail;
+        int index = (int) (position & mask);
+        if (sequences.get(index) != position + 1) {
+            return null;
+        }
+        T element = elements.get(index);
+        elements.lazySet(index, null);
+        sequences.lazySet(index, position + mask + 1);
+        tail = position + 1;
+        return element;
+    }
+
+    boolean isEmpty() {
+        return sequences.get((int) (tail & mask)) != tail + 1;
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+}
@@ -11,16 +11,17 @@ import java.util.Date;
 
 import static org.webbitserver.helpers.Hex.toHex;
 
-public class SimpleLogSink implements LogSink {
+public class SimpleLogSink implements LogSink, Flushable {
 
-    // TODO: Offload filesystem IO to another thread
+    // Writes and flushes on the calling thread. See AsyncLogSink to offload filesystem IO to another thread.
 
     protected final Appendable out;
     protected final String[] dataValuesToLog;
 
     protected final String lineSeparator = System.getProperty("line.separator", "\n");
 
-    protected boolean trouble = false;
+    protected volatile boolean trouble = false;
+    private volatile boolean flushEachEntry = true;
 
     public SimpleLogSink(Appendable out, String... dataValuesToLog) {
         this.out = out;
@@ -38,6 +39,15 @@ public class SimpleLogSink implements LogSink {
         this(System.out, dataValuesToLog);
     }
 
+    /**
+     * Whether to flush after every entry, which is the default. Turn it off when something else calls
+     * {@link #flush()}, as {@link AsyncLogSink} does for the sink it wraps.
+     */
+    public SimpleLogSink flushEachEntry(boolean flushEachEntry) {
+        this.flushEachEntry = flushEachEntry;
+        return this;
+    }
+
     @Override
     public void httpStart(HttpRequest request) {
         custom(request, "HTTP-START", null);
@@ -45,7 +55,7 @@ public class SimpleLogSink implements LogSink {
 
     @Override
     public void httpEnd(HttpRequest request) {
-        custom(request, "HTTP-END", null); // TODO: Time request
+        custom(request, "HTTP-END", null);
     }
 
     @Override
@@ -110,7 +120,9 @@ public class SimpleLogSink implements LogSink {
         }
         try {
             formatLogEntry(out, request, action, data);
-            flush();
+            if (flushEachEntry) {
+                flush();
+            }
         } catch (IOException e) {
             trouble = true;
             panic(e);
@@ -132,7 +144,8 @@ public class SimpleLogSink implements LogSink {
         custom(connection.httpRequest(), "EVENT-SOURCE-OUT", data);
     }
 
-    protected void flush() throws IOException {
+    @Override
+    public void flush() throws IOException {
         if (out instanceof Flushable) {
             Flushable flushable = (Flushable) out;
             flushable.flush();
@@ -146,7 +159,7 @@ public class SimpleLogSink implements LogSink {
 
     protected Appendable formatLogEntry(Appendable out, HttpRequest request, String action, String data) throws IOException {
         long cumulativeTimeOfRequest = cumulativeTimeOfRequest(request);
-        Date now = new Date();
+        Date now = new Date(LogClock.currentTimeMillis());
         formatValue(out, now);
         formatValue(out, now.getTime());
         formatValue(out, cumulativeTimeOfRequest);
@@ -183,7 +196,7 @@ public class SimpleLogSink implements LogSink {
 
 
     private long cumulativeTimeOfRequest(HttpRequest request) {
-        return System.currentTimeMillis() - request.timestamp();
+        return (LogClock.nanoTime() - request.startNanos()) / 1000000;
     }
 
     protected Appendable formatValue(Appendable out, Object value) throws IOException {
@@ -0,0 +1,181 @@
+package org.webbitserver.handler.logging;
+
+import org.webbitserver.EventSourceConnection;
+import org.webbitserver.HttpRequest;
+import org.webbitserver.WebSocketConnection;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+import static org.webbitserver.helpers.Hex.toHex;
+
+/**
+ * Base for sinks that write one machine-readable record per event rather than {@link SimpleLogSink}'s
+ * tab-separated text. Every record carries the same fields, so subclasses can lay them out once up front.
+ * <p/>
+ * Status and bytes sent are only known for {@code HTTP-END} records; for all others they are -1.
+ *
+ * @see JsonLogSink
+ * @see BinaryLogSink
+ */
+public abstract class StructuredLogSink implements ResponseLogSink, Flushable {
+
+    public static final String HTTP_START = "HTTP-START";
+    public static final String HTTP_END = "HTTP-END";
+    public static final String ERROR = "ERROR";
+    public static final String WEB_SOCKET_OPEN = "WEB-SOCKET-OPEN";
+    public static final String WEB_SOCKET_CLOSE = "WEB-SOCKET-CLOSE";
+    public static final String WEB_SOCKET_IN_STRING = "WEB-SOCKET-IN-STRING";
+    public static final String WEB_SOCKET_IN_HEX = "WEB-SOCKET-IN-HEX";
+    public static final String WEB_SOCKET_IN_PING = "WEB-SOCKET-IN-PING";
+    public static final String WEB_SOCKET_IN_PONG = "WEB-SOCKET-IN-PONG";
+    public static final String WEB_SOCKET_OUT_STRING = "WEB-SOCKET-OUT-STRING";
+    public static final String WEB_SOCKET_OUT_HEX = "WEB-SOCKET-OUT-HEX";
+    public static final String WEB_SOCKET_OUT_PING = "WEB-SOCKET-OUT-PING";
+    public static final String WEB_SOCKET_OUT_PONG = "WEB-SOCKET-OUT-PONG";
+    public static final String EVENT_SOURCE_OPEN = "EVENT-SOURCE-OPEN";
+    public static final String EVENT_SOURCE_CLOSE = "EVENT-SOURCE-CLOSE";
+    public static final String EVENT_SOURCE_OUT = "EVENT-SOURCE-OUT";
+
+    protected final String[] dataValuesToLog;
+    protected volatile boolean trouble = false;
+
+    protected StructuredLogSink(String... dataValuesToLog) {
+        this.dataValuesToLog = dataValuesToLog;
+    }
+
+    /**
+     * Writes a single record.
+     *
+     * @param now       wall clock time of the event
+     * @param latency   millis since the request was received
+     * @param status    HTTP status, or -1
+     * @param bytesSent body bytes sent, or -1
+     */
+    protected abstract void writeRecord(HttpRequest request, String action, String data,
+                                        long now, long latency, int status, long bytesSent) throws IOException;
+
+    private void record(HttpRequest request, String action, String data, int status, long bytesSent) {
+        if (trouble) {
+            return;
+        }
+        long now = LogClock.currentTimeMillis();
+        try {
+            writeRecord(request, action, data, now, (LogClock.nanoTime() - request.startNanos()) / 1000000, status, bytesSent);
+        } catch (IOException e) {
+            trouble = true;
+            panic(e);
+        }
+    }
+
+    /**
+     * Flushes records written so far. Records are not flushed as they are written, so that many can go out together.
+     */
+    @Override
+    public abstract void flush() throws IOException;
+
+    protected void panic(IOException exception) {
+        // If we can't log, be rude!
+        exception.printStackTrace();
+    }
+
+    protected String address(SocketAddress address) {
+        if (address instanceof InetSocketAddress) {
+            InetSocketAddress inet = (InetSocketAddress) address;
+            return inet.getAddress() == null ? inet.getHostName() : inet.getAddress().getHostAddress();
+        }
+        return address == null ? null : address.toString();
+    }
+
+    @Override
+    public void httpStart(HttpRequest request) {
+        record(request, HTTP_START, null, -1, -1);
+    }
+
+    @Override
+    public void httpEnd(HttpRequest request) {
+        record(request, HTTP_END, null, -1, -1);
+    }
+
+    @Override
+    public void httpEnd(HttpRequest request, int status, long bytesSent) {
+        record(request, HTTP_END, null, status, bytesSent);
+    }
+
+    @Override
+    public void error(HttpRequest request, Throwable error) {
+        record(request, ERROR, error.toString(), -1, -1);
+    }
+
+    @Override
+    public void custom(HttpRequest request, String action, String data) {
+        record(request, action, data, -1, -1);
+    }
+
+    @Override
+    public void webSocketConnectionOpen(WebSocketConnection connection) {
+        record(connection.httpRequest(), WEB_SOCKET_OPEN, connection.version(), -1, -1);
+    }
+
+    @Override
+    public void webSocketConnectionClose(WebSocketConnection connection) {
+        record(connection.httpRequest(), WEB_SOCKET_CLOSE, null, -1, -1);
+    }
+
+    @Override
+    public void webSocketInboundData(WebSocketConnection connection, String data) {
+        record(connection.httpRequest(), WEB_SOCKET_IN_STRING, data, -1, -1);
+    }
+
+    @Override
+    public void webSocketInboundData(WebSocketConnection connection, byte[] message) {
+        record(connection.httpRequest(), WEB_SOCKET_IN_HEX, toHex(message), -1, -1);
+    }
+
+    @Override
+    public void webSocketInboundPing(WebSocketConnection connection, byte[] msg) {
+        record(connection.httpRequest(), WEB_SOCKET_IN_PING, toHex(msg), -1, -1);
+    }
+
+    @Override
+    public void webSocketInboundPong(WebSocketConnection connection, byte[] msg) {
+        record(connection.httpRequest(), WEB_SOCKET_IN_PONG, toHex(msg), -1, -1);
+    }
+
+    @Override
+    public void webSocketOutboundData(WebSocketConnection connection, String data) {
+        record(connection.httpRequest(), WEB_SOCKET_OUT_STRING, data, -1, -1);
+    }
+
+    @Override
+    public void webSocketOutboundData(WebSocketConnection connection, byte[] data) {
+        record(connection.httpRequest(), WEB_SOCKET_OUT_HEX, toHex(data), -1, -1);
+    }
+
+    @Override
+    public void webSocketOutboundPing(WebSocketConnection connection, byte[] msg) {
+        record(connection.httpRequest(), WEB_SOCKET_OUT_PING, toHex(msg), -1, -1);
+    }
+
+    @Override
+    public void webSocketOutboundPong(WebSocketConnection connection, byte[] msg) {
+        record(connection.httpRequest(), WEB_SOCKET_OUT_PONG, toHex(msg), -1, -1);
+    }
+
+    @Override
+    public void eventSourceConnectionOpen(EventSourceConnection connection) {
+        record(connection.httpRequest(), EVENT_SOURCE_OPEN, null, -1, -1);
+    }
+
+    @Override
+    public void eventSourceConnectionClose(EventSourceConnection connection) {
+        record(connection.httpRequest(), EVENT_SOURCE_CLOSE, null, -1, -1);
+    }
+
+    @Override
+    public void eventSourceOutboundData(EventSourceConnection connection, String data) {
+        record(connection.httpRequest(), EVENT_SOURCE_OUT, data, -1, -1);
+    }
+}
@@ -45,7 +45,8 @@ public class Base64 {
     }
 
     public static String encode(byte[] input) {
-        StringBuilder result = new StringBuilder();
+        int encodedLength = (input.length + 2) / 3 * 4;
+        StringBuilder result = new StringBuilder(encodedLength + encodedLength / 76);
         int outputCharCount = 0;
         for (int i = 0; i < input.length; i += 3) {
             int remaining = Math.min(3, input.length - i);
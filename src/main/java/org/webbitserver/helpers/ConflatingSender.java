@@ -0,0 +1,111 @@
+package org.webbitserver.helpers;
+
+import org.webbitserver.EventSourceConnection;
+import org.webbitserver.EventSourceMessage;
+import org.webbitserver.HttpConnection;
+import org.webbitserver.WebSocketConnection;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sends frequently updated values to a connection which, if it falls behind, only needs the latest value for each
+ * key, such as the latest price of each instrument.
+ * <p/>
+ * While the connection is {@link HttpConnection#writable() writable}, messages are sent straight away. Once it is
+ * not, they are held back instead, one per key: a newer message for a key that is already waiting replaces the
+ * older one where it stands. When the client catches up, the waiting messages are sent in the order their keys
+ * first started waiting. So however slow the client, no more than one message per distinct key is ever held for
+ * it.
+ * <p/>
+ * Use one sender per connection. It may be used from any thread.
+ *
+ * @param <M> the type of message
+ */
+public abstract class ConflatingSender<M> {
+    private final HttpConnection connection;
+    private final Map<String, M> waiting = new LinkedHashMap<String, M>();
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+    private boolean flushScheduled;
+    private long conflated;
+
+    protected ConflatingSender(HttpConnection connection) {
+        this.connection = connection;
+    }
+
+    public static ConflatingSender<String> to(final WebSocketConnection connection) {
+        return new ConflatingSender<String>(connection) {
+            @Override
+            protected void write(String message) {
+                connection.send(message);
+            }
+        };
+    }
+
+    public static ConflatingSender<EventSourceMessage> to(final EventSourceConnection connection) {
+        return new ConflatingSender<EventSourceMessage>(connection) {
+            @Override
+            protected void write(EventSourceMessage message) {
+                connection.send(message);
+            }
+        };
+    }
+
+    /**
+     * Sends the message now if the connection can take it, or otherwise once it can, unless it's replaced by a
+     * newer message for the same key first.
+     */
+    public synchronized ConflatingSender<M> send(String key, M message) {
+        if (waiting.isEmpty() && connection.writable()) {
+            write(message);
+            return this;
+        }
+        // Even once writable again, anything new waits behind what's already waiting so keys stay in order.
+        if (waiting.put(key, message) != null) {
+            conflated++;
+        }
+        scheduleFlush();
+        return this;
+    }
+
+    /**
+     * The number of messages waiting to be sent, which is never more than the number of distinct keys.
+     */
+    public synchronized int waiting() {
+        return waiting.size();
+    }
+
+    /**
+     * The number of messages that were replaced by newer ones before they could be sent.
+     */
+    public synchronized long conflated() {
+        return conflated;
+    }
+
+    protected abstract void write(M message);
+
+    private synchronized void flush() {
+        flushScheduled = false;
+        Iterator<M> messages = waiting.values().iterator();
+        while (messages.hasNext() && connection.writable()) {
+            write(messages.next());
+            messages.remove();
+        }
+        if (!waiting.isEmpty()) {
+            scheduleFlush();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            connection.whenWritable(flush);
+        }
+    }
+}
@@ -1,18 +1,252 @@
 package org.webbitserver.helpers;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 
+/**
+ * Formats and parses HTTP dates.
+ * <p/>
+ * Dates are always formatted as RFC 1123 in GMT, e.g. "Sun, 06 Nov 1994 08:49:37 GMT". Formatting needs no
+ * {@link java.text.DateFormat} and no locking, and the current second is formatted once and then shared.
+ */
 public class DateHelper {
-    private static final ThreadLocal<DateFormat> RFC_1123 = new ThreadLocal<DateFormat>() {
-        @Override
-        protected DateFormat initialValue() {
-            return new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz");
-        }
-    };
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+    private static final String[] DAYS = {"Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat"};
+    private static final String MONTHS = "JanFebMarAprMayJunJulAugSepOctNovDec";
+
+    private static volatile FormattedSecond now = new FormattedSecond(Long.MIN_VALUE, null);
 
     public static String rfc1123Format(Date date) {
-        return RFC_1123.get().format(date);
+        return rfc1123Format(date.getTime());
+    }
+
+    public static String rfc1123Format(long millis) {
+        long second = floorDiv(millis, 1000);
+        FormattedSecond current = now;
+        if (current.second == second) {
+            return current.formatted;
+        }
+        return format(second);
+    }
+
+    /**
+     * The current time in RFC 1123 format. It's formatted at most once a second and shared, so this is cheap enough
+     * to call for every response.
+     */
+    public static String rfc1123Now() {
+        long second = System.currentTimeMillis() / 1000;
+        FormattedSecond current = now;
+        if (current.second != second) {
+            current = new FormattedSecond(second, format(second));
+            now = current;
+        }
+        return current.formatted;
+    }
+
+    /**
+     * Parses a date in any of the three formats HTTP allows, as found in headers such as If-Modified-Since:
+     * RFC 1123 ("Sun, 06 Nov 1994 08:49:37 GMT"), RFC 850 ("Sunday, 06-Nov-94 08:49:37 GMT") and
+     * asctime ("Sun Nov  6 08:49:37 1994").
+     *
+     * @return the date, or null if the value is missing or not a valid HTTP date
+     */
+    public static Date parseHttpDate(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return new Date(new HttpDateParser(value.trim()).parse());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String format(long second) {
+        long days = floorDiv(second, MILLIS_PER_DAY / 1000);
+        int secondOfDay = (int) (second - days * (MILLIS_PER_DAY / 1000));
+
+        // Civil date from days since 1970-01-01, from Howard Hinnant's chrono-compatible date algorithms.
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int shiftedMonth = (int) ((5 * dayOfYear + 2) / 153);
+        int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        StringBuilder out = new StringBuilder(29);
+        out.append(DAYS[(int) floorMod(days + 4, 7)]).append(", ");
+        twoDigits(out, day).append(' ');
+        out.append(MONTHS, (month - 1) * 3, month * 3).append(' ');
+        if (year >= 0 && year < 1000) {
+            out.append(year < 10 ? "000" : year < 100 ? "00" : "0");
+        }
+        out.append(year).append(' ');
+        twoDigits(out, secondOfDay / 3600).append(':');
+        twoDigits(out, secondOfDay / 60 % 60).append(':');
+        twoDigits(out, secondOfDay % 60).append(" GMT");
+        return out.toString();
+    }
+
+    private static StringBuilder twoDigits(StringBuilder out, int value) {
+        return out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    private static long daysFromCivil(long year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        long era = (year >= 0 ? year : year - 399) / 400;
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q;
+    }
+
+    private static long floorMod(long x, long y) {
+        return x - floorDiv(x, y) * y;
+    }
+
+    private static class FormattedSecond {
+        final long second;
+        final String formatted;
+
+        FormattedSecond(long second, String formatted) {
+            this.second = second;
+            this.formatted = formatted;
+        }
+    }
+
+    private static class HttpDateParser {
+        private final String s;
+        private int i;
+
+        HttpDateParser(String s) {
+            this.s = s;
+        }
+
+        long parse() {
+            while (i < s.length() && Character.isLetter(s.charAt(i))) {
+                i++; // day name, which is implied by the date
+            }
+            int day;
+            int month;
+            long year;
+            if (i < s.length() && s.charAt(i) == ',') {
+                // RFC 1123 or RFC 850
+                i++;
+                spaces();
+                day = number(1, 2);
+                char separator = next();
+                if (separator != ' ' && separator != '-') {
+                    throw new IllegalArgumentException();
+                }
+                month = month();
+                if (next() != separator) {
+                    throw new IllegalArgumentException();
+                }
+                int start = i;
+                year = number(2, 4);
+                if (i - start == 2) {
+                    year += year < 70 ? 2000 : 1900;
+                } else if (i - start != 4) {
+                    throw new IllegalArgumentException();
+                }
+                spaces();
+                long time = time();
+                spaces();
+                if (!s.regionMatches(true, i, "GMT", 0, 3) || i + 3 != s.length()) {
+                    throw new IllegalArgumentException();
+                }
+                return toMillis(year, month, day, time);
+            }
+
+            // asctime
+            spaces();
+            month = month();
+            spaces();
+            day = number(1, 2);
+            spaces();
+            long time = time();
+            spaces();
+            year = number(4, 4);
+            if (i != s.length()) {
+                throw new IllegalArgumentException();
+            }
+            return toMillis(year, month, day, time);
+        }
+
+        private long toMillis(long year, int month, int day, long timeMillis) {
+            if (day < 1 || day > 31) {
+                throw new IllegalArgumentException();
+            }
+            return daysFromCivil(year, month, day) * MILLIS_PER_DAY + timeMillis;
+        }
+
+        private long time() {
+            int hours = number(2, 2);
+            expect(':');
+            int minutes = number(2, 2);
+            expect(':');
+            int seconds = number(2, 2);
+            if (hours > 23 || minutes > 59 || seconds > 60) {
+                throw new IllegalArgumentException();
+            }
+            return ((hours * 60L + minutes) * 60 + Math.min(seconds, 59)) * 1000;
+        }
+
+        private int month() {
+            if (i + 3 > s.length()) {
+                throw new IllegalArgumentException();
+            }
+            for (int m = 0; m < 12; m++) {
+                if (s.regionMatches(true, i, MONTHS, m * 3, 3)) {
+                    i += 3;
+                    return m + 1;
+                }
+            }
+            throw new IllegalArgumentException();
+        }
+
+        private int number(int minDigits, int maxDigits) {
+            int value = 0;
+            int digits = 0;
+            while (i < s.length() && digits < maxDigits) {
+                char c = s.charAt(i);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                value = value * 10 + (c - '0');
+                digits++;
+                i++;
+            }
+            if (digits < minDigits) {
+                throw new IllegalArgumentException();
+            }
+            return value;
+        }
+
+        private void spaces() {
+            while (i < s.length() && s.charAt(i) == ' ') {
+                i++;
+            }
+        }
+
+        private void expect(char c) {
+            if (next() != c) {
+                throw new IllegalArgumentException();
+            }
+        }
+
+        private char next() {
+            if (i >= s.length()) {
+                throw new IllegalArgumentException();
+            }
+            return s.charAt(i++);
+        }
     }
 }
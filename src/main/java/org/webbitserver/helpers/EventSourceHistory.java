@@ -0,0 +1,138 @@
+package org.webbitserver.helpers;
+
+import org.webbitserver.EventSourceConnection;
+import org.webbitserver.EventSourceMessage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The most recent messages sent on one topic, so that EventSource clients that reconnect can be sent what they
+ * missed straight from memory, based on the Last-Event-ID header their browser sends.
+ * <p/>
+ * The oldest messages are dropped once there are more than {@code maxMessages} of them, or together they take up
+ * more than {@code maxBytes}. A client that last saw a message that has already been dropped can't be resumed;
+ * {@link #replay(EventSourceConnection)} then returns -1 so the application can fall back to a full reload.
+ * <p/>
+ * All methods synchronize on the history itself. Holding that same lock while adding a message and sending it to
+ * the topic's subscribers, and while replaying to a new connection and subscribing it, guarantees that every
+ * client sees each message once, in order. {@link org.webbitserver.handler.ReplayingEventSourceHandler} does the
+ * second part.
+ */
+public class EventSourceHistory {
+    public static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+
+    private static class Entry {
+        final long sequence;
+        final EventSourceMessage message;
+        final int bytes;
+
+        Entry(long sequence, EventSourceMessage message, int bytes) {
+            this.sequence = sequence;
+            this.message = message;
+            this.bytes = bytes;
+        }
+    }
+
+    private final int maxMessages;
+    private final long maxBytes;
+    private final ArrayDeque<Entry> entries = new ArrayDeque<Entry>();
+    private final Map<String, Long> sequenceById = new HashMap<String, Long>();
+    private long nextSequence;
+    private long bytes;
+
+    public EventSourceHistory(int maxMessages, long maxBytes) {
+        if (maxMessages < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("maxMessages and maxBytes must be at least 1");
+        }
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Remembers a message that has been (or is about to be) sent on this topic. Messages without an id are kept
+     * too, and replayed along with the ones around them, but clients can only resume from a message with an id.
+     */
+    public synchronized EventSourceHistory add(EventSourceMessage message) {
+        long sequence = nextSequence++;
+        Entry entry = new Entry(sequence, message, message.toByteBuffer().remaining());
+        entries.addLast(entry);
+        bytes += entry.bytes;
+        if (message.id() != null) {
+            sequenceById.put(message.id(), sequence);
+        }
+        while (entries.size() > maxMessages || (bytes > maxBytes && entries.size() > 1)) {
+            Entry oldest = entries.removeFirst();
+            bytes -= oldest.bytes;
+            String id = oldest.message.id();
+            if (id != null && Long.valueOf(oldest.sequence).equals(sequenceById.get(id))) {
+                sequenceById.remove(id);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * The messages added after the one with the given id, oldest first.
+     *
+     * @return the messages, or null if there is no message with that id any more
+     */
+    public synchronized List<EventSourceMessage> since(String lastEventId) {
+        Long last = sequenceById.get(lastEventId);
+        if (last == null) {
+            return null;
+        }
+        List<EventSourceMessage> missed = new ArrayList<EventSourceMessage>();
+        Iterator<Entry> newestFirst = entries.descendingIterator();
+        while (newestFirst.hasNext()) {
+            Entry entry = newestFirst.next();
+            if (entry.sequence <= last) {
+                break;
+            }
+            missed.add(entry.message);
+        }
+        Collections.reverse(missed);
+        return missed;
+    }
+
+    /**
+     * Sends a reconnecting client the messages it missed, going by the Last-Event-ID header of its request.
+     *
+     * @return the number of messages sent: 0 if the client didn't send a Last-Event-ID, or -1 if it is too far
+     *         behind to be caught up from this history
+     */
+    public synchronized int replay(EventSourceConnection connection) {
+        String lastEventId = connection.httpRequest().header(LAST_EVENT_ID_HEADER);
+        if (lastEventId == null) {
+            return 0;
+        }
+        List<EventSourceMessage> missed = since(lastEventId);
+        if (missed == null) {
+            return -1;
+        }
+        for (EventSourceMessage message : missed) {
+            connection.send(message);
+        }
+        return missed.size();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized EventSourceHistory clear() {
+        entries.clear();
+        sequenceById.clear();
+        bytes = 0;
+        return this;
+    }
+}
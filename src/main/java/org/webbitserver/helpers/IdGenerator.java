@@ -0,0 +1,49 @@
+package org.webbitserver.helpers;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out ids from a counter, safely from any number of threads and without locking or boxing.
+ * <p/>
+ * When several servers write to the same logs, give each a different node number: it is put in the top
+ * {@link #NODE_BITS} bits of every id, leaving the rest for the count, so ids stay unique across the nodes while
+ * still being plain longs. Node 0, the default, gives 1, 2, 3...
+ */
+public class IdGenerator {
+    public static final int NODE_BITS = 16;
+    public static final int MAX_NODE = (1 << NODE_BITS) - 1;
+
+    private static final int SEQUENCE_BITS = 64 - NODE_BITS;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final AtomicLong next;
+
+    public IdGenerator() {
+        this(0);
+    }
+
+    public IdGenerator(int node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("node must be between 0 and " + MAX_NODE);
+        }
+        this.next = new AtomicLong(((long) node << SEQUENCE_BITS) + 1);
+    }
+
+    public long next() {
+        return next.getAndIncrement();
+    }
+
+    /**
+     * The node number an id was made on.
+     */
+    public static int node(long id) {
+        return (int) (id >>> SEQUENCE_BITS);
+    }
+
+    /**
+     * The id's place in its node's count.
+     */
+    public static long sequence(long id) {
+        return id & SEQUENCE_MASK;
+    }
+}
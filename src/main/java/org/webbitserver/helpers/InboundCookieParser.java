@@ -11,19 +11,26 @@ public class InboundCookieParser {
     public static List<HttpCookie> parse(List<String> headerValues) {
         List<HttpCookie> result = new ArrayList<HttpCookie>();
         for (String headerValue : headerValues) {
-            String[] nvPairs = headerValue.split(";");
-            for (String nvPair : nvPairs) {
-                String[] nameAndValue = nvPair.split("=");
-                if (nameAndValue[1].startsWith("\"")) {
-                    nameAndValue[1] = nameAndValue[1].substring(1);
-                }
-                if (nameAndValue[1].endsWith("\"")) {
-                    nameAndValue[1] = nameAndValue[1].substring(0, nameAndValue[1].length() - 1);
-                }
-                result.add(new HttpCookie(nameAndValue[0], nameAndValue[1]));
-            }
+            parse(headerValue, result);
         }
         return result;
     }
 
+    /**
+     * Parse a single "Cookie:" header value, adding the cookies found to result.
+     */
+    public static void parse(String headerValue, List<HttpCookie> result) {
+        String[] nvPairs = headerValue.split(";");
+        for (String nvPair : nvPairs) {
+            String[] nameAndValue = nvPair.split("=");
+            if (nameAndValue[1].startsWith("\"")) {
+                nameAndValue[1] = nameAndValue[1].substring(1);
+            }
+            if (nameAndValue[1].endsWith("\"")) {
+                nameAndValue[1] = nameAndValue[1].substring(0, nameAndValue[1].length() - 1);
+            }
+            result.add(new HttpCookie(nameAndValue[0], nameAndValue[1]));
+        }
+    }
+
 }
@@ -0,0 +1,337 @@
+package org.webbitserver.helpers;
+
+import org.webbitserver.EventSourceConnection;
+import org.webbitserver.EventSourceHandler;
+import org.webbitserver.EventSourceMessage;
+import org.webbitserver.HttpConnection;
+import org.webbitserver.WebSocketConnection;
+import org.webbitserver.WebSocketHandler;
+import org.webbitserver.handler.ReplayingEventSourceHandler;
+import org.webbitserver.metrics.Histogram;
+import org.webbitserver.metrics.Meter;
+import org.webbitserver.metrics.MetricsReporter;
+import org.webbitserver.netty.NettyWebSocketConnection;
+
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Sends messages to every WebSocket and EventSource connection subscribed to a topic.
+ * <p/>
+ * Subscribers are kept in copy-on-write sets, so publishing never locks and never copies the subscribers, however
+ * many threads publish at once. Each message is encoded once however many connections it goes to: an
+ * {@link EventSourceMessage} shares its bytes between connections, and text for WebSockets is encoded as UTF-8 once
+ * and the bytes handed to each of Webbit's own connections. Wrapped connections are sent the String, so that the
+ * wrapper sees it.
+ * <p/>
+ * Connections must be unsubscribed when they close. Wrap the handlers with {@link #unsubscribeOnClose} to have that
+ * done for them.
+ * <p/>
+ * A topic can be given an {@link EventSourceHistory}. Everything published to it as EventSource is then remembered,
+ * and EventSource connections that subscribe with a Last-Event-ID are first sent what they missed.
+ */
+public class PubSubHub {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static class Topic {
+        final Set<WebSocketConnection> webSockets = new CopyOnWriteArraySet<WebSocketConnection>();
+        final Set<EventSourceConnection> eventSources = new CopyOnWriteArraySet<EventSourceConnection>();
+        final Meter published = new Meter();
+        final Meter delivered = new Meter();
+        final Histogram fanoutTime = new Histogram();
+        volatile EventSourceHistory history;
+    }
+
+    private final ConcurrentMap<String, Topic> topics = new ConcurrentHashMap<String, Topic>();
+    private final ConcurrentMap<HttpConnection, Set<String>> subscriptions = new ConcurrentHashMap<HttpConnection, Set<String>>();
+
+    /**
+     * Keeps the messages published to a topic as EventSource, to replay to clients that reconnect.
+     */
+    public PubSubHub history(String topic, EventSourceHistory history) {
+        topic(topic).history = history;
+        return this;
+    }
+
+    public PubSubHub subscribe(String topic, WebSocketConnection connection) {
+        topic(topic).webSockets.add(connection);
+        subscribed(connection, topic);
+        return this;
+    }
+
+    /**
+     * Subscribes an EventSource connection, first replaying any messages it missed if the topic has a history. The
+     * result of the replay is stored in the connection's {@link ReplayingEventSourceHandler#REPLAYED} data.
+     */
+    public PubSubHub subscribe(String topic, EventSourceConnection connection) {
+        Topic t = topic(topic);
+        EventSourceHistory history = t.history;
+        if (history == null) {
+            t.eventSources.add(connection);
+        } else {
+            synchronized (history) {
+                connection.data(ReplayingEventSourceHandler.REPLAYED, history.replay(connection));
+                t.eventSources.add(connection);
+            }
+        }
+        subscribed(connection, topic);
+        return this;
+    }
+
+    public PubSubHub unsubscribe(String topic, HttpConnection connection) {
+        Topic t = topics.get(topic);
+        if (t != null) {
+            t.webSockets.remove(connection);
+            t.eventSources.remove(connection);
+        }
+        Set<String> subscribed = subscriptions.get(connection);
+        if (subscribed != null) {
+            subscribed.remove(topic);
+        }
+        return this;
+    }
+
+    /**
+     * Unsubscribes a connection from every topic, as should be done when it closes.
+     */
+    public PubSubHub unsubscribeAll(HttpConnection connection) {
+        Set<String> subscribed = subscriptions.remove(connection);
+        if (subscribed != null) {
+            for (String topic : subscribed) {
+                Topic t = topics.get(topic);
+                if (t != null) {
+                    t.webSockets.remove(connection);
+                    t.eventSources.remove(connection);
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Sends text to all the topic's subscribers: as a text frame over WebSockets and as the data of an EventSource
+     * message.
+     *
+     * @return the number of connections it was sent to
+     */
+    public int publish(String topic, String message) {
+        Topic t = topics.get(topic);
+        if (t == null) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        int sent = sendToWebSockets(t, message);
+        if (!t.eventSources.isEmpty() || t.history != null) {
+            sent += sendToEventSources(t, new EventSourceMessage(message));
+        }
+        published(t, sent, start);
+        return sent;
+    }
+
+    /**
+     * Sends a message to the topic's EventSource subscribers only, adding it to the topic's history if it has one.
+     *
+     * @return the number of connections it was sent to
+     */
+    public int publish(String topic, EventSourceMessage message) {
+        Topic t = topics.get(topic);
+        if (t == null) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        int sent = sendToEventSources(t, message);
+        published(t, sent, start);
+        return sent;
+    }
+
+    /**
+     * Sends a binary message to the topic's WebSocket subscribers only.
+     *
+     * @return the number of connections it was sent to
+     */
+    public int publish(String topic, byte[] message) {
+        Topic t = topics.get(topic);
+        if (t == null) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        int sent = 0;
+        for (WebSocketConnection connection : t.webSockets) {
+            connection.send(message);
+            sent++;
+        }
+        published(t, sent, start);
+        return sent;
+    }
+
+    public int subscribers(String topic) {
+        Topic t = topics.get(topic);
+        return t == null ? 0 : t.webSockets.size() + t.eventSources.size();
+    }
+
+    public Set<String> topics() {
+        return Collections.unmodifiableSet(topics.keySet());
+    }
+
+    /**
+     * Forgets a topic altogether, along with its subscribers, history and metrics.
+     */
+    public PubSubHub removeTopic(String topic) {
+        Topic t = topics.remove(topic);
+        if (t != null) {
+            for (HttpConnection connection : t.webSockets) {
+                unsubscribe(topic, connection);
+            }
+            for (HttpConnection connection : t.eventSources) {
+                unsubscribe(topic, connection);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Reports, for each topic, its number of subscribers and how often messages are published and delivered to
+     * it, as "pubsub.&lt;topic&gt;.subscribers", ".published" and ".delivered", and how long sending each message
+     * to all the subscribers took, in nanoseconds, as ".fanout".
+     */
+    public void report(MetricsReporter reporter) {
+        for (Map.Entry<String, Topic> entry : topics.entrySet()) {
+            String prefix = "pubsub." + entry.getKey();
+            Topic t = entry.getValue();
+            reporter.gauge(prefix + ".subscribers", t.webSockets.size() + t.eventSources.size());
+            reporter.meter(prefix + ".published", t.published);
+            reporter.meter(prefix + ".delivered", t.delivered);
+            reporter.histogram(prefix + ".fanout", t.fanoutTime);
+        }
+    }
+
+    /**
+     * Wraps a handler so that its connections are unsubscribed from every topic once they have closed.
+     */
+    public WebSocketHandler unsubscribeOnClose(final WebSocketHandler handler) {
+        return new WebSocketHandler() {
+            @Override
+            public void onOpen(WebSocketConnection connection) throws Throwable {
+                handler.onOpen(connection);
+            }
+
+            @Override
+            public void onClose(WebSocketConnection connection) throws Throwable {
+                unsubscribeAll(connection);
+                handler.onClose(connection);
+            }
+
+            @Override
+            public void onMessage(WebSocketConnection connection, String msg) throws Throwable {
+                handler.onMessage(connection, msg);
+            }
+
+            @Override
+            public void onMessage(WebSocketConnection connection, byte[] msg) throws Throwable {
+                handler.onMessage(connection, msg);
+            }
+
+            @Override
+            public void onPing(WebSocketConnection connection, byte[] msg) throws Throwable {
+                handler.onPing(connection, msg);
+            }
+
+            @Override
+            public void onPong(WebSocketConnection connection, byte[] msg) throws Throwable {
+                handler.onPong(connection, msg);
+            }
+        };
+    }
+
+    /**
+     * Wraps a handler so that its connections are unsubscribed from every topic once they have closed.
+     */
+    public EventSourceHandler unsubscribeOnClose(final EventSourceHandler handler) {
+        return new EventSourceHandler() {
+            @Override
+            public void onOpen(EventSourceConnection connection) throws Exception {
+                handler.onOpen(connection);
+            }
+
+            @Override
+            public void onClose(EventSourceConnection connection) throws Exception {
+                unsubscribeAll(connection);
+                handler.onClose(connection);
+            }
+        };
+    }
+
+    private Topic topic(String name) {
+        Topic topic = topics.get(name);
+        if (topic == null) {
+            Topic created = new Topic();
+            topic = topics.putIfAbsent(name, created);
+            if (topic == null) {
+                topic = created;
+            }
+        }
+        return topic;
+    }
+
+    private void subscribed(HttpConnection connection, String topic) {
+        Set<String> subscribed = subscriptions.get(connection);
+        if (subscribed == null) {
+            Set<String> created = new CopyOnWriteArraySet<String>();
+            subscribed = subscriptions.putIfAbsent(connection, created);
+            if (subscribed == null) {
+                subscribed = created;
+            }
+        }
+        subscribed.add(topic);
+    }
+
+    private static int sendToWebSockets(Topic t, String message) {
+        int sent = 0;
+        byte[] utf8 = null;
+        for (WebSocketConnection connection : t.webSockets) {
+            if (connection instanceof NettyWebSocketConnection) {
+                if (utf8 == null) {
+                    utf8 = message.getBytes(UTF_8);
+                }
+                ((NettyWebSocketConnection) connection).sendText(utf8);
+            } else {
+                connection.send(message);
+            }
+            sent++;
+        }
+        return sent;
+    }
+
+    private static int sendToEventSources(Topic t, EventSourceMessage message) {
+        EventSourceHistory history = t.history;
+        if (history == null) {
+            return sendTo(t.eventSources, message);
+        }
+        // Under the history's lock, so a connection subscribing meanwhile gets this message either by replay or
+        // by being sent it, but not both.
+        synchronized (history) {
+            history.add(message);
+            return sendTo(t.eventSources, message);
+        }
+    }
+
+    private static int sendTo(Set<EventSourceConnection> connections, EventSourceMessage message) {
+        int sent = 0;
+        for (EventSourceConnection connection : connections) {
+            connection.send(message);
+            sent++;
+        }
+        return sent;
+    }
+
+    private static void published(Topic t, int sent, long start) {
+        t.fanoutTime.record(System.nanoTime() - start);
+        t.published.mark();
+        t.delivered.mark(sent);
+    }
+}
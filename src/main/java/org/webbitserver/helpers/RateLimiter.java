@@ -0,0 +1,114 @@
+package org.webbitserver.helpers;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets, one per key, such as per client address or per user: each key may take up to {@code burst}
+ * permits at once, which are then given back at {@code permitsPerSecond}.
+ * <p/>
+ * Each bucket is a single long, the time at which it will be full again, which is updated with one
+ * compare-and-set per permit (the "generic cell rate algorithm"). A bucket that is full again holds nothing worth
+ * keeping, so buckets are forgotten once they fill up, and memory only grows with the number of keys that have
+ * been active within the last {@code burst / permitsPerSecond} seconds, plus those waiting to be swept out. No
+ * background thread is needed: every time a permit is taken, a few buckets are looked at, carrying on from where
+ * the last look left off. No single call ever walks all the keys, so handlers aren't stalled however many there are,
+ * and as a call adds at most one key, the sweep keeps up with them.
+ */
+public class RateLimiter {
+    // Marks a bucket that has been swept out of the map, so it must not be used any more.
+    private static final long RETIRED = Long.MIN_VALUE;
+    static final int SWEEP_BATCH = 4;
+
+    private final long interval;
+    private final long capacity;
+    private final ConcurrentMap<Object, AtomicLong> buckets = new ConcurrentHashMap<Object, AtomicLong>();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    // Only touched by the thread that set sweeping.
+    private Iterator<Map.Entry<Object, AtomicLong>> sweep;
+
+    public RateLimiter(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive and burst at least 1");
+        }
+        this.interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.capacity = interval * burst;
+    }
+
+    /**
+     * Takes a permit for the key, if it has one left.
+     *
+     * @return 0 if a permit was taken, or else how many nanoseconds until the key will have one again
+     */
+    public long tryAcquire(Object key) {
+        long now = nanoTime();
+        sweepSome(now);
+        while (true) {
+            AtomicLong bucket = buckets.get(key);
+            if (bucket == null) {
+                // A new key starts full, so this permit leaves it one short.
+                AtomicLong created = new AtomicLong(now + interval);
+                bucket = buckets.putIfAbsent(key, created);
+                if (bucket == null) {
+                    return 0;
+                }
+            }
+            long fullAt = bucket.get();
+            if (fullAt == RETIRED) {
+                buckets.remove(key, bucket);
+                continue;
+            }
+            long newFullAt = Math.max(fullAt, now) + interval;
+            long wait = newFullAt - now - capacity;
+            if (wait > 0) {
+                return wait;
+            }
+            if (bucket.compareAndSet(fullAt, newFullAt)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * The number of keys being tracked, which includes those whose buckets have filled up but haven't been swept
+     * out yet.
+     */
+    public int size() {
+        return buckets.size();
+    }
+
+    protected long nanoTime() {
+        return System.nanoTime();
+    }
+
+    private void sweepSome(long now) {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            for (int i = 0; i < SWEEP_BATCH; i++) {
+                if (sweep == null) {
+                    sweep = buckets.entrySet().iterator();
+                }
+                if (!sweep.hasNext()) {
+                    // Start the next pass on a later call, so that this one stays short.
+                    sweep = null;
+                    return;
+                }
+                Map.Entry<Object, AtomicLong> entry = sweep.next();
+                AtomicLong bucket = entry.getValue();
+                long fullAt = bucket.get();
+                if (fullAt - now <= 0 && bucket.compareAndSet(fullAt, RETIRED)) {
+                    buckets.remove(entry.getKey(), bucket);
+                }
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+}
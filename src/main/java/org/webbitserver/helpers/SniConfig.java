@@ -0,0 +1,81 @@
+package org.webbitserver.helpers;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Serves a different certificate per hostname on one listener, chosen from the server name (SNI) the client sends
+ * in its TLS handshake.
+ * <p/>
+ * Each host has its own {@link SslConfig}, and so its own {@link javax.net.ssl.SSLContext}, built once and then used
+ * for every handshake with that name. Hostnames may be exact ("www.example.com") or a wildcard for one level of
+ * subdomain ("*.example.com"). Clients that send no server name, or one that is not configured, get the default
+ * config, or are disconnected if there is none.
+ * <p/>
+ * Hosts can be added, replaced and removed while the server is running, e.g. to pick up a renewed certificate.
+ * Connections that have already completed their handshake are not affected; new handshakes use the new config.
+ *
+ * @see org.webbitserver.WebServer#setupSsl(SniConfig)
+ */
+public class SniConfig {
+
+    private final ConcurrentMap<String, SslConfig> hosts = new ConcurrentHashMap<String, SslConfig>();
+    private volatile SslConfig defaultConfig;
+
+    /**
+     * @param defaultConfig used when the client's server name is missing or unknown; may be null
+     */
+    public SniConfig(SslConfig defaultConfig) {
+        this.defaultConfig = defaultConfig;
+    }
+
+    public SniConfig() {
+        this(null);
+    }
+
+    /**
+     * Use this config for a hostname, replacing any previous config for it.
+     */
+    public SniConfig host(String hostName, SslConfig sslConfig) {
+        hosts.put(normalize(hostName), sslConfig);
+        return this;
+    }
+
+    public SniConfig removeHost(String hostName) {
+        hosts.remove(normalize(hostName));
+        return this;
+    }
+
+    public SniConfig defaultConfig(SslConfig defaultConfig) {
+        this.defaultConfig = defaultConfig;
+        return this;
+    }
+
+    /**
+     * @param hostName server name sent by the client, or null if it sent none
+     * @return the config to handshake with, or null if the connection should be refused
+     */
+    public SslConfig select(String hostName) {
+        if (hostName != null) {
+            String name = normalize(hostName);
+            SslConfig sslConfig = hosts.get(name);
+            if (sslConfig != null) {
+                return sslConfig;
+            }
+            int dot = name.indexOf('.');
+            if (dot != -1) {
+                sslConfig = hosts.get("*" + name.substring(dot));
+                if (sslConfig != null) {
+                    return sslConfig;
+                }
+            }
+        }
+        return defaultConfig;
+    }
+
+    private static String normalize(String hostName) {
+        String name = hostName.toLowerCase(Locale.ENGLISH);
+        return name.endsWith(".") ? name.substring(0, name.length() - 1) : name;
+    }
+}
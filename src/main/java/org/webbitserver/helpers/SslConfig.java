@@ -0,0 +1,113 @@
+package org.webbitserver.helpers;
+
+import org.webbitserver.WebbitException;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSessionContext;
+import java.io.InputStream;
+
+/**
+ * Server side SSL/TLS settings.
+ * <p/>
+ * Full handshakes are by far the most expensive part of a new TLS connection. Clients that come back can skip most
+ * of the work by resuming an earlier session, so it pays to size the session cache and timeout for the expected
+ * number of returning clients. Whether stateless session tickets are also offered is decided by the JSSE provider;
+ * to use a different (e.g. native) provider, build the {@link SSLContext} from it and, if it needs special setup,
+ * plug in an {@link EngineFactory}.
+ *
+ * @see org.webbitserver.WebServer#setupSsl(SslConfig)
+ */
+public class SslConfig {
+
+    /**
+     * Creates the {@link SSLEngine} for each new connection.
+     */
+    public interface EngineFactory {
+        SSLEngine createSSLEngine(SSLContext sslContext);
+    }
+
+    private static final EngineFactory DEFAULT_ENGINE_FACTORY = new EngineFactory() {
+        @Override
+        public SSLEngine createSSLEngine(SSLContext sslContext) {
+            return sslContext.createSSLEngine();
+        }
+    };
+
+    private final SSLContext sslContext;
+    private String[] protocols;
+    private String[] cipherSuites;
+    private EngineFactory engineFactory = DEFAULT_ENGINE_FACTORY;
+
+    public SslConfig(SSLContext sslContext) {
+        this.sslContext = sslContext;
+    }
+
+    public SslConfig(InputStream keyStore, String storePass, String keyPass) throws WebbitException {
+        this(new SslFactory(keyStore, storePass).getServerContext(keyPass));
+    }
+
+    public SSLContext sslContext() {
+        return sslContext;
+    }
+
+    /**
+     * Only allow these protocols, e.g. "TLSv1.2". By default the provider's defaults are used.
+     */
+    public SslConfig protocols(String... protocols) {
+        this.protocols = protocols.clone();
+        return this;
+    }
+
+    /**
+     * Only allow these cipher suites, in order of preference. By default the provider's defaults are used.
+     */
+    public SslConfig cipherSuites(String... cipherSuites) {
+        this.cipherSuites = cipherSuites.clone();
+        return this;
+    }
+
+    /**
+     * Maximum number of sessions kept for resumption. 0 means no limit.
+     */
+    public SslConfig sessionCacheSize(int size) {
+        serverSessionContext().setSessionCacheSize(size);
+        return this;
+    }
+
+    /**
+     * How long a session can be resumed for. 0 means no limit.
+     */
+    public SslConfig sessionTimeout(int seconds) {
+        serverSessionContext().setSessionTimeout(seconds);
+        return this;
+    }
+
+    public SslConfig engineFactory(EngineFactory engineFactory) {
+        this.engineFactory = engineFactory;
+        return this;
+    }
+
+    /**
+     * A new engine, in server mode, with the configured protocols and cipher suites.
+     */
+    public SSLEngine createServerEngine() {
+        SSLEngine engine = engineFactory.createSSLEngine(sslContext);
+        engine.setUseClientMode(false);
+        if (protocols != null) {
+            engine.setEnabledProtocols(protocols);
+        }
+        if (cipherSuites != null) {
+            engine.setEnabledCipherSuites(cipherSuites);
+        }
+        return engine;
+    }
+
+    private SSLSessionContext serverSessionContext() {
+        SSLSessionContext sessionContext = sslContext.getServerSessionContext();
+        if (sessionContext == null) {
+            throw new UnsupportedOperationException("SSLContext does not support server session caching");
+        }
+        return sessionContext;
+    }
+}
@@ -0,0 +1,84 @@
+package org.webbitserver.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts events and tracks their rate: the mean rate since creation and an exponentially weighted one-minute rate.
+ * <p/>
+ * The moving average is ticked lazily (at most every {@link #TICK_INTERVAL_SECONDS} seconds) by whichever thread
+ * happens to mark or read the meter, so no background thread is needed.
+ */
+public class Meter {
+    public static final int TICK_INTERVAL_SECONDS = 5;
+
+    private static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos(TICK_INTERVAL_SECONDS);
+    private static final double ONE_MINUTE_ALPHA = 1 - Math.exp(-TICK_INTERVAL_SECONDS / 60.0);
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong uncounted = new AtomicLong();
+    private final AtomicLong lastTick;
+    private final long startTime;
+    private volatile double oneMinuteRate = 0;
+    private volatile boolean initialized = false;
+
+    public Meter() {
+        startTime = System.nanoTime();
+        lastTick = new AtomicLong(startTime);
+    }
+
+    public void mark() {
+        mark(1);
+    }
+
+    public void mark(long n) {
+        tickIfNecessary();
+        count.addAndGet(n);
+        uncounted.addAndGet(n);
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    /**
+     * @return events per second since this meter was created
+     */
+    public double meanRate() {
+        long elapsed = System.nanoTime() - startTime;
+        return elapsed <= 0 ? 0 : count() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    /**
+     * @return events per second, exponentially weighted over the last minute
+     */
+    public double oneMinuteRate() {
+        tickIfNecessary();
+        return oneMinuteRate;
+    }
+
+    private void tickIfNecessary() {
+        long oldTick = lastTick.get();
+        long now = System.nanoTime();
+        long age = now - oldTick;
+        if (age > TICK_INTERVAL) {
+            long newTick = now - age % TICK_INTERVAL;
+            if (lastTick.compareAndSet(oldTick, newTick)) {
+                long ticks = age / TICK_INTERVAL;
+                for (long i = 0; i < ticks; i++) {
+                    tick();
+                }
+            }
+        }
+    }
+
+    private void tick() {
+        double instantRate = uncounted.getAndSet(0) / (double) TICK_INTERVAL_SECONDS;
+        if (initialized) {
+            oneMinuteRate += ONE_MINUTE_ALPHA * (instantRate - oneMinuteRate);
+        } else {
+            oneMinuteRate = instantRate;
+            initialized = true;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package org.webbitserver.metrics;
+
+/**
+ * Receives a snapshot of every metric when {@link WebServerMetrics#report(MetricsReporter)} is called. Implement this
+ * to export metrics to a monitoring system.
+ *
+ * @see TextMetricsReporter
+ */
+public interface MetricsReporter {
+
+    void gauge(String name, long value);
+
+    void meter(String name, Meter meter);
+
+    void histogram(String name, Histogram histogram);
+}
@@ -0,0 +1,58 @@
+package org.webbitserver.metrics;
+
+import java.util.Locale;
+
+/**
+ * Renders metrics as plain text, one metric per line. Histogram values are converted from nanoseconds to
+ * microseconds.
+ *
+ * <pre>
+ * connections.http 3
+ * requests count=120 mean_rate=4.02 1m_rate=3.87
+ * latency count=120 min_us=85 mean_us=312.44 p50_us=255 p90_us=767 p99_us=1279 max_us=2203
+ * </pre>
+ */
+public class TextMetricsReporter implements MetricsReporter {
+
+    private final StringBuilder out = new StringBuilder();
+
+    @Override
+    public void gauge(String name, long value) {
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    @Override
+    public void meter(String name, Meter meter) {
+        out.append(name)
+                .append(" count=").append(meter.count())
+                .append(" mean_rate=").append(format(meter.meanRate()))
+                .append(" 1m_rate=").append(format(meter.oneMinuteRate()))
+                .append('\n');
+    }
+
+    @Override
+    public void histogram(String name, Histogram histogram) {
+        out.append(name)
+                .append(" count=").append(histogram.count())
+                .append(" min_us=").append(micros(histogram.min()))
+                .append(" mean_us=").append(format(histogram.mean() / 1000))
+                .append(" p50_us=").append(micros(histogram.percentile(50)))
+                .append(" p90_us=").append(micros(histogram.percentile(90)))
+                .append(" p99_us=").append(micros(histogram.percentile(99)))
+                .append(" max_us=").append(micros(histogram.max()))
+                .append('\n');
+    }
+
+    private long micros(long nanos) {
+        return nanos / 1000;
+    }
+
+    private String format(double value) {
+        return String.format(Locale.US, "%.2f", value);
+    }
+
+    @Override
+    public String toString() {
+        return out.toString();
+    }
+}
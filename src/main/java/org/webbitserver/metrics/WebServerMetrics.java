@@ -0,0 +1,271 @@
+package org.webbitserver.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics about a running {@link org.webbitserver.WebServer}: open connections, request rate and latency,
+ * bytes and WebSocket frames in and out, and the depth of the handler executor's queue.
+ * <p/>
+ * Metrics are off by default. Call {@link org.webbitserver.WebServer#enableMetrics()} before starting the server
+ * to have it record into an instance of this class, then query it directly, pass a {@link MetricsReporter} to
+ * {@link #report(MetricsReporter)}, or serve it with {@link org.webbitserver.handler.MetricsHandler}.
+ * <p/>
+ * All recording methods are thread safe and lock free.
+ */
+public class WebServerMetrics {
+
+    /**
+     * Request data key holding the route a request matched, used to break latency down per route.
+     * {@link org.webbitserver.handler.PathMatchHandler} sets it to its path pattern.
+     */
+    public static final String ROUTE = "webbit.route";
+
+    public enum ConnectionType {
+        HTTP, WEBSOCKET, EVENTSOURCE
+    }
+
+    private final AtomicLong[] openConnections = new AtomicLong[ConnectionType.values().length];
+    private final Meter requests = new Meter();
+    private final Histogram latency = new Histogram();
+    private final ConcurrentMap<Integer, Histogram> latencyByStatus = new ConcurrentHashMap<Integer, Histogram>();
+    private final ConcurrentMap<String, Histogram> latencyByRoute = new ConcurrentHashMap<String, Histogram>();
+    private final Histogram dispatchDelay = new Histogram();
+    private final Histogram flushLatency = new Histogram();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong framesIn = new AtomicLong();
+    private final AtomicLong framesOut = new AtomicLong();
+    private final AtomicLong executorQueueDepth = new AtomicLong();
+    private final AtomicLong rejectedConnections = new AtomicLong();
+    private final AtomicLong rejectedConnectionsOpen = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+
+    public WebServerMetrics() {
+        for (ConnectionType type : ConnectionType.values()) {
+            openConnections[type.ordinal()] = new AtomicLong();
+        }
+    }
+
+    // Recording
+
+    public void connectionOpened(ConnectionType type) {
+        openConnections[type.ordinal()].incrementAndGet();
+    }
+
+    public void connectionClosed(ConnectionType type) {
+        openConnections[type.ordinal()].decrementAndGet();
+    }
+
+    public void connectionUpgraded(ConnectionType from, ConnectionType to) {
+        connectionClosed(from);
+        connectionOpened(to);
+    }
+
+    /**
+     * @param status  HTTP status code of the response
+     * @param route   the route the request matched, or null
+     * @param elapsed nanoseconds from receiving the request to ending the response
+     */
+    public void requestCompleted(int status, String route, long elapsed) {
+        requests.mark();
+        latency.record(elapsed);
+        histogram(latencyByStatus, status).record(elapsed);
+        if (route != null) {
+            histogram(latencyByRoute, route).record(elapsed);
+        }
+    }
+
+    /**
+     * @param waited nanoseconds the request spent waiting for the handler executor once it had been decoded
+     */
+    public void requestDispatched(long waited) {
+        dispatchDelay.record(waited);
+    }
+
+    /**
+     * @param elapsed nanoseconds from receiving the request to the last byte of the response going to the socket
+     */
+    public void responseFlushed(long elapsed) {
+        flushLatency.record(elapsed);
+    }
+
+    public void bytesRead(long bytes) {
+        bytesIn.addAndGet(bytes);
+    }
+
+    public void bytesWritten(long bytes) {
+        bytesOut.addAndGet(bytes);
+    }
+
+    public void frameReceived() {
+        framesIn.incrementAndGet();
+    }
+
+    public void frameSent() {
+        framesOut.incrementAndGet();
+    }
+
+    /**
+     * A connection was turned away for being over the {@link org.webbitserver.netty.ConnectionLimits}.
+     */
+    public void connectionRejected() {
+        rejectedConnections.incrementAndGet();
+        rejectedConnectionsOpen.incrementAndGet();
+    }
+
+    /**
+     * A connection that was turned away has closed.
+     */
+    public void rejectedConnectionClosed() {
+        rejectedConnectionsOpen.decrementAndGet();
+    }
+
+    /**
+     * A request was turned away for being over the {@link org.webbitserver.netty.ConnectionLimits}.
+     */
+    public void requestRejected() {
+        rejectedRequests.incrementAndGet();
+    }
+
+    /**
+     * Wraps an executor so that the number of tasks waiting to run on it is tracked as the executor queue depth.
+     */
+    public Executor instrument(final Executor executor) {
+        return new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                executorQueueDepth.incrementAndGet();
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        executorQueueDepth.decrementAndGet();
+                        command.run();
+                    }
+                });
+            }
+        };
+    }
+
+    // Querying
+
+    public long openConnections(ConnectionType type) {
+        return openConnections[type.ordinal()].get();
+    }
+
+    public Meter requests() {
+        return requests;
+    }
+
+    public Histogram latency() {
+        return latency;
+    }
+
+    /**
+     * @return latency histogram for responses with the given status code, or null if there have been none
+     */
+    public Histogram latency(int status) {
+        return latencyByStatus.get(status);
+    }
+
+    /**
+     * @return latency histogram for requests that matched the given route, or null if there have been none
+     * @see #ROUTE
+     */
+    public Histogram latency(String route) {
+        return latencyByRoute.get(route);
+    }
+
+    /**
+     * Time requests spend queueing for the handler executor.
+     */
+    public Histogram dispatchDelay() {
+        return dispatchDelay;
+    }
+
+    /**
+     * Time from receiving requests until their responses have been written out, which, unlike {@link #latency()},
+     * includes waiting for earlier responses on the connection and for the socket to take the bytes.
+     */
+    public Histogram flushLatency() {
+        return flushLatency;
+    }
+
+    public long bytesIn() {
+        return bytesIn.get();
+    }
+
+    public long bytesOut() {
+        return bytesOut.get();
+    }
+
+    public long webSocketFramesIn() {
+        return framesIn.get();
+    }
+
+    public long webSocketFramesOut() {
+        return framesOut.get();
+    }
+
+    public long executorQueueDepth() {
+        return executorQueueDepth.get();
+    }
+
+    public long rejectedConnections() {
+        return rejectedConnections.get();
+    }
+
+    /**
+     * Connections that were turned away but are still open, waiting to be sent their 503 or to close.
+     */
+    public long rejectedConnectionsOpen() {
+        return rejectedConnectionsOpen.get();
+    }
+
+    public long rejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    /**
+     * Passes every metric to the reporter.
+     */
+    public void report(MetricsReporter reporter) {
+        for (ConnectionType type : ConnectionType.values()) {
+            reporter.gauge("connections." + type.name().toLowerCase(), openConnections(type));
+        }
+        reporter.gauge("bytes.in", bytesIn());
+        reporter.gauge("bytes.out", bytesOut());
+        reporter.gauge("websocket.frames.in", webSocketFramesIn());
+        reporter.gauge("websocket.frames.out", webSocketFramesOut());
+        reporter.gauge("executor.queue", executorQueueDepth());
+        reporter.gauge("rejected.connections", rejectedConnections());
+        reporter.gauge("rejected.connections.open", rejectedConnectionsOpen());
+        reporter.gauge("rejected.requests", rejectedRequests());
+        reporter.meter("requests", requests);
+        reporter.histogram("latency", latency);
+        reporter.histogram("latency.dispatch", dispatchDelay);
+        reporter.histogram("latency.flushed", flushLatency);
+        for (Map.Entry<Integer, Histogram> entry : new TreeMap<Integer, Histogram>(latencyByStatus).entrySet()) {
+            reporter.histogram("latency.status." + entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, Histogram> entry : new TreeMap<String, Histogram>(latencyByRoute).entrySet()) {
+            reporter.histogram("latency.route." + entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static <K> Histogram histogram(ConcurrentMap<K, Histogram> histograms, K key) {
+        Histogram histogram = histograms.get(key);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = histograms.putIfAbsent(key, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+}
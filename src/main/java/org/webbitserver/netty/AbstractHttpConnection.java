@@ -1,18 +1,22 @@
 package org.webbitserver.netty;
 
 import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.webbitserver.HttpConnection;
 
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 
 public abstract class AbstractHttpConnection implements HttpConnection {
     private final Executor executor;
     private final NettyHttpRequest nettyHttpRequest;
     private final ChannelHandlerContext ctx;
+    private final Queue<Runnable> writableTasks = new ConcurrentLinkedQueue<Runnable>();
 
     public AbstractHttpConnection(ChannelHandlerContext ctx, NettyHttpRequest nettyHttpRequest, Executor executor) {
         this.ctx = ctx;
@@ -24,6 +28,10 @@ public abstract class AbstractHttpConnection implements HttpConnection {
         ctx.getChannel().write(message);
     }
 
+    protected Channel channel() {
+        return ctx.getChannel();
+    }
+
     protected void closeChannel() {
         ctx.getChannel().write(ChannelBuffers.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
     }
@@ -61,4 +69,28 @@ public abstract class AbstractHttpConnection implements HttpConnection {
     public void execute(Runnable command) {
         handlerExecutor().execute(command);
     }
+
+    @Override
+    public boolean writable() {
+        return ctx.getChannel().isWritable();
+    }
+
+    @Override
+    public void whenWritable(Runnable task) {
+        writableTasks.add(task);
+        // Checked after adding, so a change in between still finds the task.
+        writabilityChanged();
+    }
+
+    /**
+     * Called when the channel's writability may have changed, to run the tasks waiting for it.
+     */
+    void writabilityChanged() {
+        if (writable()) {
+            Runnable task;
+            while ((task = writableTasks.poll()) != null) {
+                execute(task);
+            }
+        }
+    }
 }
@@ -0,0 +1,258 @@
+package org.webbitserver.netty;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.handler.ssl.SslHandler;
+import org.jboss.netty.util.CharsetUtil;
+import org.webbitserver.metrics.WebServerMetrics;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Enforces {@link ConnectionLimits}. One instance is shared by every connection.
+ * <p/>
+ * Connections are counted as they connect, with compare-and-set loops rather than locks, so a flood of new
+ * connections doesn't contend on the accepting thread. A connection over the limits gets no further: none of its
+ * events reach the rest of the pipeline, and it is answered with a canned 503 and closed. On a plain listener that
+ * happens as soon as it connects. It sits after any SSL handler so the 503 can be encrypted, which means waiting for
+ * the client's request on an SSL listener. Either way a rejected connection is closed after
+ * {@link ConnectionLimits#rejectionTimeout(long)}, so clients that connect and send nothing can't hold on to it.
+ * <p/>
+ * It also hands out the permits that limit the number of requests in flight, which
+ * {@link NettyHttpChannelHandler} takes for each request.
+ */
+public class AdmissionControlHandler extends SimpleChannelUpstreamHandler {
+    private static final Object REJECTED = new Object();
+    private static final Object RESPONDED = new Object();
+    // Admitted connections whose remote address isn't known are only counted against the overall limit.
+    private static final Object UNKNOWN_ADDRESS = new Object();
+
+    private final ConnectionLimits limits;
+    private final WebServerMetrics metrics;
+    private final ScheduledExecutorService timeouts;
+    private final byte[] rejection;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger rejectedConnections = new AtomicInteger();
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+    private final ConcurrentMap<InetAddress, AtomicInteger> connectionsByAddress = new ConcurrentHashMap<InetAddress, AtomicInteger>();
+
+    /**
+     * @param timeouts closes rejected connections that outstay {@link ConnectionLimits#rejectionTimeout(long)}
+     */
+    public AdmissionControlHandler(ConnectionLimits limits, WebServerMetrics metrics, ScheduledExecutorService timeouts) {
+        this.limits = limits;
+        this.metrics = metrics;
+        this.timeouts = timeouts;
+        String retryAfter = limits.retryAfterSeconds() < 0 ? "" : "Retry-After: " + limits.retryAfterSeconds() + "\r\n";
+        this.rejection = ("HTTP/1.1 503 Service Unavailable\r\n" +
+                "Content-Length: 0\r\n" +
+                "Connection: close\r\n" +
+                retryAfter +
+                "\r\n").getBytes(CharsetUtil.US_ASCII);
+    }
+
+    @Override
+    public void handleUpstream(ChannelHandlerContext ctx, ChannelEvent e) throws Exception {
+        Object state = ctx.getAttachment();
+        if (state == REJECTED || state == RESPONDED) {
+            if (state == REJECTED && e instanceof MessageEvent) {
+                respond(ctx, e.getChannel());
+            } else if (closed(e)) {
+                ctx.setAttachment(null);
+                rejectedConnections.decrementAndGet();
+                if (metrics != null) {
+                    metrics.rejectedConnectionClosed();
+                }
+            }
+            return;
+        }
+        super.handleUpstream(ctx, e);
+    }
+
+    @Override
+    public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        Channel channel = e.getChannel();
+        InetAddress address = remoteAddress(channel);
+        if (acquireConnection(address)) {
+            ctx.setAttachment(address == null ? UNKNOWN_ADDRESS : address);
+            super.channelConnected(ctx, e);
+            return;
+        }
+
+        ctx.setAttachment(REJECTED);
+        rejectedConnections.incrementAndGet();
+        if (metrics != null) {
+            metrics.connectionRejected();
+        }
+        if (!limits.respondWhenRejected()) {
+            channel.close();
+            return;
+        }
+        closeAfterTimeout(channel);
+        if (!encrypted(ctx.getPipeline())) {
+            // Nothing to wait for: the 503 doesn't depend on the request.
+            respond(ctx, channel);
+        }
+    }
+
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        Object state = ctx.getAttachment();
+        if (state != null) {
+            ctx.setAttachment(null);
+            releaseConnection(state instanceof InetAddress ? (InetAddress) state : null);
+        }
+        super.channelClosed(ctx, e);
+    }
+
+    /**
+     * Takes a permit for a request, if fewer than the maximum are in flight.
+     *
+     * @return whether the request may go ahead, in which case {@link #releaseRequest()} must be called once
+     */
+    public boolean tryAcquireRequest() {
+        if (!tryIncrement(inFlightRequests, limits.maxInFlightRequests())) {
+            if (metrics != null) {
+                metrics.requestRejected();
+            }
+            return false;
+        }
+        return true;
+    }
+
+    public void releaseRequest() {
+        inFlightRequests.decrementAndGet();
+    }
+
+    /**
+     * The number of connections that have been admitted and are still open.
+     */
+    public int connections() {
+        return connections.get();
+    }
+
+    /**
+     * The number of connections that have been turned away but are not closed yet.
+     */
+    public int rejectedConnections() {
+        return rejectedConnections.get();
+    }
+
+    public int inFlightRequests() {
+        return inFlightRequests.get();
+    }
+
+    int retryAfterSeconds() {
+        return limits.retryAfterSeconds();
+    }
+
+    private void respond(ChannelHandlerContext ctx, Channel channel) {
+        ctx.setAttachment(RESPONDED);
+        ChannelFuture written = Channels.future(channel);
+        written.addListener(ChannelFutureListener.CLOSE);
+        Channels.write(ctx, written, ChannelBuffers.wrappedBuffer(rejection));
+    }
+
+    private void closeAfterTimeout(final Channel channel) {
+        try {
+            timeouts.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    channel.close();
+                }
+            }, limits.rejectionTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The server is stopping.
+            channel.close();
+        }
+    }
+
+    private static boolean closed(ChannelEvent e) {
+        return e instanceof ChannelStateEvent
+                && ((ChannelStateEvent) e).getState() == ChannelState.OPEN
+                && !Boolean.TRUE.equals(((ChannelStateEvent) e).getValue());
+    }
+
+    private static boolean encrypted(ChannelPipeline pipeline) {
+        return pipeline.get(SslHandler.class) != null || pipeline.get(SniHandler.class) != null;
+    }
+
+    private boolean acquireConnection(InetAddress address) {
+        if (!tryIncrement(connections, limits.maxConnections())) {
+            return false;
+        }
+        if (address == null || limits.maxConnectionsPerAddress() == ConnectionLimits.UNLIMITED) {
+            return true;
+        }
+        while (true) {
+            AtomicInteger count = connectionsByAddress.get(address);
+            if (count == null) {
+                AtomicInteger created = new AtomicInteger(1);
+                count = connectionsByAddress.putIfAbsent(address, created);
+                if (count == null) {
+                    return true;
+                }
+            }
+            int current = count.get();
+            if (current < 0) {
+                // Retired as its last connection closed; wait for it to go from the map, and start again.
+                connectionsByAddress.remove(address, count);
+                continue;
+            }
+            if (current >= limits.maxConnectionsPerAddress()) {
+                connections.decrementAndGet();
+                return false;
+            }
+            if (count.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void releaseConnection(InetAddress address) {
+        connections.decrementAndGet();
+        if (address == null || limits.maxConnectionsPerAddress() == ConnectionLimits.UNLIMITED) {
+            return;
+        }
+        AtomicInteger count = connectionsByAddress.get(address);
+        // Retiring the count with -1 stops a connection opening meanwhile from adding to it after it is removed.
+        if (count != null && count.decrementAndGet() == 0 && count.compareAndSet(0, -1)) {
+            connectionsByAddress.remove(address, count);
+        }
+    }
+
+    private static boolean tryIncrement(AtomicInteger counter, int max) {
+        while (true) {
+            int current = counter.get();
+            if (current >= max) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private static InetAddress remoteAddress(Channel channel) {
+        SocketAddress address = channel.getRemoteAddress();
+        return address instanceof InetSocketAddress ? ((InetSocketAddress) address).getAddress() : null;
+    }
+}
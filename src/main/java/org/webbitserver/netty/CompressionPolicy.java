@@ -0,0 +1,125 @@
+package org.webbitserver.netty;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Which responses are compressed for clients that accept gzip or deflate, and how hard.
+ * <p/>
+ * Compressing costs CPU on every response, which is only worth spending where it saves enough bytes. So bodies
+ * smaller than {@link #minimumSize(int)} are sent as they are, as are content types that are already compressed,
+ * such as images and archives. Content types can be listed with {@link #allow(String...)} and
+ * {@link #deny(String...)}, either exactly ("application/json") or by major type ("text/*"); parameters such as
+ * the charset are ignored. A handler can also opt a single response out with
+ * {@link org.webbitserver.HttpResponse#compress(boolean)}.
+ *
+ * @see NettyWebServer#compression(CompressionPolicy)
+ */
+public class CompressionPolicy {
+    /**
+     * Types served by {@link org.webbitserver.handler.AbstractResourceHandler} whose formats are already compressed,
+     * plus the common ones it doesn't know about.
+     */
+    public static final Set<String> ALREADY_COMPRESSED = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            "image/gif", "image/jpeg", "image/png", "image/webp",
+            "application/zip", "application/gzip", "application/x-gzip", "application/x-compress",
+            "application/x-bzip2", "application/x-7z-compressed", "application/pdf",
+            "audio/*", "video/*")));
+
+    private int minimumSize = 64;
+    private int level = 6;
+    private final Set<String> allowed = new HashSet<String>();
+    private final Set<String> denied = new HashSet<String>(ALREADY_COMPRESSED);
+    private boolean reuseDeflaters = false;
+
+    /**
+     * Bodies smaller than this many bytes are not compressed. Defaults to 64, below which gzip's own header and
+     * trailer tend to outweigh the savings.
+     */
+    public CompressionPolicy minimumSize(int bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("minimumSize must not be negative");
+        }
+        this.minimumSize = bytes;
+        return this;
+    }
+
+    /**
+     * Compression level, from 1 (fastest) to 9 (smallest). Defaults to 6.
+     */
+    public CompressionPolicy level(int level) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("level must be between 1 and 9");
+        }
+        this.level = level;
+        return this;
+    }
+
+    /**
+     * Only compress these content types. Until this is called, every type not denied is compressed, including
+     * responses without a Content-Type.
+     */
+    public CompressionPolicy allow(String... contentTypes) {
+        for (String contentType : contentTypes) {
+            allowed.add(normalize(contentType));
+            denied.remove(normalize(contentType));
+        }
+        return this;
+    }
+
+    /**
+     * Never compress these content types. {@link #ALREADY_COMPRESSED} are denied from the start.
+     */
+    public CompressionPolicy deny(String... contentTypes) {
+        for (String contentType : contentTypes) {
+            denied.add(normalize(contentType));
+            allowed.remove(normalize(contentType));
+        }
+        return this;
+    }
+
+    /**
+     * Whether each thread that writes responses keeps a Deflater to reuse, rather than making and ending one for
+     * every response. Reuse saves allocating the Deflater's native buffers each time, at the cost of keeping them
+     * for as long as the thread lives. Off by default.
+     */
+    public CompressionPolicy reuseDeflaters(boolean reuseDeflaters) {
+        this.reuseDeflaters = reuseDeflaters;
+        return this;
+    }
+
+    int minimumSize() {
+        return minimumSize;
+    }
+
+    int level() {
+        return level;
+    }
+
+    Set<String> allowed() {
+        return new HashSet<String>(allowed);
+    }
+
+    Set<String> denied() {
+        return new HashSet<String>(denied);
+    }
+
+    boolean reuseDeflaters() {
+        return reuseDeflaters;
+    }
+
+    /**
+     * Lower case, without parameters.
+     */
+    static String normalize(String contentType) {
+        int semicolon = contentType.indexOf(';');
+        if (semicolon != -1) {
+            contentType = contentType.substring(0, semicolon);
+        }
+        return contentType.trim().toLowerCase(Locale.ENGLISH);
+    }
+}
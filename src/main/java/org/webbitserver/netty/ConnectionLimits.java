@@ -0,0 +1,116 @@
+package org.webbitserver.netty;
+
+/**
+ * Limits on how much work the server takes on at once, so that a surge of clients, such as every browser
+ * reconnecting after a restart, can't exhaust its file descriptors or heap.
+ * <p/>
+ * Connections over the limits are answered with a 503 Service Unavailable and closed without reaching any handler.
+ * On plain listeners the 503 is sent as soon as the client connects, without reading anything from it. On SSL
+ * listeners it can only be sent once the handshake is done and the client's request has been received, and the
+ * connection is closed after the {@link #rejectionTimeout(long) rejection timeout} if that takes too long. Requests
+ * over the limit get a 503 too, but the connection stays open. Either way the response can carry a Retry-After
+ * header to spread the clients' retries out. Nothing is limited by default.
+ *
+ * @see NettyWebServer#connectionLimits(ConnectionLimits)
+ */
+public class ConnectionLimits {
+    static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private int maxConnections = UNLIMITED;
+    private int maxConnectionsPerAddress = UNLIMITED;
+    private int maxInFlightRequests = UNLIMITED;
+    private int retryAfterSeconds = -1;
+    private boolean respondWhenRejected = true;
+    private long rejectionTimeoutMillis = 2000;
+
+    /**
+     * Maximum number of open connections, of any kind.
+     */
+    public ConnectionLimits maxConnections(int maxConnections) {
+        this.maxConnections = atLeastOne("maxConnections", maxConnections);
+        return this;
+    }
+
+    /**
+     * Maximum number of open connections from a single remote IP address.
+     */
+    public ConnectionLimits maxConnectionsPerAddress(int maxConnectionsPerAddress) {
+        this.maxConnectionsPerAddress = atLeastOne("maxConnectionsPerAddress", maxConnectionsPerAddress);
+        return this;
+    }
+
+    /**
+     * Maximum number of HTTP requests being handled at once, across all connections. A request stops counting
+     * once its response has ended or its connection has been upgraded to a WebSocket or EventSource.
+     */
+    public ConnectionLimits maxInFlightRequests(int maxInFlightRequests) {
+        this.maxInFlightRequests = atLeastOne("maxInFlightRequests", maxInFlightRequests);
+        return this;
+    }
+
+    /**
+     * Adds a Retry-After header with this many seconds to the 503 responses.
+     */
+    public ConnectionLimits retryAfter(int seconds) {
+        if (seconds < 0) {
+            throw new IllegalArgumentException("retryAfter must not be negative");
+        }
+        this.retryAfterSeconds = seconds;
+        return this;
+    }
+
+    /**
+     * Whether connections over the limits are sent a 503 before being closed, as they are by default, or just
+     * closed straight away. Closing straight away frees the connection sooner, but clients see it as a network
+     * error rather than an overloaded server.
+     */
+    public ConnectionLimits respondWhenRejected(boolean respondWhenRejected) {
+        this.respondWhenRejected = respondWhenRejected;
+        return this;
+    }
+
+    /**
+     * How long a rejected connection may stay open waiting for its 503 before it is closed anyway. Plain connections
+     * are answered as soon as they connect, but on an SSL listener the 503 has to wait for the client to complete
+     * the handshake and send a request, and a client that never does must not hold on to the connection. Defaults to
+     * 2 seconds.
+     */
+    public ConnectionLimits rejectionTimeout(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("rejectionTimeout must not be negative");
+        }
+        this.rejectionTimeoutMillis = millis;
+        return this;
+    }
+
+    int maxConnections() {
+        return maxConnections;
+    }
+
+    int maxConnectionsPerAddress() {
+        return maxConnectionsPerAddress;
+    }
+
+    int maxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    int retryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    boolean respondWhenRejected() {
+        return respondWhenRejected;
+    }
+
+    long rejectionTimeoutMillis() {
+        return rejectionTimeoutMillis;
+    }
+
+    private static int atLeastOne(String name, int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException(name + " must be at least 1");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,61 @@
+package org.webbitserver.netty;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.channel.WriteCompletionEvent;
+import org.webbitserver.metrics.WebServerMetrics;
+import org.webbitserver.metrics.WebServerMetrics.ConnectionType;
+
+/**
+ * Sits at the head of the pipeline (only when metrics are enabled), counting the connection and the raw bytes
+ * read from and written to it.
+ */
+public class ConnectionMetricsHandler extends SimpleChannelHandler {
+    private final WebServerMetrics metrics;
+    private volatile ConnectionType type = ConnectionType.HTTP;
+
+    public ConnectionMetricsHandler(WebServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public WebServerMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Reclassifies this connection, e.g. when it is upgraded to a WebSocket.
+     */
+    public void upgradedTo(ConnectionType newType) {
+        metrics.connectionUpgraded(type, newType);
+        type = newType;
+    }
+
+    @Override
+    public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        metrics.connectionOpened(type);
+        super.channelOpen(ctx, e);
+    }
+
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        metrics.connectionClosed(type);
+        super.channelClosed(ctx, e);
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        if (e.getMessage() instanceof ChannelBuffer) {
+            metrics.bytesRead(((ChannelBuffer) e.getMessage()).readableBytes());
+        }
+        super.messageReceived(ctx, e);
+    }
+
+    @Override
+    public void writeComplete(ChannelHandlerContext ctx, WriteCompletionEvent e) throws Exception {
+        metrics.bytesWritten(e.getWrittenAmount());
+        super.writeComplete(ctx, e);
+    }
+}
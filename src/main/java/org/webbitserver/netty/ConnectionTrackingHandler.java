@@ -34,6 +34,13 @@ public class ConnectionTrackingHandler extends SimpleChannelHandler {
         }
     }
 
+    /**
+     * The connections that are currently open. Closed connections drop out of the group by themselves.
+     */
+    public ChannelGroup openConnections() {
+        return openConnections;
+    }
+
     public void closeAllConnections() {
         closingLock.writeLock().lock();
         try {
@@ -0,0 +1,20 @@
+package org.webbitserver.netty;
+
+import org.jboss.netty.channel.Channel;
+
+/**
+ * Implemented by the handler at the end of a connection's pipeline, to wind the connection down gracefully when
+ * the server is drained.
+ *
+ * @see NettyWebServer#drain(long, java.util.concurrent.TimeUnit)
+ */
+interface Drainable {
+    /**
+     * Asks the client to go away, letting anything in progress finish. May be called from any thread.
+     *
+     * @param channel              the connection's channel
+     * @param reconnectDelayMillis how long the client should wait before reconnecting, for connections that can
+     *                             tell it
+     */
+    void drain(Channel channel, long reconnectDelayMillis);
+}
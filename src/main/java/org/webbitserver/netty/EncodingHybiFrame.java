@@ -7,6 +7,7 @@ import org.jboss.netty.handler.codec.frame.TooLongFrameException;
 import static org.webbitserver.netty.HybiWebSocketFrameDecoder.applyMask;
 
 public class EncodingHybiFrame {
+    private static final int MAX_COPIED_PAYLOAD = 1024;
 
     private final int opcode;
     private final boolean fin;
@@ -33,8 +34,6 @@ public class EncodingHybiFrame {
         int b1 = maskingKey != null ? 0x80 : 0x00;
 
         int headerLength = maskingKey != null ? 6 : 2;
-
-        ChannelBuffer header;
         int length = data.readableBytes();
 
         if (opcode == Opcodes.OPCODE_PING && length > 125) {
@@ -43,24 +42,24 @@ public class EncodingHybiFrame {
 
         if (length <= 125) {
             b1 |= length & 0x7F;
-            header = createBuffer(headerLength + length);
-            header.writeByte(b0);
-            header.writeByte(b1);
         } else if (length <= 0xFFFF) {
             b1 |= 126;
             headerLength += 2;
-            header = createBuffer(headerLength + length);
-            header.writeByte(b0);
-            header.writeByte(b1);
-            header.writeByte((length >>> 8) & 0xFF);
-            header.writeByte((length) & 0xFF);
         } else {
             b1 |= 127;
             headerLength += 8;
-            header = createBuffer(headerLength + length);
-            header.writeByte(b0);
-            header.writeByte(b1);
+        }
+
+        // Small payloads are copied in after the header, which is cheaper than wrapping the two in a composite
+        // buffer. Larger ones are left where they are.
+        boolean copyPayload = length <= MAX_COPIED_PAYLOAD;
+        ChannelBuffer header = ChannelBuffers.buffer(copyPayload ? headerLength + length : headerLength);
+        header.writeByte(b0);
+        header.writeByte(b1);
+        if (length > 0xFFFF) {
             header.writeLong(length);
+        } else if (length > 125) {
+            header.writeShort(length);
         }
 
         if (maskingKey != null) {
@@ -68,10 +67,10 @@ public class EncodingHybiFrame {
             applyMask(data, maskingKey);
         }
 
+        if (copyPayload) {
+            header.writeBytes(data, data.readerIndex(), length);
+            return header;
+        }
         return ChannelBuffers.wrappedBuffer(header, data);
     }
-
-    private ChannelBuffer createBuffer(int length) {
-        return ChannelBuffers.buffer(length);
-    }
 }
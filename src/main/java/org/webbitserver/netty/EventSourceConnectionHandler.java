@@ -1,15 +1,18 @@
 package org.webbitserver.netty;
 
+import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.ExceptionEvent;
 import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
 import org.webbitserver.EventSourceHandler;
+import org.webbitserver.EventSourceMessage;
 
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.util.concurrent.Executor;
 
-public class EventSourceConnectionHandler extends SimpleChannelUpstreamHandler {
+public class EventSourceConnectionHandler extends SimpleChannelUpstreamHandler implements Drainable {
+    private final NettyEventSourceConnection eventSourceConnection;
     private final ConnectionHelper connectionHelper;
 
     public EventSourceConnectionHandler(
@@ -19,6 +22,7 @@ public class EventSourceConnectionHandler extends SimpleChannelUpstreamHandler {
             final NettyEventSourceConnection eventSourceConnection,
             final EventSourceHandler eventSourceHandler
     ) {
+        this.eventSourceConnection = eventSourceConnection;
         this.connectionHelper = new ConnectionHelper(executor, exceptionHandler, ioExceptionHandler) {
             @Override
             protected void fireOnClose() throws Exception {
@@ -32,6 +36,20 @@ public class EventSourceConnectionHandler extends SimpleChannelUpstreamHandler {
         connectionHelper.fireOnClose(e);
     }
 
+    /**
+     * Tells the client when to reconnect, so that clients don't all come back at once, then closes the stream.
+     */
+    @Override
+    public void drain(Channel channel, long reconnectDelayMillis) {
+        eventSourceConnection.send(new EventSourceMessage().retry(reconnectDelayMillis));
+        eventSourceConnection.close();
+    }
+
+    @Override
+    public void channelInterestChanged(ChannelHandlerContext ctx, ChannelStateEvent e) {
+        eventSourceConnection.writabilityChanged();
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
         connectionHelper.fireConnectionException(e);
@@ -0,0 +1,33 @@
+package org.webbitserver.netty;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+import org.webbitserver.metrics.WebServerMetrics;
+
+/**
+ * Counts WebSocket frames. Added between the frame codecs and the connection handler when a connection is upgraded
+ * and metrics are enabled.
+ */
+public class FrameMetricsHandler extends SimpleChannelHandler {
+    private final WebServerMetrics metrics;
+
+    public FrameMetricsHandler(WebServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        metrics.frameReceived();
+        super.messageReceived(ctx, e);
+    }
+
+    @Override
+    public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        if (!(e.getMessage() instanceof ChannelBuffer)) {
+            metrics.frameSent();
+        }
+        super.writeRequested(ctx, e);
+    }
+}
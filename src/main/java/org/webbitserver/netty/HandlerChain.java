@@ -0,0 +1,61 @@
+package org.webbitserver.netty;
+
+import org.webbitserver.HttpHandler;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+
+/**
+ * The server's handlers, which can be changed while it is running: every change copies the array and swaps it in
+ * whole, so {@link #iterator()} walks the chain as it was when the iterator was made. Each request takes one
+ * iterator when it arrives, so requests in flight finish with the handlers they started with while new requests
+ * see changes straight away, and reading the chain takes no locks.
+ */
+class HandlerChain extends AbstractList<HttpHandler> {
+    private static final HttpHandler[] EMPTY = new HttpHandler[0];
+
+    private volatile HttpHandler[] handlers = EMPTY;
+
+    @Override
+    public Iterator<HttpHandler> iterator() {
+        return Collections.unmodifiableList(Arrays.asList(handlers)).iterator();
+    }
+
+    @Override
+    public HttpHandler get(int index) {
+        return handlers[index];
+    }
+
+    @Override
+    public int size() {
+        return handlers.length;
+    }
+
+    @Override
+    public synchronized boolean add(HttpHandler handler) {
+        HttpHandler[] copy = Arrays.copyOf(handlers, handlers.length + 1);
+        copy[handlers.length] = handler;
+        handlers = copy;
+        return true;
+    }
+
+    @Override
+    public synchronized boolean remove(Object handler) {
+        int index = Arrays.asList(handlers).indexOf(handler);
+        if (index < 0) {
+            return false;
+        }
+        HttpHandler[] copy = new HttpHandler[handlers.length - 1];
+        System.arraycopy(handlers, 0, copy, 0, index);
+        System.arraycopy(handlers, index + 1, copy, index, copy.length - index);
+        handlers = copy;
+        return true;
+    }
+
+    synchronized void replace(Collection<? extends HttpHandler> replacements) {
+        handlers = replacements.toArray(new HttpHandler[replacements.size()]);
+    }
+}
@@ -0,0 +1,65 @@
+package org.webbitserver.netty;
+
+import org.webbitserver.helpers.Base64;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hashing for WebSocket handshakes.
+ * <p/>
+ * A MessageDigest is stateful and must not be shared between threads, so each thread gets its own
+ * (along with a scratch buffer for the key) and parallel handshakes never contend or corrupt each other.
+ */
+final class HandshakeDigest {
+    static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    private static final byte[] ACCEPT_GUID_BYTES = ascii(ACCEPT_GUID, new byte[ACCEPT_GUID.length()]);
+
+    private static final ThreadLocal<HandshakeDigest> DIGESTS = new ThreadLocal<HandshakeDigest>() {
+        @Override
+        protected HandshakeDigest initialValue() {
+            return new HandshakeDigest();
+        }
+    };
+
+    private final MessageDigest sha1 = getInstance("SHA1");
+    private final MessageDigest md5 = getInstance("MD5");
+    private byte[] keyBytes = new byte[32];
+
+    private HandshakeDigest() {
+    }
+
+    /**
+     * The Sec-WebSocket-Accept value for a Sec-WebSocket-Key: base64(SHA-1(key + GUID)).
+     */
+    static String acceptKey(String key) {
+        HandshakeDigest digest = DIGESTS.get();
+        if (digest.keyBytes.length < key.length()) {
+            digest.keyBytes = new byte[key.length()];
+        }
+        MessageDigest sha1 = digest.sha1;
+        sha1.update(ascii(key, digest.keyBytes), 0, key.length());
+        sha1.update(ACCEPT_GUID_BYTES);
+        return Base64.encode(sha1.digest());
+    }
+
+    static byte[] md5(byte[] input) {
+        return DIGESTS.get().md5.digest(input);
+    }
+
+    private static byte[] ascii(String s, byte[] out) {
+        for (int i = 0; i < s.length(); i++) {
+            out[i] = (byte) s.charAt(i);
+        }
+        return out;
+    }
+
+    private static MessageDigest getInstance(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new InternalError(algorithm + " not supported on this platform");
+        }
+    }
+}
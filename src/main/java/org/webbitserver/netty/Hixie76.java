@@ -10,9 +10,6 @@ import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.jboss.netty.handler.codec.http.websocket.WebSocketFrameDecoder;
 import org.jboss.netty.handler.codec.http.websocket.WebSocketFrameEncoder;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONNECTION;
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.ORIGIN;
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.SEC_WEBSOCKET_KEY1;
@@ -24,16 +21,7 @@ import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.UPGRADE;
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Values.WEBSOCKET;
 
 public class Hixie76 implements WebSocketVersion {
-    private static final MessageDigest MD5;
-
-    static {
-        try {
-            MD5 = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException e) {
-            throw new InternalError("MD5 not supported on this platform");
-        }
-    }
-
+    private static final HttpResponseStatus HANDSHAKE = new HttpResponseStatus(101, "Web Socket Protocol Handshake");
 
     private final HttpRequest req;
     private final HttpResponse res;
@@ -45,6 +33,10 @@ public class Hixie76 implements WebSocketVersion {
 
     @Override
     public boolean matches() {
+        return matches(req);
+    }
+
+    static boolean matches(HttpRequest req) {
         return req.containsHeader(SEC_WEBSOCKET_KEY1) && req.containsHeader(SEC_WEBSOCKET_KEY2);
     }
 
@@ -52,7 +44,7 @@ public class Hixie76 implements WebSocketVersion {
     public void prepareHandshakeResponse(NettyWebSocketConnection webSocketConnection) {
         webSocketConnection.setVersion("HIXIE-76");
 
-        res.setStatus(new HttpResponseStatus(101, "Web Socket Protocol Handshake"));
+        res.setStatus(HANDSHAKE);
         res.addHeader(UPGRADE, WEBSOCKET);
         res.addHeader(CONNECTION, UPGRADE);
         res.addHeader(SEC_WEBSOCKET_ORIGIN, req.getHeader(ORIGIN));
@@ -65,14 +57,14 @@ public class Hixie76 implements WebSocketVersion {
         // Calculate the answer of the challenge.
         String key1 = req.getHeader(SEC_WEBSOCKET_KEY1);
         String key2 = req.getHeader(SEC_WEBSOCKET_KEY2);
-        int a = (int) (Long.parseLong(key1.replaceAll("[^0-9]", "")) / key1.replaceAll("[^ ]", "").length());
-        int b = (int) (Long.parseLong(key2.replaceAll("[^0-9]", "")) / key2.replaceAll("[^ ]", "").length());
+        int a = keyNumber(key1);
+        int b = keyNumber(key2);
         long c = req.getContent().readLong();
         ChannelBuffer input = ChannelBuffers.buffer(16);
         input.writeInt(a);
         input.writeInt(b);
         input.writeLong(c);
-        ChannelBuffer output = ChannelBuffers.wrappedBuffer(MD5.digest(input.array()));
+        ChannelBuffer output = ChannelBuffers.wrappedBuffer(HandshakeDigest.md5(input.array()));
         res.setContent(output);
     }
 
@@ -86,6 +78,23 @@ public class Hixie76 implements WebSocketVersion {
         return new WebSocketFrameEncoder();
     }
 
+    /**
+     * The digits in the key, read as a number, divided by the number of spaces in the key.
+     */
+    static int keyNumber(String key) {
+        long digits = 0;
+        int spaces = 0;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits = digits * 10 + (c - '0');
+            } else if (c == ' ') {
+                spaces++;
+            }
+        }
+        return (int) (digits / spaces);
+    }
+
     private String getWebSocketLocation(HttpRequest req) {
         // TODO: It should be wss if it was https
         return "ws://" + req.getHeader(HttpHeaders.Names.HOST) + req.getUri();
@@ -4,11 +4,6 @@ import org.jboss.netty.channel.ChannelHandler;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponse;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
-import org.webbitserver.helpers.Base64;
-
-import java.nio.charset.Charset;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONNECTION;
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.UPGRADE;
@@ -18,37 +13,52 @@ public class Hybi implements WebSocketVersion {
     public static final String SEC_WEBSOCKET_VERSION = "Sec-WebSocket-Version";
     public static final String SEC_WEBSOCKET_ACCEPT = "Sec-WebSocket-Accept";
     public static final String SEC_WEBSOCKET_KEY = "Sec-WebSocket-Key";
-    private static final Charset ASCII = Charset.forName("ASCII");
-    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
-    private static final int MIN_HYBI_VERSION = 8;
-    private static final MessageDigest SHA1;
-
-    static {
-        try {
-            SHA1 = MessageDigest.getInstance("SHA1");
-        } catch (NoSuchAlgorithmException e) {
-            throw new InternalError("SHA-1 not supported on this platform");
-        }
-    }
+    static final int MIN_HYBI_VERSION = 8;
+    static final int LATEST_HYBI_VERSION = 13;
+    private static final String UPGRADE_WEBSOCKET = WEBSOCKET.toLowerCase();
 
     private final HttpRequest req;
     private final HttpResponse res;
+    private final int hybiVersion;
 
     public Hybi(HttpRequest req, HttpResponse res) {
+        this(req, res, hybiVersion(req));
+    }
+
+    /**
+     * @param hybiVersion the already parsed {@link #SEC_WEBSOCKET_VERSION}, see {@link #hybiVersion(HttpRequest)}
+     */
+    Hybi(HttpRequest req, HttpResponse res, int hybiVersion) {
         this.req = req;
         this.res = res;
+        this.hybiVersion = hybiVersion;
+    }
+
+    /**
+     * @return the requested version, -1 if this is not a Hybi request, or 0 if the version is not a number
+     */
+    static int hybiVersion(HttpRequest req) {
+        String version = req.getHeader(SEC_WEBSOCKET_VERSION);
+        if (version == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(version.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
     }
 
     @Override
     public boolean matches() {
-        return getHybiVersion() != null;
+        return hybiVersion != -1;
     }
 
     @Override
     public void prepareHandshakeResponse(NettyWebSocketConnection webSocketConnection) {
-        webSocketConnection.setHybiWebSocketVersion(getHybiVersion());
+        webSocketConnection.setHybiWebSocketVersion(hybiVersion);
 
-        if (getHybiVersion() < MIN_HYBI_VERSION) {
+        if (hybiVersion < MIN_HYBI_VERSION) {
             res.setStatus(HttpResponseStatus.UPGRADE_REQUIRED);
             res.setHeader(SEC_WEBSOCKET_VERSION, String.valueOf(MIN_HYBI_VERSION));
             return;
@@ -60,10 +70,10 @@ public class Hybi implements WebSocketVersion {
             return;
         }
 
-        String accept = Base64.encode(sha1(key + ACCEPT_GUID));
+        String accept = HandshakeDigest.acceptKey(key);
 
-        res.setStatus(new HttpResponseStatus(101, "Switching Protocols"));
-        res.addHeader(UPGRADE, WEBSOCKET.toLowerCase());
+        res.setStatus(HttpResponseStatus.SWITCHING_PROTOCOLS);
+        res.addHeader(UPGRADE, UPGRADE_WEBSOCKET);
         res.addHeader(CONNECTION, UPGRADE);
         res.addHeader(SEC_WEBSOCKET_ACCEPT, accept);
     }
@@ -77,12 +87,4 @@ public class Hybi implements WebSocketVersion {
     public ChannelHandler createEncoder() {
         return new HybiWebSocketFrameEncoder();
     }
-
-    private Integer getHybiVersion() {
-        return req.containsHeader(SEC_WEBSOCKET_VERSION) ? Integer.parseInt(req.getHeader(SEC_WEBSOCKET_VERSION).trim()) : null;
-    }
-
-    private byte[] sha1(String s) {
-        return SHA1.digest(s.getBytes(ASCII));
-    }
 }
@@ -34,6 +34,7 @@ public class HybiWebSocketFrameDecoder extends ReplayingDecoder<HybiWebSocketFra
     private byte[] inboundMaskingKey;
 
     private DecodingHybiFrame currentFrame;
+    private volatile boolean closeFrameSent;
 
     public static enum State {
         FRAME_START,
@@ -165,8 +166,12 @@ public class HybiWebSocketFrameDecoder extends ReplayingDecoder<HybiWebSocketFra
                 checkpoint(FRAME_START);
 
                 if (frameOpcode == OPCODE_CLOSE) {
-                    EncodingHybiFrame close = new EncodingHybiFrame(OPCODE_CLOSE, true, 0, outboundMaskingKey, ChannelBuffers.buffer(0));
-                    channel.write(close);
+                    // Only answered if this end hasn't already sent its own (RFC 6455 section 5.5.1), in which case
+                    // this is the answer to it and the closing handshake is done.
+                    if (!closeFrameSent) {
+                        EncodingHybiFrame close = new EncodingHybiFrame(OPCODE_CLOSE, true, 0, outboundMaskingKey, ChannelBuffers.buffer(0));
+                        channel.write(close);
+                    }
                     channel.close();
                     return null;
                 } else if (frameOpcode == OPCODE_CONT) {
@@ -211,6 +216,13 @@ public class HybiWebSocketFrameDecoder extends ReplayingDecoder<HybiWebSocketFra
         }
     }
 
+    /**
+     * Notes that this end has started the closing handshake, so the other end's close frame is not to be answered.
+     */
+    void closeFrameSent() {
+        closeFrameSent = true;
+    }
+
     private void protocolViolation(Channel channel, String reason) throws CorruptedFrameException {
         checkpoint(CORRUPT);
         if (channel.isConnected()) {
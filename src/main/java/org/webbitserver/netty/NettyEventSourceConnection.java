@@ -1,12 +1,11 @@
 package org.webbitserver.netty;
 
 import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.util.CharsetUtil;
 import org.webbitserver.EventSourceConnection;
 
 import java.util.concurrent.Executor;
 
-import static org.jboss.netty.buffer.ChannelBuffers.copiedBuffer;
+import static org.jboss.netty.buffer.ChannelBuffers.wrappedBuffer;
 
 public class NettyEventSourceConnection extends AbstractHttpConnection implements EventSourceConnection {
     public NettyEventSourceConnection(Executor executor, NettyHttpRequest nettyHttpRequest, ChannelHandlerContext ctx) {
@@ -15,7 +14,7 @@ public class NettyEventSourceConnection extends AbstractHttpConnection implement
 
     @Override
     public NettyEventSourceConnection send(org.webbitserver.EventSourceMessage message) {
-        writeMessage(copiedBuffer(message.build(), CharsetUtil.UTF_8));
+        writeMessage(wrappedBuffer(message.toByteBuffer()));
         return this;
     }
 
@@ -1,6 +1,8 @@
 package org.webbitserver.netty;
 
+import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.ExceptionEvent;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
@@ -8,37 +10,65 @@ import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.webbitserver.HttpControl;
 import org.webbitserver.HttpHandler;
+import org.webbitserver.HttpRequest.Phase;
 import org.webbitserver.WebbitException;
+import org.webbitserver.helpers.DateHelper;
+import org.webbitserver.helpers.IdGenerator;
+import org.webbitserver.metrics.WebServerMetrics;
 
 import java.util.List;
 import java.util.concurrent.Executor;
 
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.DATE;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.SERVER;
 import static org.jboss.netty.handler.codec.http.HttpHeaders.isKeepAlive;
 import static org.jboss.netty.handler.codec.http.HttpResponseStatus.OK;
 import static org.jboss.netty.handler.codec.http.HttpVersion.HTTP_1_1;
 
-public class NettyHttpChannelHandler extends SimpleChannelUpstreamHandler {
+public class NettyHttpChannelHandler extends SimpleChannelUpstreamHandler implements Drainable {
 
     private final Executor executor;
     private final List<HttpHandler> httpHandlers;
-    private final Object id;
-    private final long timestamp;
+    private final long connectionId;
+    private final IdGenerator requestIds;
     private final Thread.UncaughtExceptionHandler exceptionHandler;
     private final Thread.UncaughtExceptionHandler ioExceptionHandler;
     private final ConnectionHelper connectionHelper;
+    private final int maxPipelinedRequests;
+    private final WebServerMetrics metrics;
+    private final String serverHeader;
+    private final boolean dateHeader;
+    private final AdmissionControlHandler admission;
+    private final RequestTimer requestTimer;
+    private final ResponseCompressor compressor;
+    private volatile PipelinedResponseQueue responseQueue;
 
     public NettyHttpChannelHandler(Executor executor,
                                    List<HttpHandler> httpHandlers,
-                                   Object id,
-                                   long timestamp,
+                                   long connectionId,
+                                   IdGenerator requestIds,
                                    Thread.UncaughtExceptionHandler exceptionHandler,
-                                   Thread.UncaughtExceptionHandler ioExceptionHandler) {
+                                   Thread.UncaughtExceptionHandler ioExceptionHandler,
+                                   int maxPipelinedRequests,
+                                   WebServerMetrics metrics,
+                                   String serverHeader,
+                                   boolean dateHeader,
+                                   AdmissionControlHandler admission,
+                                   RequestTimer requestTimer,
+                                   ResponseCompressor compressor) {
         this.executor = executor;
         this.httpHandlers = httpHandlers;
-        this.id = id;
-        this.timestamp = timestamp;
+        this.connectionId = connectionId;
+        this.requestIds = requestIds;
         this.exceptionHandler = exceptionHandler;
         this.ioExceptionHandler = ioExceptionHandler;
+        this.maxPipelinedRequests = maxPipelinedRequests;
+        this.metrics = metrics;
+        this.serverHeader = serverHeader;
+        this.dateHeader = dateHeader;
+        this.admission = admission;
+        this.requestTimer = requestTimer;
+        this.compressor = compressor;
 
         connectionHelper = new ConnectionHelper(executor, exceptionHandler, ioExceptionHandler) {
             @Override
@@ -58,9 +88,29 @@ public class NettyHttpChannelHandler extends SimpleChannelUpstreamHandler {
     }
 
     private void handleHttpRequest(final ChannelHandlerContext ctx, MessageEvent messageEvent, HttpRequest httpRequest) {
-        final NettyHttpRequest nettyHttpRequest = new NettyHttpRequest(messageEvent, httpRequest, id, timestamp);
+        PipelinedResponseQueue queue = responseQueue(ctx.getChannel());
+        boolean admitted = admission == null || admission.tryAcquireRequest();
+        final NettyHttpRequest nettyHttpRequest = new NettyHttpRequest(messageEvent, httpRequest, requestIds.next(), connectionId,
+                requestTimer == null ? System.nanoTime() : requestTimer.requestStarted());
+        DefaultHttpResponse response = new DefaultHttpResponse(HTTP_1_1, OK);
+        if (serverHeader != null) {
+            response.setHeader(SERVER, serverHeader);
+        }
+        if (dateHeader) {
+            response.setHeader(DATE, DateHelper.rfc1123Now());
+        }
         final NettyHttpResponse nettyHttpResponse = new NettyHttpResponse(
-                ctx, new DefaultHttpResponse(HTTP_1_1, OK), isKeepAlive(httpRequest), exceptionHandler);
+                ctx, response, queue.enqueue(admitted && admission != null), isKeepAlive(httpRequest), exceptionHandler,
+                metrics, nettyHttpRequest, compressor);
+        if (!admitted) {
+            // Too busy: answered here on the I/O thread, without queueing for the handlers.
+            nettyHttpResponse.status(503);
+            if (admission.retryAfterSeconds() >= 0) {
+                nettyHttpResponse.header("Retry-After", admission.retryAfterSeconds());
+            }
+            nettyHttpResponse.end();
+            return;
+        }
         final HttpControl control = new NettyHttpControl(httpHandlers.iterator(), executor, ctx,
                 nettyHttpRequest, nettyHttpResponse, httpRequest, new DefaultHttpResponse(HTTP_1_1, OK),
                 exceptionHandler, ioExceptionHandler);
@@ -69,6 +119,10 @@ public class NettyHttpChannelHandler extends SimpleChannelUpstreamHandler {
             @Override
             public void run() {
                 try {
+                    nettyHttpRequest.reached(Phase.DISPATCHED);
+                    if (metrics != null) {
+                        metrics.requestDispatched(nettyHttpRequest.phaseNanos(Phase.DISPATCHED) - nettyHttpRequest.phaseNanos(Phase.DECODED));
+                    }
                     control.nextHandler(nettyHttpRequest, nettyHttpResponse);
                 } catch (Exception exception) {
                     exceptionHandler.uncaughtException(Thread.currentThread(), WebbitException.fromException(exception, ctx.getChannel()));
@@ -77,6 +131,38 @@ public class NettyHttpChannelHandler extends SimpleChannelUpstreamHandler {
         });
     }
 
+    /**
+     * Lets any requests already received finish, telling their clients the connection is closing, then closes it.
+     */
+    @Override
+    public void drain(Channel channel, long reconnectDelayMillis) {
+        responseQueue(channel).closeWhenIdle();
+    }
+
+    private PipelinedResponseQueue responseQueue(Channel channel) {
+        PipelinedResponseQueue queue = responseQueue;
+        if (queue == null) {
+            // Usually created on the I/O thread with the first request, but draining may get there first.
+            synchronized (this) {
+                queue = responseQueue;
+                if (queue == null) {
+                    queue = new PipelinedResponseQueue(channel, maxPipelinedRequests, admission);
+                    responseQueue = queue;
+                }
+            }
+        }
+        return queue;
+    }
+
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        PipelinedResponseQueue queue = responseQueue;
+        if (queue != null) {
+            queue.channelClosed();
+        }
+        super.channelClosed(ctx, e);
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, final ExceptionEvent e) {
         connectionHelper.fireConnectionException(e);
@@ -13,6 +13,7 @@ import org.webbitserver.HttpResponse;
 import org.webbitserver.WebSocketConnection;
 import org.webbitserver.WebSocketHandler;
 import org.webbitserver.WebbitException;
+import org.webbitserver.metrics.WebServerMetrics.ConnectionType;
 
 import java.util.Iterator;
 import java.util.concurrent.Executor;
@@ -23,6 +24,7 @@ public class NettyHttpControl implements HttpControl {
     private final Executor executor;
     private final ChannelHandlerContext ctx;
     private final NettyHttpRequest webbitHttpRequest;
+    private final NettyHttpResponse originalResponse;
     private final org.jboss.netty.handler.codec.http.HttpRequest nettyHttpRequest;
     private final org.jboss.netty.handler.codec.http.HttpResponse nettyHttpResponse;
     private final Thread.UncaughtExceptionHandler exceptionHandler;
@@ -48,6 +50,7 @@ public class NettyHttpControl implements HttpControl {
         this.ctx = ctx;
         this.webbitHttpRequest = webbitHttpRequest;
         this.webbitHttpResponse = webbitHttpResponse;
+        this.originalResponse = webbitHttpResponse;
         this.nettyHttpRequest = nettyHttpRequest;
         this.nettyHttpResponse = nettyHttpResponse;
         this.ioExceptionHandler = ioExceptionHandler;
@@ -88,7 +91,9 @@ public class NettyHttpControl implements HttpControl {
     public WebSocketConnection upgradeToWebSocketConnection(WebSocketHandler webSocketHandler) {
         NettyWebSocketConnection webSocketConnection = webSocketConnection();
         WebSocketConnectionHandler webSocketConnectionHandler = new WebSocketConnectionHandler(executor, exceptionHandler, ioExceptionHandler, webSocketConnection, webSocketHandler);
-        performWebSocketHandshake(webSocketConnection, webSocketConnectionHandler);
+        if (!performWebSocketHandshake(webSocketConnection, webSocketConnectionHandler)) {
+            return webSocketConnection;
+        }
 
         try {
             webSocketHandler.onOpen(webSocketConnection);
@@ -154,38 +159,74 @@ public class NettyHttpControl implements HttpControl {
         StaleConnectionTrackingHandler staleConnectionTracker = (StaleConnectionTrackingHandler) p.remove("staleconnectiontracker");
         staleConnectionTracker.stopTracking(ctx.getChannel());
         p.remove("aggregator");
+        removeRequestTimer(p);
         p.replace("handler", "ssehandler", eventSourceConnectionHandler);
+        ConnectionMetricsHandler metricsHandler = p.get(ConnectionMetricsHandler.class);
+        if (metricsHandler != null) {
+            metricsHandler.upgradedTo(ConnectionType.EVENTSOURCE);
+        }
+        originalResponse.releaseForUpgrade();
     }
 
 
-    private void performWebSocketHandshake(NettyWebSocketConnection webSocketConnection, ChannelHandler webSocketConnectionHandler) {
-        WebSocketVersion[] versions = new WebSocketVersion[]{
-                new Hybi(nettyHttpRequest, nettyHttpResponse),
-                new Hixie76(nettyHttpRequest, nettyHttpResponse),
-                new Hixie75(nettyHttpRequest, nettyHttpResponse)
-        };
+    /**
+     * @return whether the connection was upgraded. If not, the client has been told which version to use instead.
+     */
+    private boolean performWebSocketHandshake(NettyWebSocketConnection webSocketConnection, ChannelHandler webSocketConnectionHandler) {
+        WebSocketVersion webSocketVersion = selectWebSocketVersion();
+        if (webSocketVersion == null) {
+            // Ending the response frees its place in the pipelining queue and its admission permit.
+            originalResponse.status(HttpResponseStatus.UPGRADE_REQUIRED.getCode())
+                    .header(Hybi.SEC_WEBSOCKET_VERSION, String.valueOf(Hybi.LATEST_HYBI_VERSION))
+                    .end();
+            return false;
+        }
 
         Channel channel = ctx.getChannel();
         ChannelPipeline pipeline = channel.getPipeline();
 
-        for (WebSocketVersion webSocketVersion : versions) {
-            if (webSocketVersion.matches()) {
-                ChannelHandler webSocketFrameDecoder = webSocketVersion.createDecoder();
-                getReadyToReceiveWebSocketMessages(webSocketFrameDecoder, webSocketConnectionHandler, pipeline, channel);
-                webSocketVersion.prepareHandshakeResponse(webSocketConnection);
-                channel.write(nettyHttpResponse);
-                getReadyToSendWebSocketMessages(webSocketVersion.createEncoder(), pipeline);
-                break;
-            }
+        getReadyToReceiveWebSocketMessages(webSocketVersion.createDecoder(), webSocketConnectionHandler, pipeline, channel);
+        webSocketVersion.prepareHandshakeResponse(webSocketConnection);
+        channel.write(nettyHttpResponse);
+        getReadyToSendWebSocketMessages(webSocketVersion.createEncoder(), pipeline);
+        originalResponse.releaseForUpgrade();
+        return true;
+    }
+
+    /**
+     * Looks at the handshake headers once and creates only the matching version, or returns null if none match or
+     * the client asked for a Hybi version older than we support.
+     * Hixie-75 is never selected, as it cannot be told apart from a plain upgrade request.
+     */
+    private WebSocketVersion selectWebSocketVersion() {
+        int hybiVersion = Hybi.hybiVersion(nettyHttpRequest);
+        if (hybiVersion != -1) {
+            return hybiVersion < Hybi.MIN_HYBI_VERSION ? null : new Hybi(nettyHttpRequest, nettyHttpResponse, hybiVersion);
         }
+        if (Hixie76.matches(nettyHttpRequest)) {
+            return new Hixie76(nettyHttpRequest, nettyHttpResponse);
+        }
+        return null;
     }
 
     private void getReadyToReceiveWebSocketMessages(ChannelHandler webSocketFrameDecoder, ChannelHandler webSocketConnectionHandler, ChannelPipeline p, Channel channel) {
         StaleConnectionTrackingHandler staleConnectionTracker = (StaleConnectionTrackingHandler) p.remove("staleconnectiontracker");
         staleConnectionTracker.stopTracking(channel);
         p.remove("aggregator");
+        removeRequestTimer(p);
         p.replace("decoder", "wsdecoder", webSocketFrameDecoder);
         p.replace("handler", "wshandler", webSocketConnectionHandler);
+        ConnectionMetricsHandler metricsHandler = p.get(ConnectionMetricsHandler.class);
+        if (metricsHandler != null) {
+            metricsHandler.upgradedTo(ConnectionType.WEBSOCKET);
+            p.addBefore("wshandler", "framemetrics", new FrameMetricsHandler(metricsHandler.metrics()));
+        }
+    }
+
+    private void removeRequestTimer(ChannelPipeline p) {
+        if (p.get("requesttimer") != null) {
+            p.remove("requesttimer");
+        }
     }
 
     private void getReadyToSendWebSocketMessages(ChannelHandler webSocketFrameEncoder, ChannelPipeline p) {
@@ -9,6 +9,8 @@ import org.webbitserver.helpers.QueryParameters;
 import java.net.HttpCookie;
 import java.net.SocketAddress;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -19,17 +21,37 @@ public class NettyHttpRequest implements org.webbitserver.HttpRequest {
     private final HttpRequest httpRequest;
     private final MessageEvent messageEvent;
     private final Map<String, Object> data = new HashMap<String, Object>();
-    private final Object id;
+    private final long id;
+    private final long connectionId;
     private final long timestamp;
+    private final long startNanos;
+    private final long decoded;
+    // Reached on other threads, and -1 until then.
+    private volatile long dispatched = -1;
+    private volatile long firstByteWritten = -1;
+    private volatile long lastByteFlushed = -1;
+
+    // Netty builds a new list on every getHeaders() call, so keep the first one and serve everything from that.
+    // Volatile as the request is passed between threads, and these are filled in by whichever uses them first.
+    private volatile List<Map.Entry<String, String>> headers;
+    private volatile List<HttpCookie> cookies;
 
     public QueryParameters queryParameters;
     public QueryParameters postParameters;
 
-    public NettyHttpRequest(MessageEvent messageEvent, HttpRequest httpRequest, Object id, long timestamp) {
+    /**
+     * @param startNanos {@link System#nanoTime()} of when the request's first bytes were read; the request is taken
+     *                   to have been decoded when it is created
+     */
+    public NettyHttpRequest(MessageEvent messageEvent, HttpRequest httpRequest, long id, long connectionId, long startNanos) {
         this.messageEvent = messageEvent;
         this.httpRequest = httpRequest;
         this.id = id;
-        this.timestamp = timestamp;
+        this.connectionId = connectionId;
+        long now = System.nanoTime();
+        this.startNanos = startNanos;
+        this.decoded = now - startNanos;
+        this.timestamp = System.currentTimeMillis() - decoded / 1000000;
     }
 
     @Override
@@ -50,7 +72,38 @@ public class NettyHttpRequest implements org.webbitserver.HttpRequest {
 
     @Override
     public List<String> headers(String name) {
-        return httpRequest.getHeaders(name);
+        List<Map.Entry<String, String>> headers = headerEntries();
+        List<String> result = null;
+        for (int i = 0; i < headers.size(); i++) {
+            Map.Entry<String, String> header = headers.get(i);
+            if (header.getKey().equalsIgnoreCase(name)) {
+                if (result == null) {
+                    result = new ArrayList<String>(2);
+                }
+                result.add(header.getValue());
+            }
+        }
+        return result == null ? Collections.<String>emptyList() : result;
+    }
+
+    @Override
+    public void visitHeaders(HeaderVisitor visitor) {
+        List<Map.Entry<String, String>> headers = headerEntries();
+        for (int i = 0; i < headers.size(); i++) {
+            Map.Entry<String, String> header = headers.get(i);
+            if (!visitor.header(header.getKey(), header.getValue())) {
+                return;
+            }
+        }
+    }
+
+    private List<Map.Entry<String, String>> headerEntries() {
+        List<Map.Entry<String, String>> headers = this.headers;
+        if (headers == null) {
+            headers = httpRequest.getHeaders();
+            this.headers = headers;
+        }
+        return headers;
     }
 
     @Override
@@ -60,12 +113,30 @@ public class NettyHttpRequest implements org.webbitserver.HttpRequest {
 
     @Override
     public List<HttpCookie> cookies() {
-        return InboundCookieParser.parse(headers(COOKIE_HEADER));
+        List<HttpCookie> cookies = this.cookies;
+        if (cookies == null) {
+            final List<HttpCookie> result = new ArrayList<HttpCookie>();
+            // Parsed once per request, unless two threads race to it, when each gets an identical list.
+            visitHeaders(new HeaderVisitor() {
+                @Override
+                public boolean header(String name, String value) {
+                    if (name.equalsIgnoreCase(COOKIE_HEADER)) {
+                        InboundCookieParser.parse(value, result);
+                    }
+                    return true;
+                }
+            });
+            cookies = result;
+            this.cookies = cookies;
+        }
+        return cookies;
     }
 
     @Override
     public HttpCookie cookie(String name) {
-        for (HttpCookie cookie : cookies()) {
+        List<HttpCookie> cookies = cookies();
+        for (int i = 0; i < cookies.size(); i++) {
+            HttpCookie cookie = cookies.get(i);
             if (cookie.getName().equals(name)) {
                 return cookie;
             }
@@ -125,7 +196,7 @@ public class NettyHttpRequest implements org.webbitserver.HttpRequest {
 
     @Override
     public List<Map.Entry<String, String>> allHeaders() {
-        return httpRequest.getHeaders();
+        return Collections.unmodifiableList(headerEntries());
     }
 
     @Override
@@ -174,11 +245,64 @@ public class NettyHttpRequest implements org.webbitserver.HttpRequest {
         return id;
     }
 
+    @Override
+    public long connectionId() {
+        return connectionId;
+    }
+
     @Override
     public long timestamp() {
         return timestamp;
     }
 
+    @Override
+    public long startNanos() {
+        return startNanos;
+    }
+
+    @Override
+    public long phaseNanos(Phase phase) {
+        switch (phase) {
+            case DECODED:
+                return decoded;
+            case DISPATCHED:
+                return dispatched;
+            case FIRST_BYTE_WRITTEN:
+                return firstByteWritten;
+            case LAST_BYTE_FLUSHED:
+                return lastByteFlushed;
+            default:
+                throw new IllegalArgumentException(phase.toString());
+        }
+    }
+
+    /**
+     * Records that the request has just reached the phase, unless it already had. Decoding is recorded when the
+     * request is created.
+     */
+    void reached(Phase phase) {
+        long elapsed = System.nanoTime() - startNanos;
+        switch (phase) {
+            case DISPATCHED:
+                if (dispatched == -1) {
+                    dispatched = elapsed;
+                }
+                break;
+            case FIRST_BYTE_WRITTEN:
+                if (firstByteWritten == -1) {
+                    firstByteWritten = elapsed;
+                }
+                break;
+            case LAST_BYTE_FLUSHED:
+                if (lastByteFlushed == -1) {
+                    lastByteFlushed = elapsed;
+                }
+                break;
+            default:
+                throw new IllegalArgumentException(phase.toString());
+        }
+    }
+
     @Override
     public String toString() {
         return messageEvent.getRemoteAddress() + " " + httpRequest.getMethod() + " " + httpRequest.getUri();
@@ -4,12 +4,15 @@ import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelFutureProgressListener;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.handler.codec.http.HttpResponse;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.jboss.netty.util.CharsetUtil;
+import org.webbitserver.HttpRequest.Phase;
 import org.webbitserver.WebbitException;
 import org.webbitserver.helpers.DateHelper;
+import org.webbitserver.metrics.WebServerMetrics;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -18,30 +21,48 @@ import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Date;
 
-import static org.jboss.netty.buffer.ChannelBuffers.copiedBuffer;
 import static org.jboss.netty.buffer.ChannelBuffers.wrappedBuffer;
 
 public class NettyHttpResponse implements org.webbitserver.HttpResponse {
 
     private static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+    // Largest Content-Length a handler can declare up front and have the body buffer presized to.
+    private static final int MAX_PRESIZE = 1024 * 1024;
 
     private final ChannelHandlerContext ctx;
     private final HttpResponse response;
+    private final PipelinedResponseQueue.Slot slot;
     private final boolean isKeepAlive;
     private final Thread.UncaughtExceptionHandler exceptionHandler;
-    private final ChannelBuffer responseBuffer;
+    private ChannelBuffer responseBuffer;
+    private boolean adoptedContent;
+    private final WebServerMetrics metrics;
+    private final NettyHttpRequest request;
+    private final ResponseCompressor compressor;
     private Charset charset;
+    private boolean compress = true;
+    // Decided by the first write, so that every write of the response agrees with its Content-Encoding.
+    private boolean codingChosen = false;
+    private String coding;
 
     public NettyHttpResponse(ChannelHandlerContext ctx,
                              HttpResponse response,
+                             PipelinedResponseQueue.Slot slot,
                              boolean isKeepAlive,
-                             Thread.UncaughtExceptionHandler exceptionHandler) {
+                             Thread.UncaughtExceptionHandler exceptionHandler,
+                             WebServerMetrics metrics,
+                             NettyHttpRequest request,
+                             ResponseCompressor compressor) {
         this.ctx = ctx;
         this.response = response;
+        this.slot = slot;
         this.isKeepAlive = isKeepAlive;
         this.exceptionHandler = exceptionHandler;
         this.charset = DEFAULT_CHARSET;
-        responseBuffer = ChannelBuffers.dynamicBuffer();
+        this.metrics = metrics;
+        this.request = request;
+        this.compressor = compressor;
+        slot.listenToWrites(new FirstByteTimer());
     }
 
     @Override
@@ -93,6 +114,12 @@ public class NettyHttpResponse implements org.webbitserver.HttpResponse {
         return response.containsHeader(name);
     }
 
+    @Override
+    public NettyHttpResponse compress(boolean compress) {
+        this.compress = compress;
+        return this;
+    }
+
     @Override
     public NettyHttpResponse cookie(HttpCookie httpCookie) {
         return header(SET_COOKIE_HEADER, httpCookie.toString());
@@ -100,27 +127,61 @@ public class NettyHttpResponse implements org.webbitserver.HttpResponse {
 
     @Override
     public NettyHttpResponse content(String content) {
-        return content(copiedBuffer(content, charset()));
+        return content(wrappedBuffer(content.getBytes(charset())), true);
     }
 
     @Override
     public NettyHttpResponse content(byte[] content) {
-        return content(copiedBuffer(content));
+        return content(wrappedBuffer(content), false);
     }
 
     @Override
     public NettyHttpResponse content(ByteBuffer buffer) {
-        return content(wrappedBuffer(buffer));
+        return content(wrappedBuffer(buffer), buffer.isReadOnly());
     }
 
-    private NettyHttpResponse content(ChannelBuffer content) {
+    /**
+     * @param owned whether the buffer was made for this response, or won't change, so can be kept instead of copied
+     */
+    private NettyHttpResponse content(ChannelBuffer content, boolean owned) {
+        if (responseBuffer == null && owned) {
+            // Most responses have a single piece of content, which can then be written as it is.
+            responseBuffer = content;
+            adoptedContent = true;
+            return this;
+        }
+        if (responseBuffer == null || adoptedContent) {
+            int existing = responseBuffer == null ? 0 : responseBuffer.readableBytes();
+            ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(
+                    Math.max(existing + content.readableBytes(), contentLengthHint()));
+            if (responseBuffer != null) {
+                buffer.writeBytes(responseBuffer);
+            }
+            responseBuffer = buffer;
+            adoptedContent = false;
+        }
         responseBuffer.writeBytes(content);
         return this;
     }
 
+    /**
+     * The Content-Length the handler has declared, if any, so the body buffer doesn't have to grow as it's filled.
+     */
+    private int contentLengthHint() {
+        String contentLength = response.getHeader("Content-Length");
+        if (contentLength == null) {
+            return 0;
+        }
+        try {
+            return (int) Math.min(Long.parseLong(contentLength.trim()), MAX_PRESIZE);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     @Override
     public NettyHttpResponse write(String content) {
-        write(copiedBuffer(content, CharsetUtil.UTF_8));
+        write(wrappedBuffer(content.getBytes(CharsetUtil.UTF_8)), false);
         return this;
     }
 
@@ -154,22 +215,84 @@ public class NettyHttpResponse implements org.webbitserver.HttpResponse {
 
     private void flushResponse() {
         try {
+            ChannelBuffer content = responseBuffer == null ? ChannelBuffers.EMPTY_BUFFER : responseBuffer;
             // TODO: Shouldn't have to do this, but without it we sometimes seem to get two Content-Length headers in the response.
             header("Content-Length", (String) null);
-            header("Content-Length", responseBuffer.readableBytes());
-            ChannelFuture future = write(responseBuffer);
-            if (!isKeepAlive) {
-                future.addListener(ChannelFutureListener.CLOSE);
+            header("Content-Length", content.readableBytes());
+            if (slot.closing()) {
+                header("Connection", "close");
             }
+            if (metrics != null) {
+                // Before writing, so the request is counted by the time the client sees the response.
+                metrics.requestCompleted(status(), (String) request.data(WebServerMetrics.ROUTE), System.nanoTime() - request.startNanos());
+            }
+            write(content, true).addListener(new LastByteTimer());
+            slot.end(!isKeepAlive);
         } catch (Exception e) {
             exceptionHandler.uncaughtException(Thread.currentThread(),
                     WebbitException.fromException(e, ctx.getChannel()));
         }
     }
 
-    private ChannelFuture write(ChannelBuffer responseBuffer) {
+    /**
+     * @param whole whether this is the entire body. Responses written in pieces are not compressed.
+     */
+    private ChannelFuture write(ChannelBuffer responseBuffer, boolean whole) {
+        if (!codingChosen) {
+            codingChosen = true;
+            if (compressor != null && compress && whole) {
+                coding = compressor.choose(request.header("Accept-Encoding"), response, responseBuffer.readableBytes());
+            }
+        }
+        if (coding != null) {
+            responseBuffer = compressor.compress(coding, responseBuffer);
+            if (response.containsHeader("Content-Length")) {
+                response.setHeader("Content-Length", responseBuffer.readableBytes());
+            }
+        }
         response.setContent(responseBuffer);
-        return ctx.getChannel().write(response);
+        return slot.write(response);
+    }
+
+    /**
+     * Gives up this response's place in the connection's response order. Used when the connection is
+     * upgraded and the handshake is written directly to the channel instead.
+     */
+    void releaseForUpgrade() {
+        slot.end(false);
+    }
+
+    /**
+     * Listens to every write of the response, whichever gets a byte out first.
+     */
+    private class FirstByteTimer implements ChannelFutureProgressListener {
+        @Override
+        public void operationProgressed(ChannelFuture future, long amount, long current, long total) {
+            request.reached(Phase.FIRST_BYTE_WRITTEN);
+        }
+
+        @Override
+        public void operationComplete(ChannelFuture future) {
+            if (future.isSuccess()) {
+                request.reached(Phase.FIRST_BYTE_WRITTEN);
+            }
+        }
+    }
+
+    /**
+     * Listens to the final write of the response, made when it ends.
+     */
+    private class LastByteTimer implements ChannelFutureListener {
+        @Override
+        public void operationComplete(ChannelFuture future) {
+            if (future.isSuccess()) {
+                request.reached(Phase.FIRST_BYTE_WRITTEN);
+                request.reached(Phase.LAST_BYTE_FLUSHED);
+                if (metrics != null) {
+                    metrics.responseFlushed(request.phaseNanos(Phase.LAST_BYTE_FLUSHED));
+                }
+            }
+        }
     }
 
 }
@@ -2,14 +2,16 @@ package org.webbitserver.netty;
 
 import org.jboss.netty.bootstrap.ServerBootstrap;
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelPipelineFactory;
-import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
 import org.jboss.netty.handler.codec.http.HttpChunkAggregator;
-import org.jboss.netty.handler.codec.http.HttpContentCompressor;
 import org.jboss.netty.handler.codec.http.HttpContentDecompressor;
 import org.jboss.netty.handler.codec.http.HttpRequestDecoder;
-import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
 import org.jboss.netty.handler.ssl.SslHandler;
 import org.webbitserver.EventSourceHandler;
 import org.webbitserver.HttpHandler;
@@ -23,10 +25,11 @@ import org.webbitserver.handler.PathMatchHandler;
 import org.webbitserver.handler.ServerHeaderHandler;
 import org.webbitserver.handler.exceptions.PrintStackTraceExceptionHandler;
 import org.webbitserver.handler.exceptions.SilentExceptionHandler;
-import org.webbitserver.helpers.SslFactory;
+import org.webbitserver.helpers.IdGenerator;
+import org.webbitserver.helpers.SniConfig;
+import org.webbitserver.helpers.SslConfig;
+import org.webbitserver.metrics.WebServerMetrics;
 
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLEngine;
 import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
@@ -35,7 +38,9 @@ import java.net.URI;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -48,19 +53,29 @@ import static org.jboss.netty.channel.Channels.pipeline;
 
 public class NettyWebServer implements WebServer {
     private static final long DEFAULT_STALE_CONNECTION_TIMEOUT = 5000;
+    private static final long DRAIN_POLL_MILLIS = 10;
 
     private final Executor startStopExecutor = Executors.newSingleThreadExecutor();
     private final SocketAddress socketAddress;
     private final URI publicUri;
-    private final List<HttpHandler> handlers = new ArrayList<HttpHandler>();
+    private final HandlerChain handlers = new HandlerChain();
     private final List<ExecutorService> executorServices = new ArrayList<ExecutorService>();
     private final Executor executor;
 
-    private ServerBootstrap bootstrap;
-    private Channel channel;
-    private SSLContext sslContext;
+    private final List<Listener> listeners = new ArrayList<Listener>();
+    private final List<Channel> channels = new CopyOnWriteArrayList<Channel>();
 
-    protected long nextId = 1;
+    private Transport transport = new NioTransport();
+    private ChannelFactory channelFactory;
+    private SocketOptions socketOptions = new SocketOptions();
+    private int acceptors = 1;
+    private SslConfig sslConfig;
+    private SniConfig sniConfig;
+    private String serverHeader;
+    private boolean dateHeader;
+
+    private IdGenerator connectionIds = new IdGenerator();
+    private IdGenerator requestIds = new IdGenerator();
     private Thread.UncaughtExceptionHandler exceptionHandler;
     private Thread.UncaughtExceptionHandler ioExceptionHandler;
     private ConnectionTrackingHandler connectionTrackingHandler;
@@ -70,6 +85,14 @@ public class NettyWebServer implements WebServer {
     private int maxHeaderSize = 8192;
     private int maxChunkSize = 8192;
     private int maxContentLength = 65536;
+    private int maxPipelinedRequests = 16;
+    private WebServerMetrics metrics;
+    private ConnectionLimits connectionLimits;
+    private AdmissionControlHandler admissionControlHandler;
+    private CompressionPolicy compressionPolicy = new CompressionPolicy();
+    private ResponseCompressor responseCompressor;
+    private long minReconnectDelay = 1000;
+    private long maxReconnectDelay = 10000;
 
     public NettyWebServer(int port) {
         this(Executors.newSingleThreadScheduledExecutor(), port);
@@ -101,9 +124,34 @@ public class NettyWebServer implements WebServer {
         setupDefaultHandlers();
     }
 
+    /**
+     * Sets up what every response starts with: a "Server: Webbit" header and a Date header. These are set directly
+     * on each new response rather than by handlers in the chain, as every request needs them.
+     * Handlers can still replace or remove them.
+     */
     protected void setupDefaultHandlers() {
-        add(new ServerHeaderHandler("Webbit"));
-        add(new DateHeaderHandler());
+        serverHeader("Webbit");
+        dateHeader(true);
+    }
+
+    /**
+     * Server header to start every response with, or null for none.
+     *
+     * @see ServerHeaderHandler
+     */
+    public NettyWebServer serverHeader(String serverHeader) {
+        this.serverHeader = serverHeader;
+        return this;
+    }
+
+    /**
+     * Whether to start every response with a Date header.
+     *
+     * @see DateHeaderHandler
+     */
+    public NettyWebServer dateHeader(boolean dateHeader) {
+        this.dateHeader = dateHeader;
+        return this;
     }
 
     @Override
@@ -113,7 +161,20 @@ public class NettyWebServer implements WebServer {
 
     @Override
     public NettyWebServer setupSsl(InputStream keyStore, String storePass, String keyPass) throws WebbitException {
-        this.sslContext = new SslFactory(keyStore, storePass).getServerContext(keyPass);
+        return setupSsl(new SslConfig(keyStore, storePass, keyPass));
+    }
+
+    @Override
+    public NettyWebServer setupSsl(SslConfig sslConfig) {
+        this.sslConfig = sslConfig;
+        this.sniConfig = null;
+        return this;
+    }
+
+    @Override
+    public NettyWebServer setupSsl(SniConfig sniConfig) {
+        this.sniConfig = sniConfig;
+        this.sslConfig = null;
         return this;
     }
 
@@ -147,6 +208,18 @@ public class NettyWebServer implements WebServer {
         return this;
     }
 
+    @Override
+    public NettyWebServer remove(HttpHandler handler) {
+        handlers.remove(handler);
+        return this;
+    }
+
+    @Override
+    public NettyWebServer replaceHandlers(List<? extends HttpHandler> handlers) {
+        this.handlers.replace(handlers);
+        return this;
+    }
+
     @Override
     public NettyWebServer add(String path, HttpHandler handler) {
         return add(new PathMatchHandler(path, handler));
@@ -162,6 +235,19 @@ public class NettyWebServer implements WebServer {
         return add(path, new HttpToEventSourceHandler(handler));
     }
 
+    @Override
+    public NettyWebServer enableMetrics() {
+        if (metrics == null) {
+            metrics = new WebServerMetrics();
+        }
+        return this;
+    }
+
+    @Override
+    public WebServerMetrics metrics() {
+        return metrics;
+    }
+
     @Override
     public Future<NettyWebServer> start() {
         FutureTask<NettyWebServer> future = new FutureTask<NettyWebServer>(new Callable<NettyWebServer>() {
@@ -171,33 +257,7 @@ public class NettyWebServer implements WebServer {
                     throw new IllegalStateException("Server already started.");
                 }
 
-                // Configure the server.
-                bootstrap = new ServerBootstrap();
-
-                // Set up the event pipeline factory.
-                bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
-                    @Override
-                    public ChannelPipeline getPipeline() throws Exception {
-                        long timestamp = timestamp();
-                        Object id = nextId();
-                        ChannelPipeline pipeline = pipeline();
-                        if (sslContext != null) {
-                            SSLEngine sslEngine = sslContext.createSSLEngine();
-                            sslEngine.setUseClientMode(false);
-                            pipeline.addLast("ssl", new SslHandler(sslEngine));
-                        }
-                        pipeline.addLast("staleconnectiontracker", staleConnectionTrackingHandler);
-                        pipeline.addLast("connectiontracker", connectionTrackingHandler);
-                        pipeline.addLast("flashpolicydecoder", new FlashPolicyFileDecoder(executor, exceptionHandler, ioExceptionHandler, getPort()));
-                        pipeline.addLast("decoder", new HttpRequestDecoder(maxInitialLineLength, maxHeaderSize, maxChunkSize));
-                        pipeline.addLast("aggregator", new HttpChunkAggregator(maxContentLength));
-                        pipeline.addLast("decompressor", new HttpContentDecompressor());
-                        pipeline.addLast("encoder", new HttpResponseEncoder());
-                        pipeline.addLast("compressor", new HttpContentCompressor());
-                        pipeline.addLast("handler", new NettyHttpChannelHandler(executor, handlers, id, timestamp, exceptionHandler, ioExceptionHandler));
-                        return pipeline;
-                    }
-                });
+                final Executor handlerExecutor = metrics == null ? executor : metrics.instrument(executor);
 
                 staleConnectionTrackingHandler = new StaleConnectionTrackingHandler(staleConnectionTimeout, executor);
                 ScheduledExecutorService staleCheckExecutor = Executors.newSingleThreadScheduledExecutor();
@@ -210,12 +270,32 @@ public class NettyWebServer implements WebServer {
                 executorServices.add(staleCheckExecutor);
 
                 connectionTrackingHandler = new ConnectionTrackingHandler();
-                ExecutorService bossExecutor = Executors.newSingleThreadExecutor();
-                executorServices.add(bossExecutor);
-                ExecutorService workerExecutor = Executors.newSingleThreadExecutor();
-                executorServices.add(workerExecutor);
-                bootstrap.setFactory(new NioServerSocketChannelFactory(bossExecutor, workerExecutor, 1));
-                channel = bootstrap.bind(socketAddress);
+                admissionControlHandler = connectionLimits == null ? null : new AdmissionControlHandler(connectionLimits, metrics, staleCheckExecutor);
+                responseCompressor = compressionPolicy == null ? null : new ResponseCompressor(compressionPolicy);
+                channelFactory = transport.createServerChannelFactory();
+
+                List<Listener> allListeners = new ArrayList<Listener>();
+                allListeners.add(new Listener(socketAddress, sslConfig, sniConfig));
+                allListeners.addAll(listeners);
+                try {
+                    for (Listener listener : allListeners) {
+                        ServerBootstrap bootstrap = new ServerBootstrap(channelFactory);
+                        bootstrap.setPipelineFactory(pipelineFactory(listener, handlerExecutor));
+                        socketOptions.applyTo(bootstrap);
+                        if (acceptors > 1) {
+                            bootstrap.setParentHandler(new ReusePortHandler());
+                        }
+                        for (int i = 0; i < acceptors; i++) {
+                            channels.add(bootstrap.bind(listener.address));
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    for (Channel channel : channels) {
+                        channel.close().awaitUninterruptibly();
+                    }
+                    channels.clear();
+                    throw e;
+                }
                 return NettyWebServer.this;
             }
         });
@@ -223,8 +303,45 @@ public class NettyWebServer implements WebServer {
         return future;
     }
 
+    private ChannelPipelineFactory pipelineFactory(final Listener listener, final Executor handlerExecutor) {
+        return new ChannelPipelineFactory() {
+            @Override
+            public ChannelPipeline getPipeline() throws Exception {
+                long connectionId = connectionIds.next();
+                RequestTimer requestTimer = new RequestTimer();
+                ChannelPipeline pipeline = pipeline();
+                if (metrics != null) {
+                    pipeline.addLast("metrics", new ConnectionMetricsHandler(metrics));
+                }
+                if (listener.sniConfig != null) {
+                    pipeline.addLast("sni", new SniHandler(listener.sniConfig));
+                } else if (listener.sslConfig != null) {
+                    pipeline.addLast("ssl", new SslHandler(listener.sslConfig.createServerEngine()));
+                }
+                pipeline.addLast("staleconnectiontracker", staleConnectionTrackingHandler);
+                pipeline.addLast("connectiontracker", connectionTrackingHandler);
+                if (admissionControlHandler != null) {
+                    pipeline.addLast("admission", admissionControlHandler);
+                }
+                pipeline.addLast("flashpolicydecoder", new FlashPolicyFileDecoder(handlerExecutor, exceptionHandler, ioExceptionHandler, listener.port()));
+                pipeline.addLast("requesttimer", requestTimer);
+                pipeline.addLast("decoder", new HttpRequestDecoder(maxInitialLineLength, maxHeaderSize, maxChunkSize));
+                pipeline.addLast("aggregator", new HttpChunkAggregator(maxContentLength));
+                pipeline.addLast("decompressor", new HttpContentDecompressor());
+                pipeline.addLast("encoder", new SingleBufferHttpResponseEncoder());
+                pipeline.addLast("handler", new NettyHttpChannelHandler(handlerExecutor, handlers, connectionId, requestIds, exceptionHandler, ioExceptionHandler, maxPipelinedRequests, metrics, serverHeader, dateHeader, admissionControlHandler, requestTimer, responseCompressor));
+                return pipeline;
+            }
+        };
+    }
+
     public boolean isRunning() {
-        return channel != null && channel.isBound();
+        for (Channel channel : channels) {
+            if (channel.isBound()) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
@@ -232,32 +349,91 @@ public class NettyWebServer implements WebServer {
         FutureTask<WebServer> future = new FutureTask<WebServer>(new Callable<WebServer>() {
             @Override
             public WebServer call() throws Exception {
-                if (channel != null) {
-                    channel.close();
-                }
-                if (connectionTrackingHandler != null) {
-                    connectionTrackingHandler.closeAllConnections();
-                    connectionTrackingHandler = null;
-                }
-                if (bootstrap != null) {
-                    bootstrap.releaseExternalResources();
-                }
-                for (ExecutorService executorService : executorServices) {
-                    executorService.shutdown();
-                }
-
-                bootstrap = null;
+                return stopNow();
+            }
+        });
+        startStopExecutor.execute(future);
+        return future;
+    }
 
-                if (channel != null) {
-                    channel.getCloseFuture().await();
+    @Override
+    public Future<WebServer> drain(final long timeout, final TimeUnit unit) {
+        FutureTask<WebServer> future = new FutureTask<WebServer>(new Callable<WebServer>() {
+            @Override
+            public WebServer call() throws Exception {
+                long deadline = System.nanoTime() + unit.toNanos(timeout);
+                for (Channel channel : channels) {
+                    channel.close().await();
                 }
-                return NettyWebServer.this;
+                ConnectionTrackingHandler tracker = connectionTrackingHandler;
+                if (tracker != null) {
+                    Random random = new Random();
+                    for (Channel channel : tracker.openConnections()) {
+                        ChannelHandler last = channel.getPipeline().getLast();
+                        long reconnectDelay = minReconnectDelay + (long) (random.nextDouble() * (maxReconnectDelay - minReconnectDelay));
+                        if (last instanceof Drainable) {
+                            ((Drainable) last).drain(channel, reconnectDelay);
+                        } else {
+                            channel.close();
+                        }
+                    }
+                    while (!tracker.openConnections().isEmpty() && System.nanoTime() - deadline < 0) {
+                        Thread.sleep(DRAIN_POLL_MILLIS);
+                    }
+                }
+                return stopNow();
             }
         });
         startStopExecutor.execute(future);
         return future;
     }
 
+    /**
+     * Puts this node's number in every connection and request id, so that ids from several servers writing to
+     * the same logs don't clash. Must be set before the server is started.
+     *
+     * @see IdGenerator
+     */
+    public NettyWebServer nodeId(int node) {
+        connectionIds = new IdGenerator(node);
+        requestIds = new IdGenerator(node);
+        return this;
+    }
+
+    @Override
+    public NettyWebServer drainReconnectDelay(long minMillis, long maxMillis) {
+        if (minMillis < 0 || maxMillis < minMillis) {
+            throw new IllegalArgumentException("Expected 0 <= min <= max reconnect delay, but got " + minMillis + " and " + maxMillis);
+        }
+        this.minReconnectDelay = minMillis;
+        this.maxReconnectDelay = maxMillis;
+        return this;
+    }
+
+    private WebServer stopNow() throws InterruptedException {
+        for (Channel channel : channels) {
+            channel.close();
+        }
+        if (connectionTrackingHandler != null) {
+            connectionTrackingHandler.closeAllConnections();
+            connectionTrackingHandler = null;
+        }
+        if (channelFactory != null) {
+            channelFactory.releaseExternalResources();
+        }
+        for (ExecutorService executorService : executorServices) {
+            executorService.shutdown();
+        }
+
+        channelFactory = null;
+
+        for (Channel channel : channels) {
+            channel.getCloseFuture().await();
+        }
+        channels.clear();
+        return this;
+    }
+
     @Override
     public NettyWebServer uncaughtExceptionHandler(Thread.UncaughtExceptionHandler exceptionHandler) {
         this.exceptionHandler = exceptionHandler;
@@ -302,6 +478,91 @@ public class NettyWebServer implements WebServer {
         return this;
     }
 
+    /**
+     * Maximum number of pipelined requests that may be in flight on a single connection. Responses are always
+     * written in request order; once this many are outstanding the server stops reading from the connection
+     * until one of them ends.
+     */
+    public NettyWebServer maxPipelinedRequests(int maxPipelinedRequests) {
+        if (maxPipelinedRequests < 1) {
+            throw new IllegalArgumentException("maxPipelinedRequests must be at least 1");
+        }
+        this.maxPipelinedRequests = maxPipelinedRequests;
+        return this;
+    }
+
+    /**
+     * Also accept plain HTTP connections on this address. All listeners share the same handlers and settings.
+     */
+    public NettyWebServer listen(SocketAddress address) {
+        listeners.add(new Listener(address, null, null));
+        return this;
+    }
+
+    /**
+     * Also accept HTTPS connections on this address. All listeners share the same handlers and settings.
+     */
+    public NettyWebServer listen(SocketAddress address, SslConfig sslConfig) {
+        listeners.add(new Listener(address, sslConfig, null));
+        return this;
+    }
+
+    /**
+     * Also accept HTTPS connections on this address, choosing the certificate by server name.
+     * All listeners share the same handlers and settings.
+     */
+    public NettyWebServer listen(SocketAddress address, SniConfig sniConfig) {
+        listeners.add(new Listener(address, null, sniConfig));
+        return this;
+    }
+
+    /**
+     * Limits on connections and requests, beyond which clients are turned away with a 503. Takes effect the next
+     * time the server is started.
+     */
+    public NettyWebServer connectionLimits(ConnectionLimits connectionLimits) {
+        this.connectionLimits = connectionLimits;
+        return this;
+    }
+
+    /**
+     * Which responses are compressed for clients that accept it, or null to never compress. Takes effect when the
+     * server is started.
+     */
+    public NettyWebServer compression(CompressionPolicy compressionPolicy) {
+        this.compressionPolicy = compressionPolicy;
+        return this;
+    }
+
+    public NettyWebServer socketOptions(SocketOptions socketOptions) {
+        this.socketOptions = socketOptions;
+        return this;
+    }
+
+    /**
+     * How sockets are read and written. Defaults to {@link NioTransport} with a single I/O thread.
+     * Takes effect the next time the server is started.
+     */
+    public NettyWebServer transport(Transport transport) {
+        this.transport = transport;
+        return this;
+    }
+
+    /**
+     * Number of sockets to open on each listening address. With more than one, the sockets are opened with
+     * SO_REUSEPORT and each gets its own accepting thread, letting the kernel spread new connections between them.
+     * Only supported by the {@link NioTransport}.
+     *
+     * @see SocketOptions#enableReusePort(Channel)
+     */
+    public NettyWebServer acceptors(int acceptors) {
+        if (acceptors < 1) {
+            throw new IllegalArgumentException("acceptors must be at least 1");
+        }
+        this.acceptors = acceptors;
+        return this;
+    }
+
     private static URI localUri(int port) {
         try {
             return URI.create("http://" + InetAddress.getLocalHost()
@@ -311,12 +572,36 @@ public class NettyWebServer implements WebServer {
         }
     }
 
-    protected long timestamp() {
-        return System.currentTimeMillis();
+    private class Listener {
+        final SocketAddress address;
+        final SslConfig sslConfig;
+        final SniConfig sniConfig;
+
+        Listener(SocketAddress address, SslConfig sslConfig, SniConfig sniConfig) {
+            this.address = address;
+            this.sslConfig = sslConfig;
+            this.sniConfig = sniConfig;
+        }
+
+        /**
+         * The port clients connect to. For the main address that is the public URI's, which may differ from
+         * the bound port, e.g. behind a proxy.
+         */
+        int port() {
+            if (address == socketAddress || !(address instanceof InetSocketAddress)) {
+                return getPort();
+            }
+            return ((InetSocketAddress) address).getPort();
+        }
     }
 
-    protected Object nextId() {
-        return nextId++;
+    private static class ReusePortHandler extends SimpleChannelUpstreamHandler {
+        @Override
+        public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+            // Called by ServerBootstrap before the channel is bound.
+            SocketOptions.enableReusePort(e.getChannel());
+            super.channelOpen(ctx, e);
+        }
     }
 
 }
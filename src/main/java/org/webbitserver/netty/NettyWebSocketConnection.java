@@ -1,5 +1,6 @@
 package org.webbitserver.netty;
 
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.handler.codec.http.websocket.DefaultWebSocketFrame;
@@ -9,6 +10,7 @@ import org.webbitserver.WebSocketConnection;
 import java.util.concurrent.Executor;
 
 public class NettyWebSocketConnection extends AbstractHttpConnection implements WebSocketConnection {
+    private static final int GOING_AWAY = 1001;
 
     private final byte[] outboundMaskingKey;
     private String version;
@@ -22,13 +24,47 @@ public class NettyWebSocketConnection extends AbstractHttpConnection implements
     @Override
     public NettyWebSocketConnection send(String message) {
         if (hybi) {
-            writeMessage(new EncodingHybiFrame(Opcodes.OPCODE_TEXT, true, 0, outboundMaskingKey, ChannelBuffers.copiedBuffer(message, CharsetUtil.UTF_8)));
+            writeMessage(new EncodingHybiFrame(Opcodes.OPCODE_TEXT, true, 0, outboundMaskingKey, ChannelBuffers.wrappedBuffer(message.getBytes(CharsetUtil.UTF_8))));
         } else {
             writeMessage(new DefaultWebSocketFrame(message));
         }
         return this;
     }
 
+    /**
+     * Sends text already encoded as UTF-8, so that a message going to many connections need only be encoded once.
+     * The bytes are not copied, so must not be changed afterwards.
+     */
+    public NettyWebSocketConnection sendText(byte[] utf8) {
+        if (hybi) {
+            // Masking changes the payload in place, so must not be done to bytes other connections are sending.
+            byte[] payload = outboundMaskingKey == null ? utf8 : utf8.clone();
+            writeMessage(new EncodingHybiFrame(Opcodes.OPCODE_TEXT, true, 0, outboundMaskingKey, ChannelBuffers.wrappedBuffer(payload)));
+        } else {
+            writeMessage(new DefaultWebSocketFrame(0, ChannelBuffers.wrappedBuffer(utf8)));
+        }
+        return this;
+    }
+
+    /**
+     * Starts the closing handshake with status 1001 (going away), leaving the client to finish it and close the
+     * connection. Older protocol versions have no closing handshake, so are just closed.
+     */
+    void goingAway() {
+        if (hybi) {
+            ChannelBuffer status = ChannelBuffers.buffer(2);
+            status.writeShort(GOING_AWAY);
+            HybiWebSocketFrameDecoder decoder = channel().getPipeline().get(HybiWebSocketFrameDecoder.class);
+            if (decoder != null) {
+                // Before writing, so that even the quickest reply finds it.
+                decoder.closeFrameSent();
+            }
+            writeMessage(new EncodingHybiFrame(Opcodes.OPCODE_CLOSE, true, 0, outboundMaskingKey, status));
+        } else {
+            closeChannel();
+        }
+    }
+
     @Override
     public NettyWebSocketConnection send(byte[] message) {
         return send(message, 0, message.length);
@@ -78,5 +114,4 @@ public class NettyWebSocketConnection extends AbstractHttpConnection implements
         hybi = true;
     }
 
-
 }
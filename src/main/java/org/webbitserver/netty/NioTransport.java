@@ -0,0 +1,42 @@
+package org.webbitserver.netty;
+
+import org.jboss.netty.channel.socket.ClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.ServerSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+
+import java.util.concurrent.Executors;
+
+/**
+ * Non-blocking I/O, with a few worker threads each serving many connections through a selector.
+ * <p/>
+ * This is the default and works everywhere. On Linux the JDK's selector is implemented with epoll.
+ */
+public class NioTransport implements Transport {
+    private final int workerCount;
+
+    public NioTransport() {
+        this(1);
+    }
+
+    /**
+     * @param workerCount number of I/O threads connections are spread across
+     */
+    public NioTransport(int workerCount) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("workerCount must be at least 1");
+        }
+        this.workerCount = workerCount;
+    }
+
+    @Override
+    public ServerSocketChannelFactory createServerChannelFactory() {
+        // One boss thread per listening socket.
+        return new NioServerSocketChannelFactory(Executors.newCachedThreadPool(), Executors.newCachedThreadPool(), workerCount);
+    }
+
+    @Override
+    public ClientSocketChannelFactory createClientChannelFactory() {
+        return new NioClientSocketChannelFactory(Executors.newCachedThreadPool(), Executors.newCachedThreadPool(), workerCount);
+    }
+}
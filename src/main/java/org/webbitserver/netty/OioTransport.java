@@ -0,0 +1,24 @@
+package org.webbitserver.netty;
+
+import org.jboss.netty.channel.socket.ClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.ServerSocketChannelFactory;
+import org.jboss.netty.channel.socket.oio.OioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.oio.OioServerSocketChannelFactory;
+
+import java.util.concurrent.Executors;
+
+/**
+ * Blocking I/O with a thread per connection. Avoids selector overhead, so can have lower latency when there are
+ * only a few connections, but does not scale to many.
+ */
+public class OioTransport implements Transport {
+    @Override
+    public ServerSocketChannelFactory createServerChannelFactory() {
+        return new OioServerSocketChannelFactory(Executors.newCachedThreadPool(), Executors.newCachedThreadPool());
+    }
+
+    @Override
+    public ClientSocketChannelFactory createClientChannelFactory() {
+        return new OioClientSocketChannelFactory(Executors.newCachedThreadPool());
+    }
+}
@@ -0,0 +1,271 @@
+package org.webbitserver.netty;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.DownstreamChannelStateEvent;
+import org.jboss.netty.channel.DownstreamMessageEvent;
+import org.jboss.netty.channel.MessageEvent;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.jboss.netty.channel.Channels.failedFuture;
+import static org.jboss.netty.channel.Channels.future;
+
+/**
+ * Keeps the responses to pipelined HTTP requests in the order the requests arrived on a connection.
+ * <p/>
+ * Every decoded request takes a {@link Slot}. Writes to the slot at the head of the queue go straight to the
+ * channel, while writes to later slots are held back until every earlier response has ended. Once
+ * {@code maxInFlight} requests are outstanding, reading from the channel is suspended until one of them ends.
+ * Requests that the decoder has already buffered are still dispatched, so the limit is a soft one.
+ * <p/>
+ * A slot can also hold a permit from the {@link AdmissionControlHandler}, which is given back when the response
+ * ends or the connection closes, whichever comes first.
+ * <p/>
+ * When the server drains, the connection is closed as soon as there are no responses left outstanding.
+ * <p/>
+ * Nothing is sent down the pipeline while the queue's lock is held, so that handler threads ending responses on
+ * the same connection don't wait on each other's encoding and socket writes. Writes and changes to the channel's
+ * readability are queued under the lock, and then sent in order by whichever thread gets to them first.
+ */
+class PipelinedResponseQueue {
+    private final Channel channel;
+    private final int maxInFlight;
+    private final AdmissionControlHandler admission;
+    private final LinkedList<Slot> slots = new LinkedList<Slot>();
+    private boolean suspended = false;
+    private boolean closed = false;
+    private boolean closingWhenIdle = false;
+    private final LinkedList<ChannelEvent> outbound = new LinkedList<ChannelEvent>();
+    private boolean sending = false;
+
+    PipelinedResponseQueue(Channel channel, int maxInFlight, AdmissionControlHandler admission) {
+        this.channel = channel;
+        this.maxInFlight = maxInFlight;
+        this.admission = admission;
+    }
+
+    /**
+     * Reserves the next position in the response order. Called on the I/O thread as each request is decoded.
+     *
+     * @param permit whether the request holds a permit from the {@link AdmissionControlHandler}, to be released
+     *               with the slot
+     */
+    public Slot enqueue(boolean permit) {
+        Slot slot = new Slot();
+        slot.permit = permit;
+        synchronized (this) {
+            if (closed) {
+                slot.ended = true;
+                release(slot);
+                return slot;
+            }
+            slots.add(slot);
+            if (!suspended && slots.size() >= maxInFlight) {
+                suspended = true;
+                setReadable(false);
+            }
+        }
+        sendOutbound();
+        return slot;
+    }
+
+    private ChannelFuture write(Slot slot, Object message) {
+        MessageEvent write;
+        synchronized (this) {
+            if (closed || slot.ended) {
+                return failedFuture(channel, new ClosedChannelException());
+            }
+            write = new DownstreamMessageEvent(channel, future(channel), message, null);
+            if (slots.peek() == slot) {
+                writeNow(slot, write);
+            } else {
+                slot.held.add(write);
+            }
+        }
+        sendOutbound();
+        return write.getFuture();
+    }
+
+    private void end(Slot slot, boolean close) {
+        synchronized (this) {
+            if (closed || slot.ended) {
+                return;
+            }
+            slot.ended = true;
+            slot.closeAfter = close;
+            release(slot);
+            drain();
+        }
+        sendOutbound();
+    }
+
+    /**
+     * Closes the connection once every outstanding response has been written, or straight away if there are none.
+     */
+    public void closeWhenIdle() {
+        synchronized (this) {
+            closingWhenIdle = true;
+            if (!closed && slots.isEmpty()) {
+                closeAfter();
+            }
+        }
+        sendOutbound();
+    }
+
+    private synchronized boolean closingWhenIdle() {
+        return closingWhenIdle;
+    }
+
+    /**
+     * Gives back the permits of requests that never got a response because the connection closed.
+     */
+    public synchronized void channelClosed() {
+        closed = true;
+        releaseAll();
+    }
+
+    private void drain() {
+        Slot head;
+        while ((head = slots.peek()) != null) {
+            for (MessageEvent write : head.held) {
+                writeNow(head, write);
+            }
+            head.held.clear();
+            if (!head.ended) {
+                break;
+            }
+            slots.poll();
+            if (head.closeAfter || (closingWhenIdle && slots.isEmpty())) {
+                closeAfter();
+                return;
+            }
+        }
+        if (suspended && slots.size() < maxInFlight) {
+            suspended = false;
+            setReadable(true);
+        }
+    }
+
+    private void writeNow(Slot slot, MessageEvent write) {
+        if (slot.writeListener != null) {
+            write.getFuture().addListener(slot.writeListener);
+        }
+        outbound.add(write);
+    }
+
+    private void setReadable(boolean readable) {
+        // What channel.setReadable() sends. Netty keeps the OP_WRITE flag to itself, so it needn't be included.
+        outbound.add(new DownstreamChannelStateEvent(channel, future(channel), ChannelState.INTEREST_OPS,
+                readable ? Channel.OP_READ : Channel.OP_NONE));
+    }
+
+    /**
+     * Closes the channel once everything queued for it so far has been written.
+     */
+    private void closeAfter() {
+        closed = true;
+        releaseAll();
+        ChannelFuture written = future(channel);
+        written.addListener(ChannelFutureListener.CLOSE);
+        outbound.add(new DownstreamMessageEvent(channel, written, ChannelBuffers.EMPTY_BUFFER, null));
+    }
+
+    /**
+     * Sends what has been queued for the channel, in order and outside the lock. Only one thread sends at a time;
+     * any other leaves what it queued to that one.
+     */
+    private void sendOutbound() {
+        synchronized (this) {
+            if (sending || outbound.isEmpty()) {
+                return;
+            }
+            sending = true;
+        }
+        try {
+            while (true) {
+                ChannelEvent event;
+                synchronized (this) {
+                    event = outbound.poll();
+                    if (event == null) {
+                        sending = false;
+                        return;
+                    }
+                }
+                // What channel.write() does, but with the future already handed out when the write was queued.
+                channel.getPipeline().sendDownstream(event);
+            }
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                sending = false;
+            }
+            throw e;
+        }
+    }
+
+    private void releaseAll() {
+        for (Slot slot : slots) {
+            release(slot);
+        }
+        slots.clear();
+    }
+
+    private void release(Slot slot) {
+        if (slot.permit) {
+            slot.permit = false;
+            admission.releaseRequest();
+        }
+    }
+
+    /**
+     * The position of a single response in the connection's response order.
+     */
+    class Slot {
+        private final List<MessageEvent> held = new ArrayList<MessageEvent>(1);
+        private ChannelFutureListener writeListener;
+        private boolean ended = false;
+        private boolean closeAfter = false;
+        private boolean permit = false;
+
+        /**
+         * Writes a message to the channel as soon as all earlier responses have ended.
+         *
+         * @return the future of the write, which fails straight away if the response has ended or the connection
+         *         has closed
+         */
+        public ChannelFuture write(Object message) {
+            return PipelinedResponseQueue.this.write(this, message);
+        }
+
+        /**
+         * Listens to each write of this slot's messages to the channel, once it is their turn.
+         */
+        public void listenToWrites(ChannelFutureListener listener) {
+            writeListener = listener;
+        }
+
+        /**
+         * Whether the connection will be closed once the outstanding responses have been written, so responses
+         * should say so.
+         */
+        public boolean closing() {
+            return PipelinedResponseQueue.this.closingWhenIdle();
+        }
+
+        /**
+         * Marks this response as complete, letting later responses through.
+         *
+         * @param close whether the connection should be closed once this response has been written
+         */
+        public void end(boolean close) {
+            PipelinedResponseQueue.this.end(this, close);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.webbitserver.netty;
+
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+
+/**
+ * Notes when the bytes of each request start to arrive, ahead of the decoder, so that a request's latency
+ * includes the time spent reading and decoding it. One per connection, only touched on its I/O thread.
+ */
+class RequestTimer extends SimpleChannelUpstreamHandler {
+    private long lastRead;
+    private long firstUnclaimedRead;
+    private boolean unclaimed;
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        lastRead = System.nanoTime();
+        if (!unclaimed) {
+            firstUnclaimedRead = lastRead;
+            unclaimed = true;
+        }
+        super.messageReceived(ctx, e);
+    }
+
+    /**
+     * Called as each request is decoded.
+     *
+     * @return {@link System#nanoTime()} when the request's first bytes were read: either the first read since the
+     *         previous request was decoded, or, for a request that arrived in the same read as the one before it,
+     *         that read
+     */
+    long requestStarted() {
+        if (unclaimed) {
+            unclaimed = false;
+            return firstUnclaimedRead;
+        }
+        return lastRead;
+    }
+}
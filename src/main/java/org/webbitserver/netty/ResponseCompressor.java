@@ -0,0 +1,229 @@
+package org.webbitserver.netty;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static org.jboss.netty.buffer.ChannelBuffers.wrappedBuffer;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.ACCEPT_ENCODING;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_ENCODING;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_TYPE;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.VARY;
+
+/**
+ * Compresses response bodies as a {@link CompressionPolicy} says. One is shared by all connections, and it is used
+ * by whichever thread ends the response, so compression happens on the handler's thread rather than the I/O
+ * thread.
+ */
+class ResponseCompressor {
+    private static final String GZIP = "gzip";
+    private static final String DEFLATE = "deflate";
+    // Magic number, deflate method, no flags, no modification time, no extra flags, unknown OS.
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int GZIP_TRAILER_LENGTH = 8;
+
+    private final int minimumSize;
+    private final int level;
+    private final Set<String> allowed;
+    private final Set<String> denied;
+    private final ThreadLocal<Deflater> gzipDeflaters;
+    private final ThreadLocal<Deflater> zlibDeflaters;
+
+    ResponseCompressor(CompressionPolicy policy) {
+        this.minimumSize = policy.minimumSize();
+        this.level = policy.level();
+        this.allowed = policy.allowed();
+        this.denied = policy.denied();
+        this.gzipDeflaters = policy.reuseDeflaters() ? new ThreadLocal<Deflater>() : null;
+        this.zlibDeflaters = policy.reuseDeflaters() ? new ThreadLocal<Deflater>() : null;
+    }
+
+    /**
+     * @param acceptEncoding the request's Accept-Encoding header, or null
+     * @return the content to send, which is the content passed in unless it was compressed, in which case the
+     *         response's headers have been changed to match
+     */
+    ChannelBuffer compress(String acceptEncoding, HttpResponse response, ChannelBuffer content) {
+        String coding = choose(acceptEncoding, response, content.readableBytes());
+        return coding == null ? content : compress(coding, content);
+    }
+
+    /**
+     * Decides whether, and how, to compress a response, setting its headers to match.
+     *
+     * @param acceptEncoding the request's Accept-Encoding header, or null
+     * @param length         size of the body
+     * @return the coding to pass to {@link #compress(String, ChannelBuffer)}, or null to send the body as it is
+     */
+    String choose(String acceptEncoding, HttpResponse response, int length) {
+        if (length < minimumSize
+                || response.containsHeader(CONTENT_ENCODING)
+                || !compressible(response.getHeader(CONTENT_TYPE))) {
+            return null;
+        }
+        // Whether or not this client gets it compressed, caches must not give the one version to the other clients.
+        addVary(response);
+        String coding = coding(acceptEncoding);
+        if (coding != null) {
+            response.setHeader(CONTENT_ENCODING, coding);
+        }
+        return coding;
+    }
+
+    /**
+     * @param coding as returned by {@link #choose(String, HttpResponse, int)}
+     */
+    ChannelBuffer compress(String coding, ChannelBuffer content) {
+        return deflate(content, GZIP.equals(coding));
+    }
+
+    boolean compressible(String contentType) {
+        if (contentType == null) {
+            return allowed.isEmpty();
+        }
+        String type = CompressionPolicy.normalize(contentType);
+        String majorType = type.substring(0, type.indexOf('/') + 1) + "*";
+        if (denied.contains(type) || denied.contains(majorType)) {
+            return false;
+        }
+        return allowed.isEmpty() || allowed.contains(type) || allowed.contains(majorType);
+    }
+
+    /**
+     * Picks gzip or deflate by the client's preference, going by quality values, with gzip winning ties.
+     *
+     * @return the coding, or null if the client accepts neither
+     */
+    static String coding(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        float gzip = -1;
+        float deflate = -1;
+        float any = -1;
+        for (String accepted : acceptEncoding.split(",")) {
+            String[] parts = accepted.split(";");
+            String name = parts[0].trim();
+            float quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Float.parseFloat(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (name.equalsIgnoreCase(GZIP) || name.equalsIgnoreCase("x-gzip")) {
+                gzip = quality;
+            } else if (name.equalsIgnoreCase(DEFLATE)) {
+                deflate = quality;
+            } else if (name.equals("*")) {
+                any = quality;
+            }
+        }
+        if (gzip == -1) {
+            gzip = any;
+        }
+        if (deflate == -1) {
+            deflate = any;
+        }
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        }
+        return deflate > 0 ? DEFLATE : null;
+    }
+
+    private ChannelBuffer deflate(ChannelBuffer content, boolean gzip) {
+        int length = content.readableBytes();
+        byte[] input;
+        int offset;
+        if (content.hasArray()) {
+            input = content.array();
+            offset = content.arrayOffset() + content.readerIndex();
+        } else {
+            input = new byte[length];
+            offset = 0;
+            content.getBytes(content.readerIndex(), input);
+        }
+
+        ThreadLocal<Deflater> reusable = gzip ? gzipDeflaters : zlibDeflaters;
+        Deflater deflater = deflater(reusable, gzip);
+        byte[] output = new byte[length / 2 + 64];
+        int position = 0;
+        try {
+            if (gzip) {
+                System.arraycopy(GZIP_HEADER, 0, output, 0, GZIP_HEADER.length);
+                position = GZIP_HEADER.length;
+            }
+            deflater.setInput(input, offset, length);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (position == output.length) {
+                    output = grow(output, output.length * 2);
+                }
+                position += deflater.deflate(output, position, output.length - position);
+            }
+        } finally {
+            done(reusable, deflater);
+        }
+
+        if (gzip) {
+            if (position + GZIP_TRAILER_LENGTH > output.length) {
+                output = grow(output, position + GZIP_TRAILER_LENGTH);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(input, offset, length);
+            position = writeIntLE(output, position, (int) crc.getValue());
+            position = writeIntLE(output, position, length);
+        }
+        return wrappedBuffer(output, 0, position);
+    }
+
+    private Deflater deflater(ThreadLocal<Deflater> reusable, boolean nowrap) {
+        if (reusable == null) {
+            return new Deflater(level, nowrap);
+        }
+        Deflater deflater = reusable.get();
+        if (deflater == null) {
+            deflater = new Deflater(level, nowrap);
+            reusable.set(deflater);
+        }
+        return deflater;
+    }
+
+    private static void done(ThreadLocal<Deflater> reusable, Deflater deflater) {
+        if (reusable == null) {
+            deflater.end();
+        } else {
+            deflater.reset();
+        }
+    }
+
+    private static void addVary(HttpResponse response) {
+        String vary = response.getHeader(VARY);
+        if (vary == null) {
+            response.setHeader(VARY, ACCEPT_ENCODING);
+        } else if (!vary.toLowerCase().contains("accept-encoding") && !vary.trim().equals("*")) {
+            response.setHeader(VARY, vary + ", " + ACCEPT_ENCODING);
+        }
+    }
+
+    private static byte[] grow(byte[] array, int length) {
+        byte[] grown = new byte[length];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+
+    private static int writeIntLE(byte[] output, int position, int value) {
+        output[position] = (byte) value;
+        output[position + 1] = (byte) (value >>> 8);
+        output[position + 2] = (byte) (value >>> 16);
+        output[position + 3] = (byte) (value >>> 24);
+        return position + 4;
+    }
+}
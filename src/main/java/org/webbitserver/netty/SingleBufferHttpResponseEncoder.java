@@ -0,0 +1,93 @@
+package org.webbitserver.netty;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes each complete response into a single exactly sized buffer: the status line, the headers and, unless it
+ * is large, the content. The whole response then goes to the channel as one write.
+ * <p/>
+ * Netty's {@link HttpResponseEncoder} grows a buffer as it goes, converts every header with String.getBytes and
+ * always wraps the content as a second buffer. Chunked responses are still left to it.
+ */
+public class SingleBufferHttpResponseEncoder extends HttpResponseEncoder {
+    // Bigger content is written as it is, after the head, rather than copied.
+    private static final int MAX_COPIED_CONTENT = 8192;
+
+    @Override
+    protected Object encode(ChannelHandlerContext ctx, Channel channel, Object msg) throws Exception {
+        if (!(msg instanceof HttpResponse) || isChunked((HttpResponse) msg)) {
+            return super.encode(ctx, channel, msg);
+        }
+
+        HttpResponse response = (HttpResponse) msg;
+        String version = response.getProtocolVersion().toString();
+        String code = String.valueOf(response.getStatus().getCode());
+        String reason = response.getStatus().getReasonPhrase();
+        List<Map.Entry<String, String>> headers = response.getHeaders();
+        ChannelBuffer content = response.getContent();
+        int contentLength = content.readableBytes();
+
+        int headLength = version.length() + 1 + code.length() + 1 + reason.length() + 2;
+        for (Map.Entry<String, String> header : headers) {
+            headLength += header.getKey().length() + 2 + header.getValue().length() + 2;
+        }
+        headLength += 2;
+
+        boolean copyContent = contentLength <= MAX_COPIED_CONTENT;
+        byte[] bytes = new byte[copyContent ? headLength + contentLength : headLength];
+        int i = 0;
+        i = ascii(version, bytes, i);
+        bytes[i++] = ' ';
+        i = ascii(code, bytes, i);
+        bytes[i++] = ' ';
+        i = ascii(reason, bytes, i);
+        bytes[i++] = '\r';
+        bytes[i++] = '\n';
+        for (Map.Entry<String, String> header : headers) {
+            i = ascii(header.getKey(), bytes, i);
+            bytes[i++] = ':';
+            bytes[i++] = ' ';
+            i = ascii(header.getValue(), bytes, i);
+            bytes[i++] = '\r';
+            bytes[i++] = '\n';
+        }
+        bytes[i++] = '\r';
+        bytes[i++] = '\n';
+
+        if (copyContent) {
+            content.getBytes(content.readerIndex(), bytes, i, contentLength);
+            return ChannelBuffers.wrappedBuffer(bytes);
+        }
+        return ChannelBuffers.wrappedBuffer(ChannelBuffers.wrappedBuffer(bytes), content);
+    }
+
+    private static boolean isChunked(HttpResponse response) {
+        for (String value : response.getHeaders(HttpHeaders.Names.TRANSFER_ENCODING)) {
+            if (value.equalsIgnoreCase(HttpHeaders.Values.CHUNKED)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copies the string one byte per character, with anything outside US-ASCII replaced by '?', as Netty does.
+     */
+    private static int ascii(String s, byte[] bytes, int offset) {
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            bytes[offset + i] = c < 0x80 ? (byte) c : (byte) '?';
+        }
+        return offset + length;
+    }
+}
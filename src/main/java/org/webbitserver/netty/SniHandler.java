@@ -0,0 +1,123 @@
+package org.webbitserver.netty;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
+import org.jboss.netty.handler.ssl.SslHandler;
+import org.jboss.netty.util.CharsetUtil;
+import org.webbitserver.helpers.SniConfig;
+import org.webbitserver.helpers.SslConfig;
+
+/**
+ * Waits for the first TLS record, reads the server name from the ClientHello and then replaces itself with an
+ * {@link SslHandler} using the matching certificate from the {@link SniConfig}.
+ * <p/>
+ * Like {@link FlashPolicyFileDecoder}, this follows the "replacing a decoder with another decoder in a pipeline"
+ * section of the {@link FrameDecoder} documentation, so the buffered handshake bytes are passed on to the new handler.
+ */
+public class SniHandler extends FrameDecoder {
+    private static final int RECORD_HEADER_LENGTH = 5;
+    private static final int HANDSHAKE_RECORD = 22;
+    private static final int CLIENT_HELLO = 1;
+    private static final int SERVER_NAME_EXTENSION = 0;
+    private static final int HOST_NAME = 0;
+    // A record can't be bigger than 2^14 bytes plus some room for compression and encryption.
+    private static final int MAX_RECORD_LENGTH = 16384 + 2048;
+
+    private final SniConfig sniConfig;
+
+    public SniHandler(SniConfig sniConfig) {
+        super(true);
+        this.sniConfig = sniConfig;
+    }
+
+    @Override
+    protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+        if (buffer.readableBytes() < RECORD_HEADER_LENGTH) {
+            return null;
+        }
+
+        String hostName = null;
+        int start = buffer.readerIndex();
+        if (buffer.getUnsignedByte(start) == HANDSHAKE_RECORD) {
+            int recordLength = buffer.getUnsignedShort(start + 3);
+            if (recordLength <= MAX_RECORD_LENGTH) {
+                if (buffer.readableBytes() < RECORD_HEADER_LENGTH + recordLength) {
+                    return null;
+                }
+                hostName = serverName(buffer, start + RECORD_HEADER_LENGTH, recordLength);
+            }
+        }
+
+        SslConfig sslConfig = sniConfig.select(hostName);
+        if (sslConfig == null) {
+            buffer.skipBytes(buffer.readableBytes());
+            channel.close();
+            return null;
+        }
+
+        ChannelPipeline p = ctx.getPipeline();
+        p.addAfter(ctx.getName(), "ssl", new SslHandler(sslConfig.createServerEngine()));
+        p.remove(this);
+        return buffer.readBytes(buffer.readableBytes());
+    }
+
+    /**
+     * Finds the host_name in the server_name extension of a ClientHello handshake message.
+     *
+     * @return the host name, or null if there is none or the message is malformed
+     */
+    static String serverName(ChannelBuffer buffer, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        if (end - i < 4 || buffer.getUnsignedByte(i) != CLIENT_HELLO) {
+            return null;
+        }
+        i += 4;      // handshake type and length
+        i += 2 + 32; // client version and random
+        if (i + 1 > end) {
+            return null;
+        }
+        i += 1 + buffer.getUnsignedByte(i); // session id
+        if (i + 2 > end) {
+            return null;
+        }
+        i += 2 + buffer.getUnsignedShort(i); // cipher suites
+        if (i + 1 > end) {
+            return null;
+        }
+        i += 1 + buffer.getUnsignedByte(i); // compression methods
+        if (i + 2 > end) {
+            return null;
+        }
+        int extensionsEnd = Math.min(end, i + 2 + buffer.getUnsignedShort(i));
+        i += 2;
+
+        while (i + 4 <= extensionsEnd) {
+            int type = buffer.getUnsignedShort(i);
+            int extensionLength = buffer.getUnsignedShort(i + 2);
+            i += 4;
+            if (type == SERVER_NAME_EXTENSION) {
+                int listEnd = Math.min(i + extensionLength, extensionsEnd);
+                int j = i + 2; // server_name_list length
+                while (j + 3 <= listEnd) {
+                    int nameType = buffer.getUnsignedByte(j);
+                    int nameLength = buffer.getUnsignedShort(j + 1);
+                    j += 3;
+                    if (j + nameLength > listEnd) {
+                        return null;
+                    }
+                    if (nameType == HOST_NAME) {
+                        return buffer.toString(j, nameLength, CharsetUtil.US_ASCII);
+                    }
+                    j += nameLength;
+                }
+                return null;
+            }
+            i += extensionLength;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,127 @@
+package org.webbitserver.netty;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.webbitserver.WebbitException;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * Socket options for the listening sockets and the connections they accept.
+ * <p/>
+ * Anything not set is left to the operating system's default, except TCP_NODELAY which is on by default: the
+ * server writes whole responses at a time, so Nagle's algorithm only adds latency.
+ *
+ * @see NettyWebServer#socketOptions(SocketOptions)
+ */
+public class SocketOptions {
+    private Boolean tcpNoDelay = true;
+    private Boolean keepAlive;
+    private Integer receiveBufferSize;
+    private Integer sendBufferSize;
+    private Integer backlog;
+    private Boolean reuseAddress;
+    private Integer writeBufferLowWaterMark;
+    private Integer writeBufferHighWaterMark;
+
+    /**
+     * TCP_NODELAY on accepted connections. Defaults to true.
+     */
+    public SocketOptions tcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+        return this;
+    }
+
+    /**
+     * SO_KEEPALIVE on accepted connections.
+     */
+    public SocketOptions keepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+        return this;
+    }
+
+    /**
+     * SO_RCVBUF on accepted connections.
+     */
+    public SocketOptions receiveBufferSize(int bytes) {
+        this.receiveBufferSize = bytes;
+        return this;
+    }
+
+    /**
+     * SO_SNDBUF on accepted connections.
+     */
+    public SocketOptions sendBufferSize(int bytes) {
+        this.sendBufferSize = bytes;
+        return this;
+    }
+
+    /**
+     * Maximum length of the queue of connections waiting to be accepted.
+     */
+    public SocketOptions backlog(int backlog) {
+        this.backlog = backlog;
+        return this;
+    }
+
+    /**
+     * SO_REUSEADDR on the listening socket.
+     */
+    public SocketOptions reuseAddress(boolean reuseAddress) {
+        this.reuseAddress = reuseAddress;
+        return this;
+    }
+
+    /**
+     * How much data may be waiting to be written to an accepted connection before it stops being
+     * {@link org.webbitserver.HttpConnection#writable() writable}, and how little before it becomes writable again.
+     * Only the NIO transport supports this; Netty's defaults are 32KB and 64KB.
+     */
+    public SocketOptions writeBufferWaterMarks(int lowBytes, int highBytes) {
+        if (lowBytes < 0 || highBytes < lowBytes) {
+            throw new IllegalArgumentException("Expected 0 <= low <= high water mark, but got " + lowBytes + " and " + highBytes);
+        }
+        this.writeBufferLowWaterMark = lowBytes;
+        this.writeBufferHighWaterMark = highBytes;
+        return this;
+    }
+
+    void applyTo(ServerBootstrap bootstrap) {
+        set(bootstrap, "backlog", backlog);
+        set(bootstrap, "reuseAddress", reuseAddress);
+        set(bootstrap, "child.tcpNoDelay", tcpNoDelay);
+        set(bootstrap, "child.keepAlive", keepAlive);
+        set(bootstrap, "child.receiveBufferSize", receiveBufferSize);
+        set(bootstrap, "child.sendBufferSize", sendBufferSize);
+        set(bootstrap, "child.writeBufferLowWaterMark", writeBufferLowWaterMark);
+        set(bootstrap, "child.writeBufferHighWaterMark", writeBufferHighWaterMark);
+    }
+
+    private static void set(ServerBootstrap bootstrap, String key, Object value) {
+        if (value != null) {
+            bootstrap.setOption(key, value);
+        }
+    }
+
+    /**
+     * Sets SO_REUSEPORT on a server channel that has not been bound yet, so several channels can listen on the
+     * same port and have the kernel spread incoming connections between them.
+     * <p/>
+     * Neither Netty 3 nor Java 6 expose this option, so it is set reflectively on the underlying
+     * {@link java.nio.channels.ServerSocketChannel}. That needs Java 9 or later on an OS that supports it.
+     */
+    static void enableReusePort(Channel serverChannel) {
+        try {
+            Field socketField = serverChannel.getClass().getDeclaredField("socket");
+            socketField.setAccessible(true);
+            Object socket = socketField.get(serverChannel);
+            Object reusePort = Class.forName("java.net.StandardSocketOptions").getField("SO_REUSEPORT").get(null);
+            Method setOption = Class.forName("java.nio.channels.NetworkChannel")
+                    .getMethod("setOption", Class.forName("java.net.SocketOption"), Object.class);
+            setOption.invoke(socket, reusePort, Boolean.TRUE);
+        } catch (Exception e) {
+            throw new WebbitException("SO_REUSEPORT is not supported on this platform", e);
+        }
+    }
+}
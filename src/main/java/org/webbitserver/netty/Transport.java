@@ -0,0 +1,19 @@
+package org.webbitserver.netty;
+
+import org.jboss.netty.channel.socket.ClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.ServerSocketChannelFactory;
+
+/**
+ * Creates the Netty channel factories that do the actual socket I/O for {@link NettyWebServer} and
+ * {@link WebSocketClient}.
+ * <p/>
+ * Each call returns a new factory with its own threads, which are released along with it.
+ *
+ * @see NioTransport
+ * @see OioTransport
+ */
+public interface Transport {
+    ServerSocketChannelFactory createServerChannelFactory();
+
+    ClientSocketChannelFactory createClientChannelFactory();
+}
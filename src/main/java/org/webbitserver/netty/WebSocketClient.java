@@ -10,7 +10,6 @@ import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.ExceptionEvent;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
-import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
 import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
 import org.jboss.netty.handler.codec.http.HttpContentDecompressor;
 import org.jboss.netty.handler.codec.http.HttpHeaders;
@@ -28,6 +27,7 @@ import org.webbitserver.handler.ReconnectingWebSocketHandler;
 import org.webbitserver.handler.exceptions.PrintStackTraceExceptionHandler;
 import org.webbitserver.handler.exceptions.SilentExceptionHandler;
 import org.webbitserver.helpers.Base64;
+import org.webbitserver.helpers.IdGenerator;
 import org.webbitserver.helpers.SslFactory;
 
 import javax.net.ssl.SSLContext;
@@ -35,8 +35,6 @@ import javax.net.ssl.SSLEngine;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.URI;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
@@ -46,18 +44,7 @@ import java.util.concurrent.FutureTask;
 import static org.jboss.netty.channel.Channels.pipeline;
 
 public class WebSocketClient implements WebSocket {
-    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
-    private static final MessageDigest SHA_1;
-
-    static {
-        try {
-            SHA_1 = MessageDigest.getInstance("SHA1");
-        } catch (NoSuchAlgorithmException e) {
-            throw new InternalError("SHA-1 not supported on this platform");
-        }
-    }
-
-    private static long nextId = 1;
+    private static final IdGenerator ids = new IdGenerator();
 
     private final URI uri;
     private WebSocketHandler webSocketHandler;
@@ -73,6 +60,7 @@ public class WebSocketClient implements WebSocket {
     private Thread.UncaughtExceptionHandler exceptionHandler;
     private Thread.UncaughtExceptionHandler ioExceptionHandler;
     private SslFactory sslFactory;
+    private Transport transport = new NioTransport();
 
     public WebSocketClient(URI uri, WebSocketHandler webSocketHandler) {
         this(uri, webSocketHandler, Executors.newSingleThreadExecutor());
@@ -139,6 +127,14 @@ public class WebSocketClient implements WebSocket {
         return this;
     }
 
+    /**
+     * How the socket is read and written. Defaults to {@link NioTransport}.
+     */
+    public WebSocketClient transport(Transport transport) {
+        this.transport = transport;
+        return this;
+    }
+
     @Override
     public Future<WebSocketClient> start() {
         FutureTask<WebSocketClient> future = new FutureTask<WebSocketClient>(new Callable<WebSocketClient>() {
@@ -146,9 +142,7 @@ public class WebSocketClient implements WebSocket {
             public WebSocketClient call() throws Exception {
                 final byte[] outboundMaskingKey = new byte[]{randomByte(), randomByte(), randomByte(), randomByte()};
 
-                bootstrap = new ClientBootstrap(new NioClientSocketChannelFactory(
-                        Executors.newCachedThreadPool(),
-                        Executors.newCachedThreadPool()));
+                bootstrap = new ClientBootstrap(transport.createClientChannelFactory());
 
                 bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
                     public ChannelPipeline getPipeline() throws Exception {
@@ -258,10 +252,7 @@ public class WebSocketClient implements WebSocket {
 
         private void verifySecWebSocketAccept(String webSocketAccept) {
             if (webSocketAccept != null) {
-                SHA_1.reset();
-                SHA_1.update(base64Nonce.getBytes());
-                SHA_1.update(ACCEPT_GUID.getBytes());
-                String expectedKey = Base64.encode(SHA_1.digest());
+                String expectedKey = HandshakeDigest.acceptKey(base64Nonce);
                 if (!webSocketAccept.equals(expectedKey)) {
                     throw new WebbitException("Sec-WebSocket-Accept header from server didn't match expected value of " + expectedKey);
                 }
@@ -271,7 +262,9 @@ public class WebSocketClient implements WebSocket {
         }
 
         private void adjustPipelineToWebSocket(ChannelHandlerContext ctx, MessageEvent messageEvent, ChannelHandler webSocketFrameDecoder, ChannelHandler webSocketFrameEncoder) {
-            NettyHttpRequest httpRequest = new NettyHttpRequest(messageEvent, request, nextId(), timestamp());
+            // A client connection only ever carries the one request.
+            long id = ids.next();
+            NettyHttpRequest httpRequest = new NettyHttpRequest(messageEvent, request, id, id, System.nanoTime());
             final NettyWebSocketConnection webSocketConnection = new NettyWebSocketConnection(executor, httpRequest, ctx, outboundMaskingKey);
             webSocketConnection.setHybiWebSocketVersion(17);
 
@@ -290,13 +283,5 @@ public class WebSocketClient implements WebSocket {
                 }
             });
         }
-
-        private long timestamp() {
-            return System.currentTimeMillis();
-        }
-    }
-
-    private static Object nextId() {
-        return nextId++;
     }
 }
@@ -1,5 +1,6 @@
 package org.webbitserver.netty;
 
+import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.ExceptionEvent;
@@ -10,7 +11,7 @@ import org.webbitserver.WebSocketHandler;
 
 import java.util.concurrent.Executor;
 
-public class WebSocketConnectionHandler extends SimpleChannelUpstreamHandler {
+public class WebSocketConnectionHandler extends SimpleChannelUpstreamHandler implements Drainable {
     private final Executor executor;
     private final NettyWebSocketConnection webSocketConnection;
     private final WebSocketHandler webSocketHandler;
@@ -39,6 +40,16 @@ public class WebSocketConnectionHandler extends SimpleChannelUpstreamHandler {
         connectionHelper.fireOnClose(e);
     }
 
+    @Override
+    public void drain(Channel channel, long reconnectDelayMillis) {
+        webSocketConnection.goingAway();
+    }
+
+    @Override
+    public void channelInterestChanged(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        webSocketConnection.writabilityChanged();
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
         connectionHelper.fireConnectionException(e);
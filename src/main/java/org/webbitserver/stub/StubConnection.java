@@ -21,6 +21,8 @@ public class StubConnection extends StubDataHolder implements EventSourceConnect
     private boolean closed = false;
     private HttpRequest httpRequest;
     private String version = null;
+    private boolean writable = true;
+    private final List<Runnable> writableTasks = new LinkedList<Runnable>();
 
     public StubConnection(HttpRequest httpRequest) {
         this.httpRequest = httpRequest;
@@ -127,4 +129,29 @@ public class StubConnection extends StubDataHolder implements EventSourceConnect
     public void execute(Runnable command) {
         command.run();
     }
+
+    @Override
+    public boolean writable() {
+        return writable;
+    }
+
+    /**
+     * Makes the connection writable or not, as a slow client would. Becoming writable runs the tasks waiting for it.
+     */
+    public StubConnection writable(boolean writable) {
+        this.writable = writable;
+        while (this.writable && !writableTasks.isEmpty()) {
+            execute(writableTasks.remove(0));
+        }
+        return this;
+    }
+
+    @Override
+    public void whenWritable(Runnable task) {
+        if (writable) {
+            execute(task);
+        } else {
+            writableTasks.add(task);
+        }
+    }
 }
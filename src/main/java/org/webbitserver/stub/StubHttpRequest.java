@@ -10,6 +10,7 @@ import java.net.SocketAddress;
 import java.net.URI;
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -25,7 +26,10 @@ public class StubHttpRequest extends StubDataHolder implements HttpRequest {
     private List<Map.Entry<String, String>> headers = new ArrayList<Map.Entry<String, String>>();
     private SocketAddress remoteAddress = new InetSocketAddress("localhost", 0);
     private Object id = "StubID";
+    private long connectionId = 0;
     private long timestamp = 0;
+    private long startNanos = System.nanoTime();
+    private final Map<Phase, Long> phaseNanos = new EnumMap<Phase, Long>(Phase.class);
     private String body;
 
     public StubHttpRequest() {
@@ -66,6 +70,16 @@ public class StubHttpRequest extends StubDataHolder implements HttpRequest {
         return false;
     }
 
+    @Override
+    public void visitHeaders(HeaderVisitor visitor) {
+        for (int i = 0; i < headers.size(); i++) {
+            Map.Entry<String, String> header = headers.get(i);
+            if (!visitor.header(header.getKey(), header.getValue())) {
+                return;
+            }
+        }
+    }
+
     @Override
     public List<HttpCookie> cookies() {
         return InboundCookieParser.parse(headers(COOKIE_HEADER));
@@ -184,6 +198,16 @@ public class StubHttpRequest extends StubDataHolder implements HttpRequest {
         return this;
     }
 
+    @Override
+    public long connectionId() {
+        return connectionId;
+    }
+
+    public StubHttpRequest connectionId(long connectionId) {
+        this.connectionId = connectionId;
+        return this;
+    }
+
     @Override
     public long timestamp() {
         return timestamp;
@@ -194,6 +218,27 @@ public class StubHttpRequest extends StubDataHolder implements HttpRequest {
         return this;
     }
 
+    @Override
+    public long startNanos() {
+        return startNanos;
+    }
+
+    public StubHttpRequest startNanos(long startNanos) {
+        this.startNanos = startNanos;
+        return this;
+    }
+
+    @Override
+    public long phaseNanos(Phase phase) {
+        Long nanos = phaseNanos.get(phase);
+        return nanos == null ? -1 : nanos;
+    }
+
+    public StubHttpRequest phaseNanos(Phase phase, long nanos) {
+        phaseNanos.put(phase, nanos);
+        return this;
+    }
+
     public StubHttpRequest remoteAddress(SocketAddress remoteAddress) {
         this.remoteAddress = remoteAddress;
         return this;
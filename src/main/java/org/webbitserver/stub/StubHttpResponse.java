@@ -25,6 +25,7 @@ public class StubHttpResponse implements HttpResponse {
     private Map<String, String> headers = new HashMap<String, String>();
     private Throwable error;
     private boolean ended;
+    private boolean compress = true;
     private ByteArrayOutputStream contents = new ByteArrayOutputStream();
     private List<HttpCookie> cookies = new ArrayList<HttpCookie>();
 
@@ -89,6 +90,16 @@ public class StubHttpResponse implements HttpResponse {
         return headers.containsKey(name);
     }
 
+    @Override
+    public StubHttpResponse compress(boolean compress) {
+        this.compress = compress;
+        return this;
+    }
+
+    public boolean compress() {
+        return compress;
+    }
+
     @Override
     public StubHttpResponse content(String content) {
         return content(content.getBytes(charset));
@@ -81,4 +81,13 @@ public class EventSourceConnectionWrapper implements EventSourceConnection {
         connection.execute(command);
     }
 
+    @Override
+    public boolean writable() {
+        return connection.writable();
+    }
+
+    @Override
+    public void whenWritable(Runnable task) {
+        connection.whenWritable(task);
+    }
 }
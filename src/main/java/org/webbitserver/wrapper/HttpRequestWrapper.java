@@ -55,6 +55,11 @@ public class HttpRequestWrapper implements HttpRequest {
         return request.hasHeader(name);
     }
 
+    @Override
+    public void visitHeaders(HeaderVisitor visitor) {
+        request.visitHeaders(visitor);
+    }
+
     @Override
     public List<HttpCookie> cookies() {
         return request.cookies();
@@ -156,8 +161,23 @@ public class HttpRequestWrapper implements HttpRequest {
         return request.id();
     }
 
+    @Override
+    public long connectionId() {
+        return request.connectionId();
+    }
+
     @Override
     public long timestamp() {
         return request.timestamp();
     }
+
+    @Override
+    public long startNanos() {
+        return request.startNanos();
+    }
+
+    @Override
+    public long phaseNanos(Phase phase) {
+        return request.phaseNanos(phase);
+    }
 }
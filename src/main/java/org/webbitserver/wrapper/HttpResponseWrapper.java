@@ -119,4 +119,10 @@ public class HttpResponseWrapper implements HttpResponse {
     public boolean containsHeader(String name) {
         return response.containsHeader(name);
     }
+
+    @Override
+    public HttpResponseWrapper compress(boolean compress) {
+        response.compress(compress);
+        return this;
+    }
 }
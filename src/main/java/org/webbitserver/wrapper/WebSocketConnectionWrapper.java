@@ -110,4 +110,13 @@ public class WebSocketConnectionWrapper implements WebSocketConnection {
         connection.execute(command);
     }
 
+    @Override
+    public boolean writable() {
+        return connection.writable();
+    }
+
+    @Override
+    public void whenWritable(Runnable task) {
+        connection.whenWritable(task);
+    }
 }
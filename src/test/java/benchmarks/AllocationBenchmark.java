@@ -0,0 +1,191 @@
+package benchmarks;
+
+import org.webbitserver.BaseWebSocketHandler;
+import org.webbitserver.EventSourceConnection;
+import org.webbitserver.EventSourceHandler;
+import org.webbitserver.EventSourceMessage;
+import org.webbitserver.HttpControl;
+import org.webbitserver.HttpHandler;
+import org.webbitserver.HttpRequest;
+import org.webbitserver.HttpResponse;
+import org.webbitserver.WebServer;
+import org.webbitserver.WebSocketConnection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.webbitserver.WebServers.createWebServer;
+
+/**
+ * Measures how many bytes the server allocates to build and encode each HTTP response, WebSocket message and
+ * EventSource message, along with the garbage collections that happened while doing so.
+ * <p/>
+ * Allocations are counted on the handler thread, which is where responses are built and where Netty runs the
+ * encoders for writes made from it. Needs a JVM that supports thread allocation counting (HotSpot does).
+ * <pre>
+ * AllocationBenchmark [messages] [bodySize] [port]
+ * </pre>
+ */
+public class AllocationBenchmark {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        int bodySize = args.length > 1 ? Integer.parseInt(args[1]) : 2048;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 9880;
+
+        StringBuilder body = new StringBuilder(bodySize);
+        for (int i = 0; i < bodySize; i++) {
+            body.append((char) ('a' + i % 26));
+        }
+        final String payload = body.toString();
+        final int count = messages;
+        final AtomicLong httpBytes = new AtomicLong();
+        final BlockingQueue<Long> pushedBytes = new LinkedBlockingQueue<Long>();
+
+        WebServer webServer = createWebServer(port)
+                .add("/http", new HttpHandler() {
+                    @Override
+                    public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control) {
+                        long before = allocated();
+                        response.header("Content-Type", "text/plain").content(payload).end();
+                        httpBytes.addAndGet(allocated() - before);
+                    }
+                })
+                .add("/ws", new BaseWebSocketHandler() {
+                    @Override
+                    public void onOpen(WebSocketConnection connection) {
+                        long before = allocated();
+                        for (int i = 0; i < count; i++) {
+                            connection.send(payload);
+                        }
+                        pushedBytes.add(allocated() - before);
+                        connection.close();
+                    }
+                })
+                .add("/events", new EventSourceHandler() {
+                    @Override
+                    public void onOpen(EventSourceConnection connection) {
+                        long before = allocated();
+                        for (int i = 0; i < count; i++) {
+                            connection.send(new EventSourceMessage(payload).id(i));
+                        }
+                        pushedBytes.add(allocated() - before);
+                        connection.close();
+                    }
+
+                    @Override
+                    public void onClose(EventSourceConnection connection) {
+                    }
+                });
+        webServer.start().get();
+        try {
+            for (int round = 0; round < 2; round++) {
+                boolean warmup = round == 0;
+
+                httpBytes.set(0);
+                long gc = gcCount();
+                long start = System.nanoTime();
+                http(port, messages, bodySize);
+                report(warmup, "http response", httpBytes.get(), messages, gc, start);
+
+                gc = gcCount();
+                start = System.nanoTime();
+                push(port, "GET /ws HTTP/1.1\r\nHost: localhost\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n" +
+                        "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\nSec-WebSocket-Version: 13\r\n\r\n");
+                report(warmup, "websocket message", pushedBytes.take(), messages, gc, start);
+
+                gc = gcCount();
+                start = System.nanoTime();
+                push(port, "GET /events HTTP/1.1\r\nHost: localhost\r\nAccept: text/event-stream\r\n\r\n");
+                report(warmup, "eventsource message", pushedBytes.take(), messages, gc, start);
+            }
+        } finally {
+            webServer.stop().get();
+        }
+        // The server's start/stop thread would keep the JVM alive.
+        System.exit(0);
+    }
+
+    private static void http(int port, int requests, int bodySize) throws IOException {
+        byte[] request = "GET /http HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes("ISO-8859-1");
+        byte[] buffer = new byte[bodySize + 4096];
+        Socket socket = new Socket("localhost", port);
+        try {
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+            for (int i = 0; i < requests; i++) {
+                out.write(request);
+                readResponse(in, buffer);
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Sends the request and reads until the server closes the connection.
+     */
+    private static void push(int port, String request) throws IOException {
+        Socket socket = new Socket("localhost", port);
+        try {
+            socket.getOutputStream().write(request.getBytes("ISO-8859-1"));
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[65536];
+            while (in.read(buffer) != -1) {
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static void readResponse(InputStream in, byte[] buffer) throws IOException {
+        int length = 0;
+        int expected = -1;
+        while (expected == -1 || length < expected) {
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read == -1) {
+                throw new IOException("Connection closed after " + length + " bytes");
+            }
+            length += read;
+            if (expected == -1) {
+                String head = new String(buffer, 0, length, "ISO-8859-1");
+                int end = head.indexOf("\r\n\r\n");
+                if (end != -1) {
+                    int at = head.toLowerCase().indexOf("content-length:");
+                    int eol = head.indexOf("\r\n", at);
+                    expected = end + 4 + Integer.parseInt(head.substring(at + 15, eol).trim());
+                }
+            }
+        }
+    }
+
+    private static long allocated() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += gc.getCollectionCount();
+        }
+        return count;
+    }
+
+    private static void report(boolean warmup, String kind, long bytes, int count, long gcBefore, long start) {
+        if (!warmup) {
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%-20s %7d bytes allocated each, %d GCs in %.2fs%n",
+                    kind, bytes / count, gcCount() - gcBefore, seconds);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package benchmarks;
+
+import org.webbitserver.helpers.DateHelper;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compares ways of formatting HTTP dates: a thread-local SimpleDateFormat (what DateHelper used to do), formatting
+ * an arbitrary date with DateHelper, and DateHelper's shared formatting of the current second.
+ * <pre>
+ * DateFormatBenchmark [threads] [secondsPerRun]
+ * </pre>
+ * Each case is run for a warm-up period and then measured, with every thread formatting in a tight loop.
+ */
+public class DateFormatBenchmark {
+    private static final ThreadLocal<DateFormat> SIMPLE_DATE_FORMAT = new ThreadLocal<DateFormat>() {
+        @Override
+        protected DateFormat initialValue() {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            return format;
+        }
+    };
+
+    private interface Formatter {
+        String format(long millis);
+    }
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 3;
+
+        run("ThreadLocal<SimpleDateFormat>", new Formatter() {
+            @Override
+            public String format(long millis) {
+                return SIMPLE_DATE_FORMAT.get().format(new Date(millis));
+            }
+        }, threads, seconds);
+        run("DateHelper.rfc1123Format", new Formatter() {
+            @Override
+            public String format(long millis) {
+                return DateHelper.rfc1123Format(millis);
+            }
+        }, threads, seconds);
+        run("DateHelper.rfc1123Now", new Formatter() {
+            @Override
+            public String format(long millis) {
+                return DateHelper.rfc1123Now();
+            }
+        }, threads, seconds);
+    }
+
+    private static void run(String name, Formatter formatter, int threads, long seconds) throws InterruptedException {
+        measure(formatter, threads, seconds);
+        long operations = measure(formatter, threads, seconds);
+        System.out.printf("%-30s %12.0f ops/sec over %d threads%n", name, operations / (double) seconds, threads);
+    }
+
+    private static long measure(final Formatter formatter, int threads, long seconds) throws InterruptedException {
+        final long end = System.nanoTime() + seconds * 1000000000L;
+        final long[] counts = new long[threads];
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            new Thread() {
+                @Override
+                public void run() {
+                    long count = 0;
+                    // Distinct dates, so the plain formatter can't benefit from the current second's cache.
+                    long millis = 0;
+                    while ((count & 1023) != 0 || System.nanoTime() < end) {
+                        sink = formatter.format(millis += 1000);
+                        count++;
+                    }
+                    counts[index] = count;
+                    done.countDown();
+                }
+            }.start();
+        }
+        done.await();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+}
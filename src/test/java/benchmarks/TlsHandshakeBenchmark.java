@@ -0,0 +1,96 @@
+package benchmarks;
+
+import org.webbitserver.WebServer;
+import org.webbitserver.handler.StringHttpHandler;
+import org.webbitserver.helpers.SslConfig;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.InputStream;
+import java.security.cert.X509Certificate;
+
+import static org.webbitserver.WebServers.createWebServer;
+
+/**
+ * Measures TLS handshakes per second, first with every handshake a full one and then with clients resuming
+ * their previous session.
+ * <pre>
+ * TlsHandshakeBenchmark [handshakes] [port] [protocol]
+ * </pre>
+ * Pass a protocol such as TLSv1.2 to restrict the server to it; by default the provider chooses.
+ * Uses the test keystore, so run with src/test/resources on the classpath.
+ */
+public class TlsHandshakeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int handshakes = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 9878;
+        String protocol = args.length > 2 ? args[2] : null;
+
+        InputStream keyStore = TlsHandshakeBenchmark.class.getResourceAsStream("/ssl/keystore");
+        SslConfig sslConfig = new SslConfig(keyStore, "webbit", "webbit")
+                .sessionCacheSize(10000)
+                .sessionTimeout(300);
+        if (protocol != null) {
+            sslConfig.protocols(protocol);
+        }
+        keyStore.close();
+
+        WebServer webServer = createWebServer(port)
+                .setupSsl(sslConfig)
+                .add(new StringHttpHandler("text/plain", "ok"));
+        webServer.start().get();
+        try {
+            SSLSocketFactory sockets = trustingClientContext().getSocketFactory();
+            run(sockets, port, handshakes / 5, false);
+            report("full", handshakes, run(sockets, port, handshakes, false));
+            run(sockets, port, handshakes / 5, true);
+            report("resumed", handshakes, run(sockets, port, handshakes, true));
+        } finally {
+            webServer.stop().get();
+        }
+        // The server's start/stop thread would keep the JVM alive.
+        System.exit(0);
+    }
+
+    private static long run(SSLSocketFactory sockets, int port, int handshakes, boolean resume) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < handshakes; i++) {
+            SSLSocket socket = (SSLSocket) sockets.createSocket("localhost", port);
+            try {
+                socket.setTcpNoDelay(true);
+                socket.startHandshake();
+                if (!resume) {
+                    socket.getSession().invalidate();
+                }
+            } finally {
+                socket.close();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String kind, int handshakes, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.printf("%d %s handshakes in %.2fs: %.0f handshakes/sec%n", handshakes, kind, seconds, handshakes / seconds);
+    }
+
+    private static SSLContext trustingClientContext() throws Exception {
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, new TrustManager[]{new X509TrustManager() {
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+
+            public void checkClientTrusted(X509Certificate[] certs, String authType) {
+            }
+
+            public void checkServerTrusted(X509Certificate[] certs, String authType) {
+            }
+        }}, null);
+        return context;
+    }
+}
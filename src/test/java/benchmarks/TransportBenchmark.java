@@ -0,0 +1,124 @@
+package benchmarks;
+
+import org.webbitserver.WebServer;
+import org.webbitserver.handler.StringHttpHandler;
+import org.webbitserver.netty.NioTransport;
+import org.webbitserver.netty.OioTransport;
+import org.webbitserver.netty.Transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.webbitserver.WebServers.createWebServer;
+
+/**
+ * Compares throughput and latency of the transports over loopback, with each client sending keep-alive requests
+ * one after another on its own connection.
+ * <pre>
+ * TransportBenchmark [clients] [requestsPerClient] [port]
+ * </pre>
+ */
+public class TransportBenchmark {
+    private static final byte[] REQUEST = "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes();
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 9879;
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        run("nio (1 worker)", new NioTransport(), clients, requests, port);
+        run("nio (" + cores + " workers)", new NioTransport(cores), clients, requests, port);
+        run("oio", new OioTransport(), clients, requests, port);
+        // The server's start/stop thread would keep the JVM alive.
+        System.exit(0);
+    }
+
+    private static void run(String name, Transport transport, int clients, int requests, int port) throws Exception {
+        WebServer webServer = createWebServer(port, transport)
+                .add(new StringHttpHandler("text/plain", "ok"));
+        webServer.start().get();
+        try {
+            load(clients, requests / 5, port);
+            long start = System.nanoTime();
+            long[] latencies = load(clients, requests, port);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            Arrays.sort(latencies);
+            System.out.printf("%-16s %8.0f requests/sec  p50 %5.0fus  p99 %5.0fus%n", name,
+                    latencies.length / seconds,
+                    latencies[latencies.length / 2] / 1e3,
+                    latencies[latencies.length * 99 / 100] / 1e3);
+        } finally {
+            webServer.stop().get();
+        }
+    }
+
+    private static long[] load(int clients, final int requests, final int port) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        try {
+            Future<?>[] futures = new Future<?>[clients];
+            final long[] latencies = new long[clients * requests];
+            for (int c = 0; c < clients; c++) {
+                final int offset = c * requests;
+                futures[c] = pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        Socket socket = new Socket("localhost", port);
+                        try {
+                            socket.setTcpNoDelay(true);
+                            OutputStream out = socket.getOutputStream();
+                            InputStream in = socket.getInputStream();
+                            byte[] buffer = new byte[4096];
+                            for (int i = 0; i < requests; i++) {
+                                long start = System.nanoTime();
+                                out.write(REQUEST);
+                                readResponse(in, buffer);
+                                latencies[offset + i] = System.nanoTime() - start;
+                            }
+                        } finally {
+                            socket.close();
+                        }
+                        return null;
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return latencies;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Reads one response, assuming it fits in the buffer and has a Content-Length.
+     */
+    private static void readResponse(InputStream in, byte[] buffer) throws IOException {
+        int length = 0;
+        int expected = -1;
+        while (expected == -1 || length < expected) {
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read == -1) {
+                throw new IOException("Connection closed after " + length + " bytes");
+            }
+            length += read;
+            if (expected == -1) {
+                String head = new String(buffer, 0, length, "ISO-8859-1");
+                int end = head.indexOf("\r\n\r\n");
+                if (end != -1) {
+                    int at = head.toLowerCase().indexOf("content-length:");
+                    int eol = head.indexOf("\r\n", at);
+                    expected = end + 4 + Integer.parseInt(head.substring(at + 15, eol).trim());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package benchmarks;
+
+import org.webbitserver.BaseWebSocketHandler;
+import org.webbitserver.WebServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.webbitserver.WebServers.createWebServer;
+
+/**
+ * Measures how many WebSocket upgrades per second the server can complete, as seen when many clients
+ * reconnect at once.
+ * <p/>
+ * Each client thread repeatedly opens a connection, sends a Hybi handshake, waits for the 101 response and closes.
+ * <pre>
+ * UpgradeBenchmark [upgrades] [client threads] [port]
+ * </pre>
+ */
+public class UpgradeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int upgrades = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 9877;
+
+        WebServer webServer = createWebServer(port).add("/ws", new BaseWebSocketHandler());
+        webServer.start().get();
+        try {
+            System.out.println("Warming up...");
+            run(port, upgrades / 5, threads);
+            long start = System.nanoTime();
+            run(port, upgrades, threads);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d upgrades from %d threads in %.2fs: %.0f upgrades/sec%n",
+                    upgrades, threads, seconds, upgrades / seconds);
+        } finally {
+            webServer.stop().get();
+        }
+        // The server's start/stop thread would keep the JVM alive.
+        System.exit(0);
+    }
+
+    private static void run(final int port, int upgrades, int threads) throws InterruptedException {
+        final AtomicInteger remaining = new AtomicInteger(upgrades);
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread("upgrade-client-" + i) {
+                @Override
+                public void run() {
+                    try {
+                        while (remaining.getAndDecrement() > 0) {
+                            if (!upgrade(port)) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        done.await();
+        if (failures.get() > 0) {
+            System.out.println(failures.get() + " upgrades failed");
+        }
+    }
+
+    private static final byte[] HANDSHAKE = ("" +
+            "GET /ws HTTP/1.1\r\n" +
+            "Host: localhost\r\n" +
+            "Upgrade: websocket\r\n" +
+            "Connection: Upgrade\r\n" +
+            "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n" +
+            "Sec-WebSocket-Version: 13\r\n" +
+            "\r\n").getBytes();
+
+    private static boolean upgrade(int port) throws IOException {
+        Socket socket = new Socket(InetAddress.getLocalHost(), port);
+        try {
+            OutputStream out = socket.getOutputStream();
+            out.write(HANDSHAKE);
+            out.flush();
+            return readStatusLine(socket.getInputStream()).startsWith("HTTP/1.1 101");
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static String readStatusLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1 && c != '\n') {
+            line.append((char) c);
+        }
+        return line.toString();
+    }
+}
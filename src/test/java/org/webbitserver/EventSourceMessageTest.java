@@ -1,9 +1,12 @@
 package org.webbitserver;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+
 public class EventSourceMessageTest {
     @Test
     public void skipsColonIfValueEmpty() throws Exception {
@@ -71,4 +74,50 @@ public class EventSourceMessageTest {
     public void buildsMessageWithNullId() throws Exception {
         assertEquals("id\n\n", new EventSourceMessage().id(null).build());
     }
+
+    @Test
+    public void treatsCrAndCrLfAsLineBreaks() throws Exception {
+        assertEquals("data: a\ndata: b\ndata: c\ndata: \ndata: d\n\n",
+            new EventSourceMessage().data("a\rb\r\nc\n\nd").build());
+    }
+
+    @Test
+    public void doesNotStartALineAfterATrailingLineBreak() throws Exception {
+        assertEquals("data: a\n\n\n", new EventSourceMessage().data("a\n").build());
+    }
+
+    @Test
+    public void encodesCommentOnEveryLine() throws Exception {
+        assertEquals(": one\n: two\n\n", new EventSourceMessage().comment("one\ntwo").build());
+    }
+
+    @Test
+    public void encodesNonAsciiAsUtf8() throws Exception {
+        String data = "caf\u00e9 \u20ac \ud83d\ude00 \ud800";
+        EventSourceMessage message = new EventSourceMessage(data);
+        assertEquals("data: " + data.replace("\ud800", "?") + "\n\n", message.build());
+        assertEquals(ByteBuffer.wrap(("data: " + data + "\n\n").getBytes("UTF-8")), message.toByteBuffer());
+    }
+
+    @Test
+    public void buffersAlreadyReturnedDoNotChange() throws Exception {
+        EventSourceMessage message = new EventSourceMessage("first");
+        ByteBuffer first = message.toByteBuffer();
+        assertEquals(first, message.toByteBuffer());
+        message.id(1);
+        assertEquals(ByteBuffer.wrap("data: first\n\n".getBytes("UTF-8")), first);
+        assertEquals(ByteBuffer.wrap("data: first\nid: 1\n\n".getBytes("UTF-8")), message.toByteBuffer());
+        assertTrue(message.toByteBuffer().isReadOnly());
+    }
+
+    @Test
+    public void growsForLongMessages() throws Exception {
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            data.append("line ").append(i).append('\n');
+        }
+        String expected = ("data: " + data.toString().replace("\n", "\ndata: "));
+        expected = expected.substring(0, expected.length() - "data: ".length()) + "\n\n";
+        assertEquals(expected, new EventSourceMessage(data.toString()).build());
+    }
 }
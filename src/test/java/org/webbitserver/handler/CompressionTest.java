@@ -1,6 +1,8 @@
 package org.webbitserver.handler;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.webbitserver.WebServers.createWebServer;
 import static org.webbitserver.testutil.HttpClient.contents;
 import static org.webbitserver.testutil.HttpClient.decompressContents;
@@ -8,7 +10,11 @@ import static org.webbitserver.testutil.HttpClient.httpGetAcceptCompressed;
 import static org.webbitserver.testutil.HttpClient.httpPostCompressed;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
 import java.util.concurrent.ExecutionException;
 
 import org.junit.After;
@@ -18,6 +24,8 @@ import org.webbitserver.HttpHandler;
 import org.webbitserver.HttpRequest;
 import org.webbitserver.HttpResponse;
 import org.webbitserver.WebServer;
+import org.webbitserver.netty.CompressionPolicy;
+import org.webbitserver.netty.NettyWebServer;
 
 public class CompressionTest {
 
@@ -58,4 +66,71 @@ public class CompressionTest {
         assertEquals("gzip", urlConnection.getContentEncoding());
     }
 
+    @Test
+    public void responsesCanOptOutOfCompression() throws IOException, ExecutionException, InterruptedException {
+        webServer.add(new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control)
+                    throws Exception {
+                response.compress(false).content(content).end();
+            }
+        }).start().get();
+        HttpURLConnection urlConnection = (HttpURLConnection) httpGetAcceptCompressed(webServer, "/");
+        assertEquals(content, contents(urlConnection));
+        assertNull(urlConnection.getContentEncoding());
+    }
+
+    @Test
+    public void doesNotCompressWhatThePolicyRulesOut() throws IOException, ExecutionException, InterruptedException {
+        NettyWebServer webServer = (NettyWebServer) this.webServer;
+        webServer.compression(new CompressionPolicy().minimumSize(content.length() + 1)).add(new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control)
+                    throws Exception {
+                if (request.uri().equals("/image")) {
+                    response.header("Content-Type", "image/png").content(content + content).end();
+                } else {
+                    response.content(content).end();
+                }
+            }
+        }).start().get();
+        HttpURLConnection small = (HttpURLConnection) httpGetAcceptCompressed(webServer, "/");
+        assertEquals(content, contents(small));
+        assertNull(small.getContentEncoding());
+
+        HttpURLConnection image = (HttpURLConnection) httpGetAcceptCompressed(webServer, "/image");
+        assertEquals(content + content, contents(image));
+        assertNull(image.getContentEncoding());
+    }
+
+    @Test
+    public void doesNotCompressResponsesWrittenInPieces() throws IOException, ExecutionException, InterruptedException {
+        webServer.add(new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control)
+                    throws Exception {
+                response.write(content);
+                response.write(content);
+                response.end();
+            }
+        }).start().get();
+        Socket client = new Socket(InetAddress.getLocalHost(), 59504);
+        try {
+            client.setSoTimeout(10000);
+            OutputStream out = client.getOutputStream();
+            out.write("GET / HTTP/1.1\r\nHost: localhost\r\nAccept-Encoding: gzip\r\n\r\n".getBytes("ASCII"));
+            out.flush();
+            InputStream in = client.getInputStream();
+            StringBuilder received = new StringBuilder();
+            int c;
+            while (!received.toString().endsWith("Content-Length: 0\r\n\r\n") && (c = in.read()) != -1) {
+                received.append((char) c);
+            }
+            assertEquals(received.toString(), -1, received.indexOf("Content-Encoding"));
+            assertTrue(received.toString(), received.toString().contains(content + "HTTP/1.1 200 OK"));
+        } finally {
+            client.close();
+        }
+    }
+
 }
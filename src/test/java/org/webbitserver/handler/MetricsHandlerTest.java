@@ -0,0 +1,62 @@
+package org.webbitserver.handler;
+
+import org.junit.After;
+import org.junit.Test;
+import org.webbitserver.WebServer;
+import org.webbitserver.metrics.WebServerMetrics;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.webbitserver.WebServers.createWebServer;
+import static org.webbitserver.testutil.HttpClient.contents;
+import static org.webbitserver.testutil.HttpClient.httpGet;
+
+public class MetricsHandlerTest {
+
+    private WebServer webServer = createWebServer(59504);
+
+    @After
+    public void die() throws InterruptedException, ExecutionException {
+        webServer.stop().get();
+    }
+
+    @Test
+    public void metricsAreDisabledByDefault() {
+        assertNull(webServer.metrics());
+    }
+
+    @Test
+    public void recordsRequestsPerStatusAndRoute() throws IOException, InterruptedException, ExecutionException {
+        webServer.enableMetrics()
+                .add("/hello", new StringHttpHandler("text/plain", "hello"))
+                .start()
+                .get();
+        assertEquals("hello", contents(httpGet(webServer, "/hello")));
+        assertEquals("hello", contents(httpGet(webServer, "/hello")));
+
+        WebServerMetrics metrics = webServer.metrics();
+        assertEquals(2, metrics.requests().count());
+        assertEquals(2, metrics.latency(200).count());
+        assertEquals(2, metrics.latency("/hello").count());
+        assertTrue(metrics.bytesIn() > 0);
+    }
+
+    @Test
+    public void servesMetricsAsText() throws IOException, InterruptedException, ExecutionException {
+        webServer.enableMetrics();
+        webServer.add("/metrics", new MetricsHandler(webServer.metrics()))
+                .add("/hello", new StringHttpHandler("text/plain", "hello"))
+                .start()
+                .get();
+        contents(httpGet(webServer, "/hello"));
+
+        String text = contents(httpGet(webServer, "/metrics"));
+        assertTrue(text, text.contains("requests count=1 "));
+        assertTrue(text, text.contains("latency.route./hello count=1 "));
+        assertTrue(text, text.contains("connections.http "));
+    }
+}
@@ -0,0 +1,79 @@
+package org.webbitserver.handler;
+
+import org.junit.Test;
+import org.webbitserver.HttpControl;
+import org.webbitserver.WebSocketHandler;
+import org.webbitserver.helpers.RateLimiter;
+import org.webbitserver.stub.StubConnection;
+import org.webbitserver.stub.StubHttpRequest;
+import org.webbitserver.stub.StubHttpResponse;
+
+import java.net.InetSocketAddress;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class RateLimitingHandlerTest {
+    private final RateLimiter limiter = new RateLimiter(0.5, 1);
+
+    @Test
+    public void answersRequestsOverTheLimitWith429() throws Exception {
+        RateLimitingHandler handler = new RateLimitingHandler(limiter);
+        HttpControl control = mock(HttpControl.class);
+
+        StubHttpResponse first = new StubHttpResponse();
+        handler.handleHttpRequest(new StubHttpRequest(), first, control);
+        verify(control).nextHandler();
+        assertFalse(first.ended());
+
+        StubHttpResponse second = new StubHttpResponse();
+        handler.handleHttpRequest(new StubHttpRequest(), second, control);
+        verify(control, times(1)).nextHandler();
+        assertEquals(429, second.status());
+        assertEquals("2", second.header("Retry-After"));
+    }
+
+    @Test
+    public void limitsEachAddressSeparately() throws Exception {
+        RateLimitingHandler handler = new RateLimitingHandler(limiter);
+        HttpControl control = mock(HttpControl.class);
+
+        handler.handleHttpRequest(new StubHttpRequest().remoteAddress(new InetSocketAddress("10.0.0.1", 1000)), new StubHttpResponse(), control);
+        handler.handleHttpRequest(new StubHttpRequest().remoteAddress(new InetSocketAddress("10.0.0.1", 2000)), new StubHttpResponse(), control);
+        handler.handleHttpRequest(new StubHttpRequest().remoteAddress(new InetSocketAddress("10.0.0.2", 1000)), new StubHttpResponse(), control);
+
+        verify(control, times(2)).nextHandler();
+    }
+
+    @Test
+    public void canBeKeyedByRequestDataAndLetsThroughRequestsWithoutIt() throws Exception {
+        RateLimitingHandler handler = new RateLimitingHandler(limiter, RateLimitingHandler.Key.data("user"));
+        HttpControl control = mock(HttpControl.class);
+
+        handler.handleHttpRequest(new StubHttpRequest().data("user", "alice"), new StubHttpResponse(), control);
+        handler.handleHttpRequest(new StubHttpRequest().data("user", "alice"), new StubHttpResponse(), control);
+        handler.handleHttpRequest(new StubHttpRequest().data("user", "bob"), new StubHttpResponse(), control);
+        handler.handleHttpRequest(new StubHttpRequest(), new StubHttpResponse(), control);
+        handler.handleHttpRequest(new StubHttpRequest(), new StubHttpResponse(), control);
+
+        verify(control, times(4)).nextHandler();
+    }
+
+    @Test
+    public void dropsWebSocketMessagesOverTheLimit() throws Throwable {
+        WebSocketHandler wrapped = mock(WebSocketHandler.class);
+        StubConnection connection = new StubConnection();
+        RateLimitingWebSocketHandler handler = new RateLimitingWebSocketHandler(limiter, RateLimitingHandler.Key.header("X-Client"), wrapped);
+        connection.httpRequest(new StubHttpRequest().header("X-Client", "c1"));
+
+        handler.onMessage(connection, "one");
+        handler.onMessage(connection, "two");
+
+        verify(wrapped).onMessage(connection, "one");
+        verify(wrapped, never()).onMessage(connection, "two");
+    }
+}
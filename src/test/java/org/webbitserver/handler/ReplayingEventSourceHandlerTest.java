@@ -0,0 +1,48 @@
+package org.webbitserver.handler;
+
+import org.junit.Test;
+import org.webbitserver.EventSourceConnection;
+import org.webbitserver.EventSourceHandler;
+import org.webbitserver.EventSourceMessage;
+import org.webbitserver.helpers.EventSourceHistory;
+import org.webbitserver.stub.StubConnection;
+import org.webbitserver.stub.StubHttpRequest;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class ReplayingEventSourceHandlerTest {
+
+    @Test
+    public void replaysMissedMessagesBeforeOpening() throws Exception {
+        EventSourceHistory history = new EventSourceHistory(10, 10000);
+        history.add(new EventSourceMessage("one").id(1));
+        history.add(new EventSourceMessage("two").id(2));
+        final StubConnection connection = new StubConnection(new StubHttpRequest().header("Last-Event-ID", "1"));
+
+        new ReplayingEventSourceHandler(history, new EventSourceHandler() {
+            @Override
+            public void onOpen(EventSourceConnection c) throws Exception {
+                c.send(new EventSourceMessage("welcome back"));
+            }
+
+            @Override
+            public void onClose(EventSourceConnection c) throws Exception {
+            }
+        }).onOpen(connection);
+
+        assertEquals(Arrays.asList("data: two\nid: 2\n\n", "data: welcome back\n\n"), connection.sentMessages());
+        assertEquals(1, connection.data(ReplayingEventSourceHandler.REPLAYED));
+    }
+
+    @Test
+    public void passesOnClose() throws Exception {
+        EventSourceHandler handler = mock(EventSourceHandler.class);
+        StubConnection connection = new StubConnection();
+        new ReplayingEventSourceHandler(new EventSourceHistory(1, 1), handler).onClose(connection);
+        verify(handler).onClose(connection);
+    }
+}
@@ -0,0 +1,70 @@
+package org.webbitserver.handler;
+
+import org.junit.After;
+import org.junit.Test;
+import org.webbitserver.HttpControl;
+import org.webbitserver.HttpHandler;
+import org.webbitserver.HttpRequest;
+import org.webbitserver.HttpResponse;
+import org.webbitserver.WebServer;
+
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.webbitserver.WebServers.createWebServer;
+import static org.webbitserver.testutil.HttpClient.contents;
+import static org.webbitserver.testutil.HttpClient.httpGet;
+
+public class ResponseContentTest {
+
+    private WebServer webServer = createWebServer(59504);
+
+    @After
+    public void die() throws InterruptedException, ExecutionException {
+        webServer.stop().get();
+    }
+
+    @Test
+    public void appendsEachPieceOfContent() throws Exception {
+        webServer.add(new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control) throws Exception {
+                byte[] bytes = "b".getBytes("UTF-8");
+                response.content("a").content(bytes).content(ByteBuffer.wrap("c".getBytes("UTF-8"))).content("d");
+                bytes[0] = 'x';
+                response.end();
+            }
+        }).start().get();
+        URLConnection connection = httpGet(webServer, "/");
+        assertEquals("abcd", contents(connection));
+        assertEquals(4, connection.getContentLength());
+    }
+
+    @Test
+    public void correctsADeclaredContentLength() throws Exception {
+        webServer.add(new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control) throws Exception {
+                response.header("Content-Length", 100).content("Hello ").content("world").end();
+            }
+        }).start().get();
+        URLConnection connection = httpGet(webServer, "/");
+        assertEquals("Hello world", contents(connection));
+        assertEquals(11, connection.getContentLength());
+    }
+
+    @Test
+    public void sendsAnEmptyBody() throws Exception {
+        webServer.add(new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control) throws Exception {
+                response.end();
+            }
+        }).start().get();
+        URLConnection connection = httpGet(webServer, "/");
+        assertEquals("", contents(connection));
+        assertEquals(0, connection.getContentLength());
+    }
+}
@@ -0,0 +1,187 @@
+package org.webbitserver.handler.logging;
+
+import org.junit.Test;
+import org.webbitserver.stub.StubHttpRequest;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncLogSinkTest {
+
+    @Test
+    public void writesAllEntriesInOrderOnClose() throws Exception {
+        StringBuffer out = new StringBuffer();
+        AsyncLogSink sink = new AsyncLogSink(new SimpleLogSink(out), 16, AsyncLogSink.OverflowPolicy.BLOCK);
+        for (int i = 0; i < 1000; i++) {
+            sink.custom(new StubHttpRequest("/" + i), "TEST", null);
+        }
+        sink.close();
+
+        String log = out.toString();
+        int last = -1;
+        for (int i = 0; i < 1000; i++) {
+            int index = log.indexOf("\t/" + i + "\t");
+            assertTrue("Missing entry " + i, index > last);
+            last = index;
+        }
+        assertEquals(0, sink.dropped());
+    }
+
+    @Test
+    public void countsEntriesDroppedWhenBufferIsFull() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final StringBuffer written = new StringBuffer();
+        final Thread testThread = Thread.currentThread();
+        Appendable slowDisk = new Appendable() {
+            @Override
+            public Appendable append(CharSequence csq) throws IOException {
+                if (Thread.currentThread() != testThread) {
+                    await(release);
+                }
+                written.append(csq);
+                return this;
+            }
+
+            @Override
+            public Appendable append(CharSequence csq, int start, int end) throws IOException {
+                return append(csq.subSequence(start, end));
+            }
+
+            @Override
+            public Appendable append(char c) throws IOException {
+                return append(String.valueOf(c));
+            }
+        };
+        AsyncLogSink sink = new AsyncLogSink(new SimpleLogSink(slowDisk), 4, AsyncLogSink.OverflowPolicy.COUNT);
+        for (int i = 0; i < 100; i++) {
+            sink.custom(new StubHttpRequest("/" + i), "TEST", null);
+        }
+        assertTrue(sink.dropped() > 0);
+
+        release.countDown();
+        sink.close();
+        long reported = 0;
+        for (String line : written.toString().split("\n")) {
+            String[] fields = line.split("\t");
+            if (fields.length > 7 && fields[5].equals(AsyncLogSink.DROPPED)) {
+                reported += Long.parseLong(fields[7]);
+            }
+        }
+        assertEquals(written.toString(), sink.dropped(), reported);
+    }
+
+    @Test
+    public void wrapsStructuredSinksLoggingWhenEachEventHappenedAndFlushingInBatches() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final StringBuffer written = new StringBuffer();
+        final int[] flushes = {0};
+        final Thread testThread = Thread.currentThread();
+        StringWriter slowDisk = new StringWriter() {
+            @Override
+            public StringWriter append(CharSequence csq) {
+                if (Thread.currentThread() != testThread) {
+                    await(release);
+                }
+                written.append(csq);
+                return this;
+            }
+
+            @Override
+            public void flush() {
+                flushes[0]++;
+            }
+        };
+        AsyncLogSink sink = new AsyncLogSink(new JsonLogSink(slowDisk), 16, AsyncLogSink.OverflowPolicy.BLOCK)
+                .flushEvery(1000)
+                .flushInterval(60000);
+        long before = System.currentTimeMillis();
+        sink.httpEnd(new StubHttpRequest("/").startNanos(System.nanoTime()), 200, 2);
+        sink.httpEnd(new StubHttpRequest("/"), 200, 2);
+        long after = System.currentTimeMillis();
+        Thread.sleep(200);
+
+        release.countDown();
+        sink.close();
+        String[] lines = written.toString().trim().split("\n");
+        assertEquals(2, lines.length);
+        long timestamp = Long.parseLong(lines[0].replaceAll(".*\"timestamp\":(\\d+),.*", "$1"));
+        assertTrue(timestamp >= before && timestamp <= after);
+        long latency = Long.parseLong(lines[0].replaceAll(".*\"latency_ms\":(\\d+),.*", "$1"));
+        assertTrue("latency was " + latency, latency < 200);
+        assertTrue(lines[1], lines[1].contains("\"status\":200,\"bytes\":2"));
+        assertEquals(1, flushes[0]);
+    }
+
+    @Test
+    public void flushesWrappedSimpleSinksInBatchesRatherThanEveryEntry() throws Exception {
+        final int[] flushes = {0};
+        StringWriter out = new StringWriter() {
+            @Override
+            public void flush() {
+                flushes[0]++;
+            }
+        };
+        SimpleLogSink simple = new SimpleLogSink(out);
+        int headerFlushes = flushes[0];
+        AsyncLogSink sink = new AsyncLogSink(simple, 16, AsyncLogSink.OverflowPolicy.BLOCK)
+                .flushEvery(1000)
+                .flushInterval(60000);
+        for (int i = 0; i < 100; i++) {
+            sink.custom(new StubHttpRequest("/" + i), "TEST", null);
+        }
+        sink.close();
+
+        assertTrue(out.toString().contains("\t/99\t"));
+        assertEquals(1, flushes[0] - headerFlushes);
+    }
+
+    @Test
+    public void logsRequestsAsTheyWereWhenTheEventWasQueued() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final StringBuffer written = new StringBuffer();
+        final Thread testThread = Thread.currentThread();
+        Appendable slowDisk = new Appendable() {
+            @Override
+            public Appendable append(CharSequence csq) throws IOException {
+                if (Thread.currentThread() != testThread) {
+                    await(release);
+                }
+                written.append(csq);
+                return this;
+            }
+
+            @Override
+            public Appendable append(CharSequence csq, int start, int end) throws IOException {
+                return append(csq.subSequence(start, end));
+            }
+
+            @Override
+            public Appendable append(char c) throws IOException {
+                return append(String.valueOf(c));
+            }
+        };
+        AsyncLogSink sink = new AsyncLogSink(new SimpleLogSink(slowDisk, "user"), 16, AsyncLogSink.OverflowPolicy.BLOCK);
+        StubHttpRequest request = new StubHttpRequest("/before").data("user", "alice");
+        sink.custom(request, "TEST", null);
+        request.uri("/after").data("user", "bob");
+
+        release.countDown();
+        sink.close();
+        String log = written.toString();
+        assertTrue(log, log.contains("\t/before\t-\talice\t"));
+        assertFalse(log, log.contains("bob"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
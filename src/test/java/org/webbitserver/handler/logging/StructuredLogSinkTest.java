@@ -0,0 +1,117 @@
+package org.webbitserver.handler.logging;
+
+import org.junit.Test;
+import org.webbitserver.HttpRequest;
+import org.webbitserver.stub.StubHttpRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StructuredLogSinkTest {
+
+    @Test
+    public void writesOneJsonObjectPerLineWithStatusBytesAndLatency() {
+        StringBuilder out = new StringBuilder();
+        JsonLogSink sink = new JsonLogSink(out, "user");
+        StubHttpRequest request = new StubHttpRequest("/some \"quoted\" path")
+                .id(7)
+                .connectionId(3)
+                .startNanos(System.nanoTime() - TimeUnit.SECONDS.toNanos(1))
+                .remoteAddress(new InetSocketAddress("127.0.0.1", 1234));
+        request.data("user", "joe");
+
+        sink.httpEnd(request, 404, 123);
+
+        String line = out.toString().trim();
+        assertTrue(line, line.matches("\\{\"time\":\"\\d{4}-\\d\\d-\\d\\dT\\d\\d:\\d\\d:\\d\\d\\.\\d{3}Z\",\"timestamp\":\\d+,\"latency_ms\":\\d+,.*"));
+        assertTrue(line, line.contains(",\"id\":7,\"connection\":3,\"remote\":\"127.0.0.1\",\"action\":\"HTTP-END\",\"method\":\"GET\""));
+        assertTrue(line, line.contains(",\"uri\":\"/some \\\"quoted\\\" path\",\"status\":404,\"bytes\":123,\"user\":\"joe\"}"));
+        long latency = Long.parseLong(line.replaceAll(".*\"latency_ms\":(\\d+),.*", "$1"));
+        assertTrue("latency was " + latency, latency >= 1000);
+    }
+
+    @Test
+    public void logsHowLongTheRequestWaitedToBeDispatched() {
+        StringBuilder out = new StringBuilder();
+        StubHttpRequest request = new StubHttpRequest("/")
+                .phaseNanos(HttpRequest.Phase.DECODED, 20000)
+                .phaseNanos(HttpRequest.Phase.DISPATCHED, 270000);
+        new JsonLogSink(out).httpEnd(request, 200, 0);
+        assertTrue(out.toString(), out.toString().contains(",\"dispatch_us\":250"));
+    }
+
+    @Test
+    public void omitsStatusAndBytesForOtherEvents() {
+        StringBuilder out = new StringBuilder();
+        new JsonLogSink(out).httpStart(new StubHttpRequest("/"));
+        assertTrue(out.toString(), !out.toString().contains("status") && !out.toString().contains("bytes"));
+    }
+
+    @Test
+    public void binarySinkWritesHeaderAndLengthPrefixedRecords() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryLogSink sink = new BinaryLogSink(out, "user");
+        int headerLength = out.size();
+        sink.httpEnd(new StubHttpRequest("/"), 200, 5);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        byte[] magic = new byte[5];
+        in.readFully(magic);
+        assertArrayEquals(BinaryLogSink.MAGIC, magic);
+        assertEquals(BinaryLogSink.VERSION, in.read());
+        in.skipBytes(headerLength - 6);
+        int recordLength = in.read();
+        assertEquals(out.size() - headerLength - 1, recordLength);
+        assertTrue(in.readLong() > 0);
+    }
+
+    @Test
+    public void binarySinkWritesEachRecordInOneCallAndLeavesFlushingToTheCaller() throws Exception {
+        final List<byte[]> writes = new ArrayList<byte[]>();
+        final int[] flushes = {0};
+        OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                writes.add(Arrays.copyOfRange(b, off, off + len));
+            }
+
+            @Override
+            public void flush() {
+                flushes[0]++;
+            }
+        };
+        BinaryLogSink sink = new BinaryLogSink(out);
+        writes.clear();
+        flushes[0] = 0;
+        StringBuilder longUri = new StringBuilder("/");
+        for (int i = 0; i < 200; i++) {
+            longUri.append('x');
+        }
+        sink.httpEnd(new StubHttpRequest(longUri.toString()), 200, 5);
+
+        assertEquals(1, writes.size());
+        assertEquals(0, flushes[0]);
+        byte[] record = writes.get(0);
+        int recordLength = (record[0] & 0x7F) | (record[1] << 7);
+        assertEquals(record.length - 2, recordLength);
+
+        sink.flush();
+        assertEquals(1, flushes[0]);
+    }
+}
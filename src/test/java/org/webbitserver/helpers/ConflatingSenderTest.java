@@ -0,0 +1,78 @@
+package org.webbitserver.helpers;
+
+import org.junit.Test;
+import org.webbitserver.EventSourceConnection;
+import org.webbitserver.EventSourceMessage;
+import org.webbitserver.WebSocketConnection;
+import org.webbitserver.stub.StubConnection;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConflatingSenderTest {
+    private final StubConnection connection = new StubConnection();
+    private final ConflatingSender<String> sender = ConflatingSender.to((WebSocketConnection) connection);
+
+    @Test
+    public void sendsStraightAwayWhileWritable() {
+        sender.send("a", "a1").send("a", "a2");
+        assertEquals(Arrays.asList("a1", "a2"), connection.sentMessages());
+        assertEquals(0, sender.waiting());
+    }
+
+    @Test
+    public void keepsOnlyTheLatestMessagePerKeyWhileNotWritable() {
+        connection.writable(false);
+        sender.send("a", "a1").send("b", "b1").send("a", "a2").send("a", "a3");
+
+        assertEquals(0, connection.sentMessages().size());
+        assertEquals(2, sender.waiting());
+        assertEquals(2, sender.conflated());
+
+        connection.writable(true);
+        assertEquals(Arrays.asList("a3", "b1"), connection.sentMessages());
+        assertEquals(0, sender.waiting());
+    }
+
+    @Test
+    public void sendsStraightAwayAgainOnceCaughtUp() {
+        connection.writable(false);
+        sender.send("a", "a1");
+        connection.writable(true);
+        sender.send("a", "a2");
+        assertEquals(Arrays.asList("a1", "a2"), connection.sentMessages());
+    }
+
+    @Test
+    public void stopsFlushingIfTheConnectionFallsBehindAgain() {
+        final StubConnection slow = new StubConnection() {
+            @Override
+            public StubConnection send(String message) {
+                super.send(message);
+                writable(false);
+                return this;
+            }
+        };
+        ConflatingSender<String> sender = ConflatingSender.to((WebSocketConnection) slow);
+        slow.writable(false);
+        sender.send("a", "a1").send("b", "b1");
+
+        slow.writable(true);
+        assertEquals(Arrays.asList("a1"), slow.sentMessages());
+        sender.send("b", "b2");
+
+        slow.writable(true);
+        assertEquals(Arrays.asList("a1", "b2"), slow.sentMessages());
+        assertEquals(0, sender.waiting());
+    }
+
+    @Test
+    public void conflatesEventSourceMessages() {
+        ConflatingSender<EventSourceMessage> sender = ConflatingSender.to((EventSourceConnection) connection);
+        connection.writable(false);
+        sender.send("price", new EventSourceMessage("1")).send("price", new EventSourceMessage("2"));
+        connection.writable(true);
+        assertEquals(Arrays.asList("data: 2\n\n"), connection.sentMessages());
+    }
+}
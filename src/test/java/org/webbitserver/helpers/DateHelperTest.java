@@ -0,0 +1,78 @@
+package org.webbitserver.helpers;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DateHelperTest {
+
+    @Test
+    public void formatsInGmt() {
+        assertEquals("Thu, 01 Jan 1970 00:00:00 GMT", DateHelper.rfc1123Format(new Date(0)));
+        assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", DateHelper.rfc1123Format(784111777000L));
+        assertEquals("Tue, 29 Feb 2000 23:59:59 GMT", DateHelper.rfc1123Format(951868799999L));
+        assertEquals("Wed, 31 Dec 1969 23:59:59 GMT", DateHelper.rfc1123Format(-1));
+    }
+
+    @Test
+    public void formatsLikeSimpleDateFormat() {
+        SimpleDateFormat expected = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+        expected.setTimeZone(TimeZone.getTimeZone("GMT"));
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            // Between 1900 and 2100
+            long millis = (long) ((random.nextDouble() - 0.35) * 200 * 365.25 * 24 * 3600 * 1000);
+            Date date = new Date(millis);
+            assertEquals(expected.format(date), DateHelper.rfc1123Format(date));
+        }
+    }
+
+    @Test
+    public void formatsTheCurrentSecond() {
+        long before = System.currentTimeMillis() / 1000;
+        String now = DateHelper.rfc1123Now();
+        long after = System.currentTimeMillis() / 1000;
+        long parsed = DateHelper.parseHttpDate(now).getTime() / 1000;
+        assertTrue(parsed >= before && parsed <= after);
+    }
+
+    @Test
+    public void parsesAllThreeHttpDateFormats() {
+        Date expected = new Date(784111777000L);
+        assertEquals(expected, DateHelper.parseHttpDate("Sun, 06 Nov 1994 08:49:37 GMT"));
+        assertEquals(expected, DateHelper.parseHttpDate("Sunday, 06-Nov-94 08:49:37 GMT"));
+        assertEquals(expected, DateHelper.parseHttpDate("Sun Nov  6 08:49:37 1994"));
+        assertEquals(expected, DateHelper.parseHttpDate("  sun, 06 nov 1994 08:49:37 gmt "));
+        assertEquals(new Date(1234567890000L), DateHelper.parseHttpDate("Friday, 13-Feb-09 23:31:30 GMT"));
+    }
+
+    @Test
+    public void parsesWhatItFormats() {
+        Random random = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            long millis = (random.nextLong() % (300L * 365 * 24 * 3600 * 1000)) / 1000 * 1000;
+            assertEquals(new Date(millis), DateHelper.parseHttpDate(DateHelper.rfc1123Format(millis)));
+        }
+    }
+
+    @Test
+    public void returnsNullForInvalidDates() {
+        assertNull(DateHelper.parseHttpDate(null));
+        assertNull(DateHelper.parseHttpDate(""));
+        assertNull(DateHelper.parseHttpDate("yesterday"));
+        assertNull(DateHelper.parseHttpDate("Sun, 06 Nov 1994 08:49:37"));
+        assertNull(DateHelper.parseHttpDate("Sun, 06 Nov 1994 08:49:37 PST"));
+        assertNull(DateHelper.parseHttpDate("Sun, 06 Foo 1994 08:49:37 GMT"));
+        assertNull(DateHelper.parseHttpDate("Sun, 06 Nov 1994 25:49:37 GMT"));
+        assertNull(DateHelper.parseHttpDate("Sun, 06 Nov 1994 08:49:37 GMT trailing"));
+        assertNull(DateHelper.parseHttpDate("Sun Nov  6 08:49:37"));
+    }
+}
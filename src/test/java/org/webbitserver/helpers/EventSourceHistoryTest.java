@@ -0,0 +1,107 @@
+package org.webbitserver.helpers;
+
+import org.junit.Test;
+import org.webbitserver.EventSourceMessage;
+import org.webbitserver.stub.StubConnection;
+import org.webbitserver.stub.StubHttpRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class EventSourceHistoryTest {
+
+    @Test
+    public void returnsMessagesAfterTheLastSeenId() {
+        EventSourceHistory history = new EventSourceHistory(10, 10000);
+        for (int i = 1; i <= 5; i++) {
+            history.add(new EventSourceMessage("m" + i).id(i));
+        }
+        assertEquals(Arrays.asList("4", "5"), ids(history.since("3")));
+        assertEquals(emptyList(), history.since("5"));
+        assertNull(history.since("6"));
+    }
+
+    @Test
+    public void replaysMessagesWithoutIdsAlongTheWay() {
+        EventSourceHistory history = new EventSourceHistory(10, 10000);
+        history.add(new EventSourceMessage("a").id("a"));
+        history.add(new EventSourceMessage("no id"));
+        history.add(new EventSourceMessage("b").id("b"));
+        assertEquals(Arrays.asList(null, "b"), ids(history.since("a")));
+    }
+
+    @Test
+    public void dropsOldestMessagesBeyondMaxCount() {
+        EventSourceHistory history = new EventSourceHistory(3, 10000);
+        for (int i = 1; i <= 5; i++) {
+            history.add(new EventSourceMessage("m" + i).id(i));
+        }
+        assertEquals(3, history.size());
+        assertNull(history.since("2"));
+        assertEquals(Arrays.asList("4", "5"), ids(history.since("3")));
+    }
+
+    @Test
+    public void dropsOldestMessagesBeyondMaxBytes() {
+        // Each message is "data: mN\nid: N\n\n", 16 bytes
+        EventSourceHistory history = new EventSourceHistory(100, 40);
+        for (int i = 1; i <= 5; i++) {
+            history.add(new EventSourceMessage("m" + i).id(i));
+        }
+        assertEquals(2, history.size());
+        assertEquals(32, history.bytes());
+        assertNull(history.since("3"));
+        assertEquals(Arrays.asList("5"), ids(history.since("4")));
+    }
+
+    @Test
+    public void keepsTheNewestMessageEvenIfTooBig() {
+        EventSourceHistory history = new EventSourceHistory(100, 5);
+        history.add(new EventSourceMessage("first").id(1));
+        history.add(new EventSourceMessage("second").id(2));
+        assertEquals(1, history.size());
+        assertEquals(emptyList(), history.since("2"));
+    }
+
+    @Test
+    public void resumesFromTheLatestMessageWithARepeatedId() {
+        EventSourceHistory history = new EventSourceHistory(2, 10000);
+        history.add(new EventSourceMessage("a").id("x"));
+        history.add(new EventSourceMessage("b").id("x"));
+        history.add(new EventSourceMessage("c").id("y"));
+        assertEquals(Arrays.asList("y"), ids(history.since("x")));
+    }
+
+    @Test
+    public void replaysToAConnectionFromItsLastEventIdHeader() {
+        EventSourceHistory history = new EventSourceHistory(10, 10000);
+        for (int i = 1; i <= 3; i++) {
+            history.add(new EventSourceMessage("m" + i).id(i));
+        }
+
+        StubConnection fresh = new StubConnection();
+        assertEquals(0, history.replay(fresh));
+        assertEquals(emptyList(), fresh.sentMessages());
+
+        StubConnection behind = new StubConnection(new StubHttpRequest().header("Last-Event-ID", "1"));
+        assertEquals(2, history.replay(behind));
+        assertEquals(Arrays.asList("data: m2\nid: 2\n\n", "data: m3\nid: 3\n\n"), behind.sentMessages());
+
+        StubConnection tooFarBehind = new StubConnection(new StubHttpRequest().header("Last-Event-ID", "0"));
+        assertEquals(-1, history.replay(tooFarBehind));
+        assertEquals(emptyList(), tooFarBehind.sentMessages());
+    }
+
+    private static List<String> ids(List<EventSourceMessage> messages) {
+        List<String> ids = new ArrayList<String>();
+        for (EventSourceMessage message : messages) {
+            ids.add(message.id());
+        }
+        return ids;
+    }
+}
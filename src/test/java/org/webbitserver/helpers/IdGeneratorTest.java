@@ -0,0 +1,58 @@
+package org.webbitserver.helpers;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+
+public class IdGeneratorTest {
+
+    @Test
+    public void countsFromOne() {
+        IdGenerator ids = new IdGenerator();
+        assertEquals(1, ids.next());
+        assertEquals(2, ids.next());
+        assertEquals(3, ids.next());
+    }
+
+    @Test
+    public void putsTheNodeInTheTopBits() {
+        IdGenerator ids = new IdGenerator(IdGenerator.MAX_NODE);
+        ids.next();
+        long id = ids.next();
+        assertEquals(IdGenerator.MAX_NODE, IdGenerator.node(id));
+        assertEquals(2, IdGenerator.sequence(id));
+        assertEquals(0, IdGenerator.node(new IdGenerator().next()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNodesThatDoNotFit() {
+        new IdGenerator(IdGenerator.MAX_NODE + 1);
+    }
+
+    @Test
+    public void neverHandsOutTheSameIdTwiceAcrossThreads() throws Exception {
+        final IdGenerator ids = new IdGenerator(3);
+        final Set<Long> seen = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+        final int threads = 8;
+        final int perThread = 10000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        seen.add(ids.next());
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        done.await();
+        assertEquals(threads * perThread, seen.size());
+    }
+}
@@ -0,0 +1,172 @@
+package org.webbitserver.helpers;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.util.CharsetUtil;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.webbitserver.EventSourceConnection;
+import org.webbitserver.EventSourceHandler;
+import org.webbitserver.EventSourceMessage;
+import org.webbitserver.WebSocketConnection;
+import org.webbitserver.handler.ReplayingEventSourceHandler;
+import org.webbitserver.metrics.Histogram;
+import org.webbitserver.metrics.Meter;
+import org.webbitserver.metrics.MetricsReporter;
+import org.webbitserver.netty.EncodingHybiFrame;
+import org.webbitserver.netty.NettyWebSocketConnection;
+import org.webbitserver.stub.StubConnection;
+import org.webbitserver.stub.StubHttpRequest;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PubSubHubTest {
+    private final PubSubHub hub = new PubSubHub();
+
+    @Test
+    public void sendsTextToWebSocketAndEventSourceSubscribers() {
+        StubConnection webSocket = new StubConnection();
+        StubConnection eventSource = new StubConnection();
+        StubConnection elsewhere = new StubConnection();
+        hub.subscribe("news", (WebSocketConnection) webSocket);
+        hub.subscribe("news", (EventSourceConnection) eventSource);
+        hub.subscribe("sport", (WebSocketConnection) elsewhere);
+
+        assertEquals(2, hub.publish("news", "hello"));
+
+        assertEquals(Arrays.asList("hello"), webSocket.sentMessages());
+        assertEquals(Arrays.asList("data: hello\n\n"), eventSource.sentMessages());
+        assertEquals(emptyList(), elsewhere.sentMessages());
+    }
+
+    @Test
+    public void sharesTheEncodedTextBetweenMaskedAndUnmaskedWebSockets() throws Exception {
+        Channel channel = mock(Channel.class);
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.getChannel()).thenReturn(channel);
+        byte[] mask = {1, 2, 3, 4};
+        NettyWebSocketConnection masked = new NettyWebSocketConnection(null, null, ctx, mask);
+        NettyWebSocketConnection unmasked = new NettyWebSocketConnection(null, null, ctx, null);
+        masked.setHybiWebSocketVersion(13);
+        unmasked.setHybiWebSocketVersion(13);
+        hub.subscribe("news", masked);
+        hub.subscribe("news", unmasked);
+
+        assertEquals(2, hub.publish("news", "hello"));
+
+        ArgumentCaptor<EncodingHybiFrame> frames = ArgumentCaptor.forClass(EncodingHybiFrame.class);
+        verify(channel, times(2)).write(frames.capture());
+        ChannelBuffer maskedFrame = frames.getAllValues().get(0).encode();
+        ChannelBuffer unmaskedFrame = frames.getAllValues().get(1).encode();
+        byte[] payload = new byte[5];
+        maskedFrame.getBytes(6, payload);
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] ^= mask[i % 4];
+        }
+        assertEquals("hello", new String(payload, "UTF-8"));
+        assertEquals("hello", unmaskedFrame.toString(2, 5, CharsetUtil.UTF_8));
+    }
+
+    @Test
+    public void sendsEventSourceMessagesAndBinaryOnlyToTheirOwnKind() {
+        StubConnection webSocket = new StubConnection();
+        StubConnection eventSource = new StubConnection();
+        hub.subscribe("news", (WebSocketConnection) webSocket);
+        hub.subscribe("news", (EventSourceConnection) eventSource);
+
+        assertEquals(1, hub.publish("news", new EventSourceMessage("event")));
+        assertEquals(1, hub.publish("news", new byte[]{1, 2}));
+
+        assertEquals(Arrays.asList("data: event\n\n"), eventSource.sentMessages());
+        assertEquals(1, webSocket.sentBinaryMessages().size());
+        assertEquals(emptyList(), webSocket.sentMessages());
+    }
+
+    @Test
+    public void publishingToAnUnknownTopicSendsNothing() {
+        assertEquals(0, hub.publish("nobody", "hello"));
+        assertEquals(0, hub.subscribers("nobody"));
+    }
+
+    @Test
+    public void unsubscribesFromOneOrAllTopics() {
+        StubConnection connection = new StubConnection();
+        hub.subscribe("a", (WebSocketConnection) connection);
+        hub.subscribe("b", (WebSocketConnection) connection);
+
+        hub.unsubscribe("a", connection);
+        assertEquals(0, hub.publish("a", "to a"));
+        assertEquals(1, hub.publish("b", "to b"));
+
+        hub.unsubscribeAll(connection);
+        assertEquals(0, hub.publish("b", "to b again"));
+        assertEquals(Arrays.asList("to b"), connection.sentMessages());
+    }
+
+    @Test
+    public void unsubscribesWhenWrappedHandlersClose() throws Throwable {
+        StubConnection connection = new StubConnection();
+        hub.subscribe("a", (EventSourceConnection) connection);
+        EventSourceHandler handler = mock(EventSourceHandler.class);
+
+        hub.unsubscribeOnClose(handler).onClose(connection);
+
+        verify(handler).onClose(connection);
+        assertEquals(0, hub.subscribers("a"));
+    }
+
+    @Test
+    public void replaysHistoryToEventSourceSubscribers() {
+        hub.history("news", new EventSourceHistory(10, 10000));
+        hub.publish("news", new EventSourceMessage("one").id(1));
+        hub.publish("news", new EventSourceMessage("two").id(2));
+
+        StubConnection connection = new StubConnection(new StubHttpRequest().header("Last-Event-ID", "1"));
+        hub.subscribe("news", (EventSourceConnection) connection);
+        hub.publish("news", new EventSourceMessage("three").id(3));
+
+        assertEquals(Arrays.asList("data: two\nid: 2\n\n", "data: three\nid: 3\n\n"), connection.sentMessages());
+        assertEquals(1, connection.data(ReplayingEventSourceHandler.REPLAYED));
+    }
+
+    @Test
+    public void reportsPerTopicMetrics() {
+        hub.subscribe("news", (WebSocketConnection) new StubConnection());
+        hub.subscribe("news", (WebSocketConnection) new StubConnection());
+        hub.publish("news", "one");
+        hub.publish("news", "two");
+
+        final Map<String, Long> counts = new HashMap<String, Long>();
+        hub.report(new MetricsReporter() {
+            @Override
+            public void gauge(String name, long value) {
+                counts.put(name, value);
+            }
+
+            @Override
+            public void meter(String name, Meter meter) {
+                counts.put(name, meter.count());
+            }
+
+            @Override
+            public void histogram(String name, Histogram histogram) {
+                counts.put(name, histogram.count());
+            }
+        });
+
+        assertEquals(Long.valueOf(2), counts.get("pubsub.news.subscribers"));
+        assertEquals(Long.valueOf(2), counts.get("pubsub.news.published"));
+        assertEquals(Long.valueOf(4), counts.get("pubsub.news.delivered"));
+        assertEquals(Long.valueOf(2), counts.get("pubsub.news.fanout"));
+    }
+}
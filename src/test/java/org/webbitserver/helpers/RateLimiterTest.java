@@ -0,0 +1,88 @@
+package org.webbitserver.helpers;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimiterTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private long now = 1000 * SECOND;
+    private final RateLimiter limiter = new RateLimiter(2, 3) {
+        @Override
+        protected long nanoTime() {
+            return now;
+        }
+    };
+
+    @Test
+    public void allowsABurstThenRefillsAtTheRate() {
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertEquals(SECOND / 2, limiter.tryAcquire("a"));
+
+        now += SECOND / 2;
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertEquals(SECOND / 2, limiter.tryAcquire("a"));
+    }
+
+    @Test
+    public void keepsKeysApart() {
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquire("a");
+        }
+        assertEquals(0, limiter.tryAcquire("b"));
+        assertEquals(SECOND / 2, limiter.tryAcquire("a"));
+    }
+
+    @Test
+    public void doesNotSaveUpMoreThanTheBurst() {
+        limiter.tryAcquire("a");
+        now += 60 * SECOND;
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire("a"));
+        }
+        assertEquals(SECOND / 2, limiter.tryAcquire("a"));
+    }
+
+    @Test
+    public void forgetsKeysOnceTheirBucketsAreFull() {
+        limiter.tryAcquire("a");
+        limiter.tryAcquire("b");
+        limiter.tryAcquire("b");
+        assertEquals(2, limiter.size());
+
+        now += 2 * SECOND;
+        limiter.tryAcquire("c");
+        assertEquals(1, limiter.size());
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire("b"));
+        }
+    }
+
+    @Test
+    public void sweepsOnlyAFewKeysPerCall() {
+        for (int i = 0; i < 1000; i++) {
+            limiter.tryAcquire(i);
+        }
+        now += 2 * SECOND;
+
+        limiter.tryAcquire("a");
+        assertTrue(limiter.size() >= 1001 - RateLimiter.SWEEP_BATCH);
+
+        for (int i = 0; i < 1000 / RateLimiter.SWEEP_BATCH + 2; i++) {
+            limiter.tryAcquire("a");
+        }
+        assertEquals(1, limiter.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void needsAPositiveRate() {
+        new RateLimiter(0, 1);
+    }
+}
@@ -0,0 +1,59 @@
+package org.webbitserver.helpers;
+
+import org.junit.Test;
+
+import javax.net.ssl.SSLContext;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class SniConfigTest {
+    private final SslConfig defaultConfig = sslConfig();
+    private final SslConfig www = sslConfig();
+    private final SslConfig wildcard = sslConfig();
+
+    @Test
+    public void selectsExactHostBeforeWildcard() {
+        SniConfig sniConfig = new SniConfig(defaultConfig)
+                .host("www.example.com", www)
+                .host("*.example.com", wildcard);
+
+        assertSame(www, sniConfig.select("www.example.com"));
+        assertSame(www, sniConfig.select("WWW.Example.COM."));
+        assertSame(wildcard, sniConfig.select("api.example.com"));
+        assertSame(defaultConfig, sniConfig.select("a.b.example.com"));
+        assertSame(defaultConfig, sniConfig.select("example.org"));
+        assertSame(defaultConfig, sniConfig.select(null));
+    }
+
+    @Test
+    public void refusesUnknownHostsWithoutDefault() {
+        SniConfig sniConfig = new SniConfig().host("www.example.com", www);
+
+        assertSame(www, sniConfig.select("www.example.com"));
+        assertNull(sniConfig.select("example.org"));
+        assertNull(sniConfig.select(null));
+    }
+
+    @Test
+    public void hostsCanBeReplacedAndRemoved() {
+        SniConfig sniConfig = new SniConfig(defaultConfig).host("www.example.com", www);
+        SslConfig renewed = sslConfig();
+
+        sniConfig.host("www.example.com", renewed);
+        assertSame(renewed, sniConfig.select("www.example.com"));
+
+        sniConfig.removeHost("www.example.com");
+        assertSame(defaultConfig, sniConfig.select("www.example.com"));
+    }
+
+    private static SslConfig sslConfig() {
+        try {
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, null, null);
+            return new SslConfig(sslContext);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.webbitserver.helpers;
+
+import org.junit.Test;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+public class SslConfigTest {
+
+    @Test
+    public void createsServerEnginesWithConfiguredProtocolsAndCiphers() throws Exception {
+        SslConfig sslConfig = new SslConfig(sslContext())
+                .protocols("TLSv1.2")
+                .cipherSuites("TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256");
+
+        SSLEngine engine = sslConfig.createServerEngine();
+        assertFalse(engine.getUseClientMode());
+        assertArrayEquals(new String[]{"TLSv1.2"}, engine.getEnabledProtocols());
+        assertArrayEquals(new String[]{"TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256"}, engine.getEnabledCipherSuites());
+    }
+
+    @Test
+    public void configuresServerSessionCache() throws Exception {
+        SSLContext sslContext = sslContext();
+        new SslConfig(sslContext).sessionCacheSize(1234).sessionTimeout(42);
+
+        assertEquals(1234, sslContext.getServerSessionContext().getSessionCacheSize());
+        assertEquals(42, sslContext.getServerSessionContext().getSessionTimeout());
+    }
+
+    @Test
+    public void usesEngineFactoryToCreateEngines() throws Exception {
+        final SSLEngine[] created = new SSLEngine[1];
+        SslConfig sslConfig = new SslConfig(sslContext()).engineFactory(new SslConfig.EngineFactory() {
+            @Override
+            public SSLEngine createSSLEngine(SSLContext sslContext) {
+                created[0] = sslContext.createSSLEngine("example.com", 443);
+                return created[0];
+            }
+        });
+
+        SSLEngine engine = sslConfig.createServerEngine();
+        assertSame(created[0], engine);
+        assertEquals("example.com", engine.getPeerHost());
+    }
+
+    private SSLContext sslContext() throws Exception {
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, null, null);
+        return sslContext;
+    }
+}
@@ -0,0 +1,57 @@
+package org.webbitserver.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+
+    @Test
+    public void isEmptyBeforeAnythingIsRecorded() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.min());
+        assertEquals(0, histogram.max());
+        assertEquals(0, histogram.percentile(99));
+    }
+
+    @Test
+    public void tracksCountMinMaxAndMean() {
+        Histogram histogram = new Histogram();
+        histogram.record(10);
+        histogram.record(20);
+        histogram.record(30);
+        assertEquals(3, histogram.count());
+        assertEquals(10, histogram.min());
+        assertEquals(30, histogram.max());
+        assertEquals(20.0, histogram.mean(), 0.0001);
+    }
+
+    @Test
+    public void percentilesAreWithinBucketPrecision() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 100000; i++) {
+            histogram.record(i);
+        }
+        assertWithin(50000, histogram.percentile(50));
+        assertWithin(90000, histogram.percentile(90));
+        assertWithin(99000, histogram.percentile(99));
+        assertEquals(100000, histogram.percentile(100));
+    }
+
+    @Test
+    public void bucketsCoverTheWholeRangeOfLongs() {
+        Histogram histogram = new Histogram();
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.percentile(50));
+        for (long value = 1; value > 0 && value < Long.MAX_VALUE / 3; value *= 3) {
+            int index = Histogram.bucketIndex(value);
+            assertTrue(value + " <= " + Histogram.bucketUpperBound(index), value <= Histogram.bucketUpperBound(index));
+        }
+    }
+
+    private void assertWithin(long expected, long actual) {
+        assertTrue("Expected ~" + expected + " but was " + actual, actual >= expected && actual <= expected * 1.13);
+    }
+}
@@ -0,0 +1,171 @@
+package org.webbitserver.netty;
+
+import org.junit.After;
+import org.junit.Test;
+import org.webbitserver.BaseWebSocketHandler;
+import org.webbitserver.WebServer;
+import org.webbitserver.WebSocketConnection;
+import org.webbitserver.handler.StringHttpHandler;
+import org.webbitserver.helpers.Base64;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.webbitserver.WebServers.createWebServer;
+
+public class ConcurrentHandshakeTest {
+    private static final int UPGRADES = 10000;
+    private static final int CLIENT_THREADS = 16;
+
+    private final ExecutorService handlerThreads = Executors.newFixedThreadPool(8);
+    private final ExecutorService clients = Executors.newFixedThreadPool(CLIENT_THREADS);
+    private WebServer webServer = createWebServer(handlerThreads, 59504);
+
+    @After
+    public void die() throws InterruptedException, ExecutionException {
+        webServer.stop().get();
+        clients.shutdownNow();
+        handlerThreads.shutdownNow();
+    }
+
+    @Test
+    public void acceptKeysAreCorrectWhenManyHandshakesRunInParallel() throws Exception {
+        webServer.add("/ws", new BaseWebSocketHandler()).start().get();
+
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        for (int t = 0; t < CLIENT_THREADS; t++) {
+            final long seed = t;
+            results.add(clients.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    Random random = new Random(seed);
+                    MessageDigest sha1 = MessageDigest.getInstance("SHA1");
+                    int upgraded = 0;
+                    for (int i = 0; i < UPGRADES / CLIENT_THREADS; i++) {
+                        byte[] nonce = new byte[16];
+                        random.nextBytes(nonce);
+                        String key = Base64.encode(nonce);
+                        String expected = Base64.encode(sha1.digest((key + HandshakeDigest.ACCEPT_GUID).getBytes("ASCII")));
+                        assertEquals(expected, upgrade(key));
+                        upgraded++;
+                    }
+                    return upgraded;
+                }
+            }));
+        }
+
+        int upgraded = 0;
+        for (Future<Integer> result : results) {
+            upgraded += result.get(2, TimeUnit.MINUTES);
+        }
+        assertEquals(UPGRADES, upgraded);
+    }
+
+    @Test
+    public void answersUnsupportedVersionsAndKeepsTheConnectionUsable() throws Exception {
+        final AtomicInteger opened = new AtomicInteger();
+        webServer.add("/ws", new BaseWebSocketHandler() {
+            @Override
+            public void onOpen(WebSocketConnection connection) {
+                opened.incrementAndGet();
+            }
+        }).add(new StringHttpHandler("text/plain", "still here")).start().get();
+
+        Socket socket = new Socket(InetAddress.getLocalHost(), 59504);
+        try {
+            socket.setSoTimeout(10000);
+            OutputStream out = socket.getOutputStream();
+            out.write(("" +
+                    "GET /ws HTTP/1.1\r\n" +
+                    "Host: localhost\r\n" +
+                    "Upgrade: websocket\r\n" +
+                    "Connection: Upgrade\r\n" +
+                    "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n" +
+                    "Sec-WebSocket-Version: 7\r\n" +
+                    "\r\n" +
+                    "GET /ws HTTP/1.1\r\n" +
+                    "Host: localhost\r\n" +
+                    "Upgrade: websocket\r\n" +
+                    "Connection: Upgrade\r\n" +
+                    "\r\n" +
+                    "GET / HTTP/1.1\r\n" +
+                    "Host: localhost\r\n" +
+                    "\r\n").getBytes("ASCII"));
+            out.flush();
+            InputStream in = socket.getInputStream();
+            for (int i = 0; i < 2; i++) {
+                String head = readResponseHead(in);
+                assertTrue(head, head.startsWith("HTTP/1.1 426 "));
+                assertTrue(head, head.contains("Sec-WebSocket-Version: 13\r\n"));
+                assertTrue(head, head.contains("Content-Length: 0\r\n"));
+            }
+            String head = readResponseHead(in);
+            assertTrue(head, head.startsWith("HTTP/1.1 200 "));
+            byte[] body = new byte["still here".length()];
+            for (int read = 0; read < body.length; ) {
+                read += in.read(body, read, body.length - read);
+            }
+            assertEquals("still here", new String(body, "ASCII"));
+            assertEquals(0, opened.get());
+        } finally {
+            socket.close();
+        }
+    }
+
+    private String upgrade(String key) throws IOException {
+        Socket socket = new Socket(InetAddress.getLocalHost(), 59504);
+        try {
+            socket.setSoTimeout(10000);
+            OutputStream out = socket.getOutputStream();
+            out.write(("" +
+                    "GET /ws HTTP/1.1\r\n" +
+                    "Host: localhost\r\n" +
+                    "Upgrade: websocket\r\n" +
+                    "Connection: Upgrade\r\n" +
+                    "Sec-WebSocket-Key: " + key + "\r\n" +
+                    "Sec-WebSocket-Version: 13\r\n" +
+                    "\r\n").getBytes("ASCII"));
+            out.flush();
+            return acceptHeader(readResponseHead(socket.getInputStream()));
+        } finally {
+            socket.close();
+        }
+    }
+
+    private String readResponseHead(InputStream in) throws IOException {
+        StringBuilder head = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            head.append((char) c);
+            if (head.length() >= 4 && head.lastIndexOf("\r\n\r\n") == head.length() - 4) {
+                break;
+            }
+        }
+        return head.toString();
+    }
+
+    private String acceptHeader(String head) {
+        for (String line : head.split("\r\n")) {
+            if (line.startsWith("Sec-WebSocket-Accept:")) {
+                return line.substring("Sec-WebSocket-Accept:".length()).trim();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,202 @@
+package org.webbitserver.netty;
+
+import org.junit.After;
+import org.junit.Test;
+import org.webbitserver.HttpControl;
+import org.webbitserver.HttpHandler;
+import org.webbitserver.HttpRequest;
+import org.webbitserver.HttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionLimitsTest {
+    private final NettyWebServer webServer = new NettyWebServer(59504);
+
+    @After
+    public void die() throws Exception {
+        webServer.stop().get();
+    }
+
+    @Test
+    public void turnsAwayConnectionsOverTheLimitWithA503() throws Exception {
+        webServer.connectionLimits(new ConnectionLimits().maxConnections(1).retryAfter(5)).enableMetrics();
+        webServer.add(new OkHandler()).start().get();
+
+        Socket first = new Socket(InetAddress.getLocalHost(), 59504);
+        try {
+            String rejected = get();
+            assertTrue(rejected, rejected.startsWith("HTTP/1.1 503 Service Unavailable\r\n"));
+            assertTrue(rejected, rejected.contains("Retry-After: 5\r\n"));
+            assertEquals(1, webServer.metrics().rejectedConnections());
+        } finally {
+            first.close();
+        }
+        assertOkOnceAdmitted();
+    }
+
+    @Test
+    public void answersRejectedConnectionsWithoutWaitingForARequest() throws Exception {
+        webServer.connectionLimits(new ConnectionLimits().maxConnections(1).rejectionTimeout(60000)).enableMetrics();
+        webServer.add(new OkHandler()).start().get();
+
+        Socket first = new Socket(InetAddress.getLocalHost(), 59504);
+        Socket silent = new Socket(InetAddress.getLocalHost(), 59504);
+        try {
+            silent.setSoTimeout(5000);
+            String rejected = readAll(silent.getInputStream());
+            assertTrue(rejected, rejected.startsWith("HTTP/1.1 503 Service Unavailable\r\n"));
+            assertRejectedConnectionsClose();
+        } finally {
+            silent.close();
+            first.close();
+        }
+    }
+
+    @Test
+    public void closesRejectedSslConnectionsThatNeverSendARequest() throws Exception {
+        InputStream keyStore = getClass().getResourceAsStream("/ssl/keystore");
+        try {
+            webServer.setupSsl(keyStore, "webbit");
+        } finally {
+            keyStore.close();
+        }
+        webServer.connectionLimits(new ConnectionLimits().maxConnections(1).rejectionTimeout(200)).enableMetrics();
+        webServer.add(new OkHandler()).start().get();
+
+        Socket first = new Socket(InetAddress.getLocalHost(), 59504);
+        Socket silent = new Socket(InetAddress.getLocalHost(), 59504);
+        try {
+            silent.setSoTimeout(5000);
+            // All the client gets is the SSL handler's close_notify as the connection closes.
+            readAll(silent.getInputStream());
+            assertEquals(1, webServer.metrics().rejectedConnections());
+            assertRejectedConnectionsClose();
+        } finally {
+            silent.close();
+            first.close();
+        }
+    }
+
+    @Test
+    public void limitsConnectionsPerAddress() throws Exception {
+        webServer.connectionLimits(new ConnectionLimits().maxConnectionsPerAddress(1));
+        webServer.add(new OkHandler()).start().get();
+
+        Socket first = new Socket(InetAddress.getLocalHost(), 59504);
+        try {
+            String rejected = get();
+            assertTrue(rejected, rejected.startsWith("HTTP/1.1 503"));
+            assertTrue(rejected, !rejected.contains("Retry-After"));
+        } finally {
+            first.close();
+        }
+        assertOkOnceAdmitted();
+    }
+
+    @Test
+    public void turnsAwayRequestsOverTheInFlightLimit() throws Exception {
+        final CountDownLatch received = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        webServer.connectionLimits(new ConnectionLimits().maxInFlightRequests(1).retryAfter(1)).enableMetrics();
+        webServer.add(new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest request, final HttpResponse response, HttpControl control) {
+                if (request.uri().equals("/slow")) {
+                    received.countDown();
+                    new Thread() {
+                        @Override
+                        public void run() {
+                            try {
+                                release.await();
+                            } catch (InterruptedException ignored) {
+                            }
+                            response.content("slow").end();
+                        }
+                    }.start();
+                } else {
+                    response.content("ok").end();
+                }
+            }
+        }).start().get();
+
+        Socket slow = new Socket(InetAddress.getLocalHost(), 59504);
+        try {
+            write(slow, "/slow");
+            assertTrue(received.await(5, TimeUnit.SECONDS));
+
+            String rejected = get();
+            assertTrue(rejected, rejected.startsWith("HTTP/1.1 503"));
+            assertTrue(rejected, rejected.contains("Retry-After: 1\r\n"));
+            assertEquals(1, webServer.metrics().rejectedRequests());
+
+            release.countDown();
+            assertTrue(readAll(slow.getInputStream()).endsWith("slow"));
+        } finally {
+            slow.close();
+        }
+        assertOkOnceAdmitted();
+    }
+
+    private void assertRejectedConnectionsClose() throws InterruptedException {
+        // The server notices closed connections asynchronously.
+        for (int i = 0; i < 50 && webServer.metrics().rejectedConnectionsOpen() != 0; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, webServer.metrics().rejectedConnectionsOpen());
+    }
+
+    private void assertOkOnceAdmitted() throws Exception {
+        // The server notices closed connections asynchronously.
+        String response = "";
+        for (int i = 0; i < 50; i++) {
+            response = get();
+            if (response.startsWith("HTTP/1.1 200")) {
+                return;
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("Never admitted:\n" + response);
+    }
+
+    private String get() throws IOException {
+        Socket client = new Socket(InetAddress.getLocalHost(), 59504);
+        try {
+            write(client, "/");
+            return readAll(client.getInputStream());
+        } finally {
+            client.close();
+        }
+    }
+
+    private void write(Socket client, String uri) throws IOException {
+        OutputStream out = client.getOutputStream();
+        out.write(("GET " + uri + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n").getBytes("ASCII"));
+        out.flush();
+    }
+
+    private String readAll(InputStream in) throws IOException {
+        StringBuilder result = new StringBuilder();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            result.append(new String(buffer, 0, read, "ASCII"));
+        }
+        return result.toString();
+    }
+
+    private static class OkHandler implements HttpHandler {
+        @Override
+        public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control) {
+            response.content("ok").end();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.webbitserver.netty;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ConnectionWritabilityTest {
+    private final Channel channel = mock(Channel.class);
+    private final NettyEventSourceConnection connection;
+    private final AtomicInteger ran = new AtomicInteger();
+    private final Runnable task = new Runnable() {
+        @Override
+        public void run() {
+            ran.incrementAndGet();
+        }
+    };
+
+    public ConnectionWritabilityTest() {
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.getChannel()).thenReturn(channel);
+        Executor inline = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        connection = new NettyEventSourceConnection(inline, null, ctx);
+    }
+
+    @Test
+    public void runsTasksStraightAwayWhenWritable() {
+        when(channel.isWritable()).thenReturn(true);
+        connection.whenWritable(task);
+        assertEquals(1, ran.get());
+    }
+
+    @Test
+    public void runsWaitingTasksOnceWhenTheChannelBecomesWritable() {
+        when(channel.isWritable()).thenReturn(false);
+        connection.whenWritable(task);
+        connection.writabilityChanged();
+        assertFalse(connection.writable());
+        assertEquals(0, ran.get());
+
+        when(channel.isWritable()).thenReturn(true);
+        connection.writabilityChanged();
+        connection.writabilityChanged();
+        assertEquals(1, ran.get());
+    }
+}
@@ -0,0 +1,254 @@
+package org.webbitserver.netty;
+
+import org.junit.After;
+import org.junit.Test;
+import org.webbitserver.BaseWebSocketHandler;
+import org.webbitserver.EventSourceConnection;
+import org.webbitserver.EventSourceHandler;
+import org.webbitserver.EventSourceMessage;
+import org.webbitserver.HttpControl;
+import org.webbitserver.HttpHandler;
+import org.webbitserver.HttpRequest;
+import org.webbitserver.HttpResponse;
+import org.webbitserver.WebServer;
+import org.webbitserver.WebSocketConnection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.webbitserver.WebServers.createWebServer;
+
+public class DrainTest {
+    private final WebServer webServer = createWebServer(59504);
+
+    @After
+    public void die() throws Exception {
+        webServer.stop().get();
+    }
+
+    @Test
+    public void finishesRequestsInFlightAndClosesTheirConnections() throws Exception {
+        final CountDownLatch received = new CountDownLatch(1);
+        webServer.add(new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest request, final HttpResponse response, HttpControl control) {
+                received.countDown();
+                new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            sleep(200);
+                        } catch (InterruptedException ignored) {
+                        }
+                        response.content("finished").end();
+                    }
+                }.start();
+            }
+        }).start().get();
+
+        Socket client = connect();
+        try {
+            write(client, "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            assertTrue(received.await(5, TimeUnit.SECONDS));
+            webServer.drain(5, TimeUnit.SECONDS);
+
+            String response = readAll(client.getInputStream());
+            assertTrue(response, response.contains("Connection: close\r\n"));
+            assertTrue(response, response.endsWith("finished"));
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void closesIdleConnectionsStraightAway() throws Exception {
+        webServer.add(new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control) {
+                response.content("ok").end();
+            }
+        }).start().get();
+
+        Socket client = connect();
+        try {
+            write(client, "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            InputStream in = client.getInputStream();
+            String head = readUntil(in, "ok");
+            assertTrue(head, head.startsWith("HTTP/1.1 200"));
+
+            long start = System.nanoTime();
+            webServer.drain(5, TimeUnit.SECONDS).get();
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+            assertEquals(-1, in.read());
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void tellsEventSourceClientsWhenToReconnect() throws Exception {
+        final CountDownLatch opened = new CountDownLatch(1);
+        webServer.drainReconnectDelay(2000, 3000);
+        webServer.add("/events", new EventSourceHandler() {
+            @Override
+            public void onOpen(EventSourceConnection connection) {
+                connection.send(new EventSourceMessage("hello"));
+                opened.countDown();
+            }
+
+            @Override
+            public void onClose(EventSourceConnection connection) {
+            }
+        }).start().get();
+
+        Socket client = connect();
+        try {
+            write(client, "GET /events HTTP/1.1\r\nHost: localhost\r\nAccept: text/event-stream\r\n\r\n");
+            assertTrue(opened.await(5, TimeUnit.SECONDS));
+            webServer.drain(5, TimeUnit.SECONDS).get();
+
+            String stream = readAll(client.getInputStream());
+            Matcher retry = Pattern.compile("\nretry: (\\d+)\n\n$").matcher(stream);
+            assertTrue(stream, retry.find());
+            long delay = Long.parseLong(retry.group(1));
+            assertTrue(stream, delay >= 2000 && delay <= 3000);
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void asksWebSocketClientsToGoAway() throws Exception {
+        webServer.add("/ws", new BaseWebSocketHandler()).start().get();
+        final CountDownLatch opened = new CountDownLatch(1);
+        final CountDownLatch closed = new CountDownLatch(1);
+        WebSocketClient client = new WebSocketClient(URI.create("ws://localhost:59504/ws"), new BaseWebSocketHandler() {
+            @Override
+            public void onOpen(WebSocketConnection connection) {
+                opened.countDown();
+            }
+
+            @Override
+            public void onClose(WebSocketConnection connection) {
+                closed.countDown();
+            }
+        }, Executors.newSingleThreadExecutor());
+        client.start().get();
+        try {
+            assertTrue(opened.await(5, TimeUnit.SECONDS));
+            long start = System.nanoTime();
+            webServer.drain(5, TimeUnit.SECONDS).get();
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+            assertTrue(closed.await(5, TimeUnit.SECONDS));
+        } finally {
+            client.stop().get();
+        }
+    }
+
+    @Test
+    public void sendsOnlyOneCloseFrameWhenTheClientAnswersGoingAway() throws Exception {
+        webServer.add("/ws", new BaseWebSocketHandler()).start().get();
+
+        Socket client = connect();
+        try {
+            write(client, "GET /ws HTTP/1.1\r\nHost: localhost\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n" +
+                    "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\nSec-WebSocket-Version: 13\r\n\r\n");
+            InputStream in = client.getInputStream();
+            String head = readUntil(in, "\r\n\r\n");
+            assertTrue(head, head.startsWith("HTTP/1.1 101"));
+
+            Future<? extends WebServer> drained = webServer.drain(5, TimeUnit.SECONDS);
+            // FIN + close, 2 byte payload, status 1001.
+            assertArrayEquals(new byte[]{(byte) 0x88, 2, 0x03, (byte) 0xE9}, read(in, 4));
+
+            // The client's answer: masked, with the same status.
+            byte[] mask = {1, 2, 3, 4};
+            client.getOutputStream().write(new byte[]{(byte) 0x88, (byte) 0x82, 1, 2, 3, 4,
+                    (byte) (0x03 ^ mask[0]), (byte) (0xE9 ^ mask[1])});
+            client.getOutputStream().flush();
+
+            assertEquals(-1, in.read());
+            drained.get(5, TimeUnit.SECONDS);
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void closesWhateverIsLeftAtTheDeadline() throws Exception {
+        webServer.add(new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control) {
+                // Never responds.
+            }
+        }).start().get();
+
+        Socket client = connect();
+        try {
+            write(client, "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            Thread.sleep(100);
+            long start = System.nanoTime();
+            webServer.drain(300, TimeUnit.MILLISECONDS).get();
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(250));
+            assertEquals(-1, client.getInputStream().read());
+        } finally {
+            client.close();
+        }
+    }
+
+    private Socket connect() throws IOException {
+        Socket client = new Socket(InetAddress.getLocalHost(), 59504);
+        client.setSoTimeout(10000);
+        return client;
+    }
+
+    private void write(Socket client, String request) throws IOException {
+        OutputStream out = client.getOutputStream();
+        out.write(request.getBytes("ASCII"));
+        out.flush();
+    }
+
+    private String readUntil(InputStream in, String end) throws IOException {
+        StringBuilder result = new StringBuilder();
+        int c;
+        while (!result.toString().endsWith(end) && (c = in.read()) != -1) {
+            result.append((char) c);
+        }
+        return result.toString();
+    }
+
+    private byte[] read(InputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        for (int read = 0; read < length; ) {
+            int n = in.read(bytes, read, length - read);
+            if (n == -1) {
+                throw new IOException("closed after " + read + " bytes");
+            }
+            read += n;
+        }
+        return bytes;
+    }
+
+    private String readAll(InputStream in) throws IOException {
+        StringBuilder result = new StringBuilder();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            result.append(new String(buffer, 0, read, "ASCII"));
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,70 @@
+package org.webbitserver.netty;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class EncodingHybiFrameTest {
+
+    @Test
+    public void encodesShortPayloadLengthInTheSecondByte() throws Exception {
+        ChannelBuffer frame = encode(125, null);
+        assertEquals(2 + 125, frame.readableBytes());
+        assertEquals(0x81, frame.getUnsignedByte(0));
+        assertEquals(125, frame.getUnsignedByte(1));
+        assertPayload(frame, 2, 125);
+    }
+
+    @Test
+    public void encodesMediumPayloadLengthInTwoBytes() throws Exception {
+        ChannelBuffer frame = encode(126, null);
+        assertEquals(4 + 126, frame.readableBytes());
+        assertEquals(126, frame.getUnsignedByte(1));
+        assertEquals(126, frame.getUnsignedShort(2));
+        assertPayload(frame, 4, 126);
+
+        frame = encode(0xFFFF, null);
+        assertEquals(4 + 0xFFFF, frame.readableBytes());
+        assertEquals(0xFFFF, frame.getUnsignedShort(2));
+        assertPayload(frame, 4, 0xFFFF);
+    }
+
+    @Test
+    public void encodesLongPayloadLengthInEightBytes() throws Exception {
+        ChannelBuffer frame = encode(0x10000, null);
+        assertEquals(10 + 0x10000, frame.readableBytes());
+        assertEquals(127, frame.getUnsignedByte(1));
+        assertEquals(0x10000, frame.getLong(2));
+        assertPayload(frame, 10, 0x10000);
+    }
+
+    @Test
+    public void masksPayloadAfterTheKey() throws Exception {
+        byte[] key = {1, 2, 3, 4};
+        ChannelBuffer frame = encode(5, key);
+        assertEquals(2 + 4 + 5, frame.readableBytes());
+        assertEquals(0x80 | 5, frame.getUnsignedByte(1));
+        for (int i = 0; i < 4; i++) {
+            assertEquals(key[i], frame.getByte(2 + i));
+        }
+        for (int i = 0; i < 5; i++) {
+            assertEquals((byte) (i ^ key[i % 4]), frame.getByte(6 + i));
+        }
+    }
+
+    private static ChannelBuffer encode(int length, byte[] maskingKey) throws Exception {
+        byte[] payload = new byte[length];
+        for (int i = 0; i < length; i++) {
+            payload[i] = (byte) i;
+        }
+        return new EncodingHybiFrame(Opcodes.OPCODE_TEXT, true, 0, maskingKey, ChannelBuffers.wrappedBuffer(payload)).encode();
+    }
+
+    private static void assertPayload(ChannelBuffer frame, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            assertEquals((byte) i, frame.getByte(offset + i));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.webbitserver.netty;
+
+import org.junit.After;
+import org.junit.Test;
+import org.webbitserver.BaseWebSocketHandler;
+import org.webbitserver.HttpControl;
+import org.webbitserver.HttpHandler;
+import org.webbitserver.HttpRequest;
+import org.webbitserver.HttpResponse;
+import org.webbitserver.WebSocketConnection;
+import org.webbitserver.handler.StringHttpHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.webbitserver.testutil.HttpClient.contents;
+
+public class HandlerSwapTest {
+    private final NettyWebServer webServer = new NettyWebServer(59504);
+
+    @After
+    public void die() throws Exception {
+        webServer.stop().get();
+    }
+
+    @Test
+    public void newRequestsSeeReplacedAndRemovedHandlersStraightAway() throws Exception {
+        HttpHandler hello = new StringHttpHandler("text/plain", "hello");
+        webServer.add(hello).start().get();
+        assertEquals("hello", get());
+
+        HttpHandler goodbye = new StringHttpHandler("text/plain", "goodbye");
+        webServer.replaceHandlers(Arrays.asList(goodbye));
+        assertEquals("goodbye", get());
+
+        webServer.remove(goodbye);
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:59504/").openConnection();
+        assertEquals(404, connection.getResponseCode());
+    }
+
+    @Test
+    public void requestsInFlightKeepTheHandlersTheyStartedWith() throws Exception {
+        final CountDownLatch received = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        webServer.add(new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest request, HttpResponse response, final HttpControl control) {
+                received.countDown();
+                new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            release.await();
+                        } catch (InterruptedException ignored) {
+                        }
+                        control.nextHandler();
+                    }
+                }.start();
+            }
+        }).add(new StringHttpHandler("text/plain", "old")).start().get();
+
+        Socket client = new Socket(InetAddress.getLocalHost(), 59504);
+        try {
+            client.setSoTimeout(10000);
+            OutputStream out = client.getOutputStream();
+            out.write("GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n".getBytes("ASCII"));
+            out.flush();
+            assertTrue(received.await(5, TimeUnit.SECONDS));
+
+            webServer.replaceHandlers(Arrays.asList(new StringHttpHandler("text/plain", "new")));
+            assertEquals("new", get());
+
+            release.countDown();
+            String response = readAll(client.getInputStream());
+            assertTrue(response, response.endsWith("old"));
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void openWebSocketsSurviveAReplacement() throws Exception {
+        webServer.add("/ws", new BaseWebSocketHandler() {
+            @Override
+            public void onMessage(WebSocketConnection connection, String msg) {
+                connection.send(msg);
+            }
+        }).start().get();
+
+        final BlockingQueue<WebSocketConnection> opened = new ArrayBlockingQueue<WebSocketConnection>(1);
+        final BlockingQueue<String> received = new ArrayBlockingQueue<String>(1);
+        WebSocketClient client = new WebSocketClient(URI.create("ws://localhost:59504/ws"), new BaseWebSocketHandler() {
+            @Override
+            public void onOpen(WebSocketConnection connection) {
+                opened.add(connection);
+            }
+
+            @Override
+            public void onMessage(WebSocketConnection connection, String msg) {
+                received.add(msg);
+            }
+        }, Executors.newSingleThreadExecutor());
+        client.start().get();
+        WebSocketConnection connection = opened.poll(5, TimeUnit.SECONDS);
+        try {
+            webServer.replaceHandlers(Collections.<HttpHandler>emptyList());
+
+            connection.send("still here");
+            assertEquals("still here", received.poll(5, TimeUnit.SECONDS));
+        } finally {
+            connection.close();
+            client.stop().get();
+        }
+    }
+
+    private String get() throws IOException {
+        return contents(new URL("http://localhost:59504/").openConnection());
+    }
+
+    private String readAll(InputStream in) throws IOException {
+        StringBuilder result = new StringBuilder();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            result.append(new String(buffer, 0, read, "ASCII"));
+        }
+        return result.toString();
+    }
+}
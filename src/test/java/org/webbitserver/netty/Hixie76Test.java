@@ -0,0 +1,14 @@
+package org.webbitserver.netty;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class Hixie76Test {
+    @Test
+    public void keyNumberDividesDigitsBySpaces() {
+        // Examples from draft-ietf-hybi-thewebsocketprotocol-00
+        assertEquals(155712099, Hixie76.keyNumber("18x 6]8vM;54 *(5:  {   U1]8  z [  8"));
+        assertEquals(173347027, Hixie76.keyNumber("1_ tx7X d  <  nw  334J702) 7]o}` 0"));
+    }
+}
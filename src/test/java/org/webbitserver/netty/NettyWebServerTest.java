@@ -7,10 +7,14 @@ import org.webbitserver.HttpControl;
 import org.webbitserver.HttpHandler;
 import org.webbitserver.HttpRequest;
 import org.webbitserver.HttpResponse;
+import org.webbitserver.handler.StringHttpHandler;
 
 import java.io.OutputStream;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.URL;
+import java.net.URLConnection;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
@@ -18,7 +22,10 @@ import java.util.concurrent.TimeUnit;
 
 import static java.lang.Thread.sleep;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.webbitserver.testutil.HttpClient.contents;
 
 public class NettyWebServerTest {
 
@@ -79,6 +86,70 @@ public class NettyWebServerTest {
         assertTrue("Server should not be running", !server.isRunning());
     }
 
+    @Test
+    public void servesTheSameHandlersOnEveryListener() throws Exception {
+        server = new NettyWebServer(Executors.newSingleThreadScheduledExecutor(), 9080);
+        server.listen(new InetSocketAddress(9081))
+                .add(new StringHttpHandler("text/plain", "hello"))
+                .start().get();
+
+        assertEquals("hello", contents(new URL("http://localhost:9080/").openConnection()));
+        assertEquals("hello", contents(new URL("http://localhost:9081/").openConnection()));
+
+        server.stop().get();
+        assertFalse(server.isRunning());
+    }
+
+    @Test
+    public void acceptsOnSeveralSocketsSharingAPort() throws Exception {
+        server = new NettyWebServer(Executors.newSingleThreadScheduledExecutor(), 9080);
+        server.acceptors(4)
+                .socketOptions(new SocketOptions().backlog(256).keepAlive(true))
+                .add(new StringHttpHandler("text/plain", "hello"))
+                .start().get();
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals("hello", contents(new URL("http://localhost:9080/").openConnection()));
+        }
+    }
+
+    @Test
+    public void servesRequestsOverTheBlockingTransport() throws Exception {
+        server = new NettyWebServer(Executors.newSingleThreadScheduledExecutor(), 9080);
+        server.transport(new OioTransport())
+                .add(new StringHttpHandler("text/plain", "hello"))
+                .start().get();
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals("hello", contents(new URL("http://localhost:9080/").openConnection()));
+        }
+    }
+
+    @Test
+    public void startsEveryResponseWithServerAndDateHeaders() throws Exception {
+        server = new NettyWebServer(Executors.newSingleThreadScheduledExecutor(), 9080);
+        server.add(new StringHttpHandler("text/plain", "hello")).start().get();
+
+        URLConnection connection = new URL("http://localhost:9080/").openConnection();
+        assertEquals("hello", contents(connection));
+        assertEquals("Webbit", connection.getHeaderField("Server"));
+        assertTrue(connection.getHeaderFieldDate("Date", 0) > 0);
+    }
+
+    @Test
+    public void canLeaveOutTheDefaultHeaders() throws Exception {
+        server = new NettyWebServer(Executors.newSingleThreadScheduledExecutor(), 9080);
+        server.serverHeader(null)
+                .dateHeader(false)
+                .add(new StringHttpHandler("text/plain", "hello"))
+                .start().get();
+
+        URLConnection connection = new URL("http://localhost:9080/").openConnection();
+        assertEquals("hello", contents(connection));
+        assertNull(connection.getHeaderField("Server"));
+        assertNull(connection.getHeaderField("Date"));
+    }
+
     private int getCurrentThreadCount() {
         return Thread.getAllStackTraces().keySet().size();
     }
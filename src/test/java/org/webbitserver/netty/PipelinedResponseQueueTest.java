@@ -0,0 +1,58 @@
+package org.webbitserver.netty;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PipelinedResponseQueueTest {
+    private final Channel channel = mock(Channel.class);
+    private final ChannelPipeline pipeline = mock(ChannelPipeline.class);
+    private final PipelinedResponseQueue queue = new PipelinedResponseQueue(channel, 2, null);
+    private final List<Object> sent = new ArrayList<Object>();
+
+    public PipelinedResponseQueueTest() {
+        when(channel.getPipeline()).thenReturn(pipeline);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                assertFalse("Sent while holding the queue's lock", Thread.holdsLock(queue));
+                ChannelEvent event = (ChannelEvent) invocation.getArguments()[0];
+                if (event instanceof MessageEvent) {
+                    sent.add(((MessageEvent) event).getMessage());
+                } else {
+                    sent.add("interest " + ((ChannelStateEvent) event).getValue());
+                }
+                return null;
+            }
+        }).when(pipeline).sendDownstream(any(ChannelEvent.class));
+    }
+
+    @Test
+    public void sendsHeldResponsesInOrderOutsideTheLock() {
+        PipelinedResponseQueue.Slot first = queue.enqueue(false);
+        PipelinedResponseQueue.Slot second = queue.enqueue(false);
+        second.write("second");
+        first.write("first");
+        assertEquals(Arrays.<Object>asList("interest " + Channel.OP_NONE, "first"), sent);
+
+        first.end(false);
+        second.end(false);
+        assertEquals(Arrays.<Object>asList("interest " + Channel.OP_NONE, "first", "second", "interest " + Channel.OP_READ), sent);
+    }
+}
@@ -0,0 +1,112 @@
+package org.webbitserver.netty;
+
+import org.junit.After;
+import org.junit.Test;
+import org.webbitserver.HttpControl;
+import org.webbitserver.HttpHandler;
+import org.webbitserver.HttpRequest;
+import org.webbitserver.HttpResponse;
+import org.webbitserver.WebServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.webbitserver.WebServers.createWebServer;
+
+public class PipeliningTest {
+
+    private WebServer webServer = createWebServer(59504);
+
+    @After
+    public void die() throws InterruptedException, ExecutionException {
+        webServer.stop().get();
+    }
+
+    @Test
+    public void writesResponsesInRequestOrderEvenWhenHandlersFinishOutOfOrder() throws Exception {
+        webServer.add(new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest request, final HttpResponse response, HttpControl control) throws Exception {
+                if (request.uri().equals("/slow")) {
+                    new Thread() {
+                        @Override
+                        public void run() {
+                            try {
+                                sleep(200);
+                            } catch (InterruptedException ignored) {
+                            }
+                            response.content("slow").end();
+                        }
+                    }.start();
+                } else {
+                    response.content("fast").end();
+                }
+            }
+        }).start().get();
+
+        Socket client = new Socket(InetAddress.getLocalHost(), 59504);
+        try {
+            OutputStream out = client.getOutputStream();
+            out.write(("" +
+                    "GET /slow HTTP/1.1\r\nHost: localhost\r\n\r\n" +
+                    "GET /fast HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n").getBytes("ASCII"));
+            out.flush();
+
+            String responses = readAll(client.getInputStream());
+            int slow = responses.indexOf("slow");
+            int fast = responses.indexOf("fast");
+            assertTrue(responses, slow != -1 && fast != -1);
+            assertTrue("Expected /slow response before /fast response:\n" + responses, slow < fast);
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void givesEachRequestOnAConnectionItsOwnIdButTheSameConnectionId() throws Exception {
+        webServer.add(new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control) {
+                response.content("[" + request.id() + "/" + request.connectionId() + "]").end();
+            }
+        }).start().get();
+
+        Socket client = new Socket(InetAddress.getLocalHost(), 59504);
+        try {
+            OutputStream out = client.getOutputStream();
+            out.write(("" +
+                    "GET /first HTTP/1.1\r\nHost: localhost\r\n\r\n" +
+                    "GET /second HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n").getBytes("ASCII"));
+            out.flush();
+
+            Matcher ids = Pattern.compile("\\[(\\d+)/(\\d+)\\]").matcher(readAll(client.getInputStream()));
+            assertTrue(ids.find());
+            String firstId = ids.group(1);
+            String connectionId = ids.group(2);
+            assertTrue(ids.find());
+            assertFalse(firstId.equals(ids.group(1)));
+            assertEquals(connectionId, ids.group(2));
+        } finally {
+            client.close();
+        }
+    }
+
+    private String readAll(InputStream in) throws IOException {
+        StringBuilder result = new StringBuilder();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            result.append(new String(buffer, 0, read, "ASCII"));
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,124 @@
+package org.webbitserver.netty;
+
+import org.junit.After;
+import org.junit.Test;
+import org.webbitserver.HttpControl;
+import org.webbitserver.HttpHandler;
+import org.webbitserver.HttpRequest;
+import org.webbitserver.HttpRequest.Phase;
+import org.webbitserver.HttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RequestTimingTest {
+    private final NettyWebServer webServer = new NettyWebServer(59504);
+    private final BlockingQueue<HttpRequest> requests = new LinkedBlockingQueue<HttpRequest>();
+
+    @After
+    public void die() throws Exception {
+        webServer.stop().get();
+    }
+
+    @Test
+    public void timesEachRequestOnAKeepAliveConnectionFromWhenItArrived() throws Exception {
+        webServer.enableMetrics().add(new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control) {
+                requests.add(request);
+                response.content("ok").end();
+            }
+        }).start().get();
+
+        Socket client = new Socket(InetAddress.getLocalHost(), 59504);
+        try {
+            client.setSoTimeout(10000);
+            OutputStream out = client.getOutputStream();
+            InputStream in = client.getInputStream();
+            out.write("GET /first HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes("ASCII"));
+            out.flush();
+            readUntil(in, "ok");
+            HttpRequest first = requests.poll(5, TimeUnit.SECONDS);
+
+            Thread.sleep(100);
+            out.write("GET /second HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes("ASCII"));
+            out.flush();
+            readUntil(in, "ok");
+            HttpRequest second = requests.poll(5, TimeUnit.SECONDS);
+
+            assertTrue(second.startNanos() - first.startNanos() >= TimeUnit.MILLISECONDS.toNanos(100));
+            assertTrue(second.timestamp() - first.timestamp() >= 90);
+            assertPhasesInOrder(first);
+            assertPhasesInOrder(second);
+            assertEquals(2, webServer.metrics().dispatchDelay().count());
+            for (int i = 0; i < 100 && webServer.metrics().flushLatency().count() < 2; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, webServer.metrics().flushLatency().count());
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void timesTheLastByteFromTheFinalWriteOfAResponseWrittenInPieces() throws Exception {
+        webServer.enableMetrics().add(new HttpHandler() {
+            @Override
+            public void handleHttpRequest(HttpRequest request, HttpResponse response, HttpControl control) throws Exception {
+                requests.add(request);
+                response.write("one");
+                Thread.sleep(100);
+                response.write("two");
+                response.end();
+            }
+        }).start().get();
+
+        Socket client = new Socket(InetAddress.getLocalHost(), 59504);
+        try {
+            client.setSoTimeout(10000);
+            OutputStream out = client.getOutputStream();
+            out.write("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes("ASCII"));
+            out.flush();
+            readUntil(client.getInputStream(), "Content-Length: 0\r\n\r\n");
+            HttpRequest request = requests.poll(5, TimeUnit.SECONDS);
+
+            assertPhasesInOrder(request);
+            assertTrue(request.phaseNanos(Phase.LAST_BYTE_FLUSHED) - request.phaseNanos(Phase.FIRST_BYTE_WRITTEN)
+                    >= TimeUnit.MILLISECONDS.toNanos(100));
+            Thread.sleep(100);
+            assertEquals(1, webServer.metrics().flushLatency().count());
+        } finally {
+            client.close();
+        }
+    }
+
+    private void assertPhasesInOrder(HttpRequest request) throws InterruptedException {
+        // The response may reach the client before the server hears that the write is done.
+        for (int i = 0; i < 100 && request.phaseNanos(Phase.LAST_BYTE_FLUSHED) == -1; i++) {
+            Thread.sleep(10);
+        }
+        long previous = 0;
+        for (Phase phase : Phase.values()) {
+            long nanos = request.phaseNanos(phase);
+            assertTrue(phase + " at " + nanos + " before " + previous, nanos >= previous);
+            previous = nanos;
+        }
+    }
+
+    private void readUntil(InputStream in, String end) throws IOException {
+        StringBuilder result = new StringBuilder();
+        int c;
+        while (!result.toString().endsWith(end) && (c = in.read()) != -1) {
+            result.append((char) c);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package org.webbitserver.netty;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.jboss.netty.buffer.ChannelBuffers.wrappedBuffer;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.OK;
+import static org.jboss.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseCompressorTest {
+    private static final String TEXT = "All work and no play makes Jack a dull boy. All work and no play makes Jack a dull boy.";
+
+    @Test
+    public void picksTheCodingTheClientPrefers() {
+        assertEquals("gzip", ResponseCompressor.coding("gzip, deflate"));
+        assertEquals("gzip", ResponseCompressor.coding("deflate, gzip"));
+        assertEquals("deflate", ResponseCompressor.coding("gzip;q=0.5, deflate"));
+        assertEquals("deflate", ResponseCompressor.coding("gzip;q=0, *"));
+        assertEquals("gzip", ResponseCompressor.coding("*"));
+        assertNull(ResponseCompressor.coding("identity"));
+        assertNull(ResponseCompressor.coding("*;q=0"));
+        assertNull(ResponseCompressor.coding(null));
+    }
+
+    @Test
+    public void gzipsAndDeflatesReusingEachThreadsDeflaters() throws IOException {
+        ResponseCompressor compressor = new ResponseCompressor(new CompressionPolicy().reuseDeflaters(true).level(9));
+        for (int i = 0; i < 3; i++) {
+            HttpResponse response = response("text/plain; charset=UTF-8");
+            ChannelBuffer gzipped = compressor.compress("gzip", response, wrappedBuffer(TEXT.getBytes("UTF-8")));
+            assertEquals("gzip", response.getHeader("Content-Encoding"));
+            assertEquals("Accept-Encoding", response.getHeader("Vary"));
+            assertEquals(TEXT, read(new GZIPInputStream(new ByteArrayInputStream(bytes(gzipped)))));
+
+            response = response("text/plain");
+            ChannelBuffer deflated = compressor.compress("deflate", response, wrappedBuffer(TEXT.getBytes("UTF-8")));
+            assertEquals("deflate", response.getHeader("Content-Encoding"));
+            assertEquals(TEXT, read(new InflaterInputStream(new ByteArrayInputStream(bytes(deflated)))));
+        }
+    }
+
+    @Test
+    public void leavesSmallAndAlreadyCompressedContentAlone() throws IOException {
+        ResponseCompressor compressor = new ResponseCompressor(new CompressionPolicy().minimumSize(TEXT.length() + 1));
+        ChannelBuffer content = wrappedBuffer(TEXT.getBytes("UTF-8"));
+        HttpResponse response = response("text/plain");
+        assertSame(content, compressor.compress("gzip", response, content));
+        assertFalse(response.containsHeader("Content-Encoding"));
+
+        compressor = new ResponseCompressor(new CompressionPolicy());
+        response = response("image/png");
+        assertSame(content, compressor.compress("gzip", response, content));
+        assertFalse(response.containsHeader("Vary"));
+    }
+
+    @Test
+    public void filtersByContentType() {
+        ResponseCompressor compressor = new ResponseCompressor(new CompressionPolicy()
+                .allow("text/*", "application/json")
+                .deny("text/csv"));
+        assertTrue(compressor.compressible("text/html; charset=UTF-8"));
+        assertTrue(compressor.compressible("Application/JSON"));
+        assertFalse(compressor.compressible("text/csv"));
+        assertFalse(compressor.compressible("application/octet-stream"));
+        assertFalse(compressor.compressible(null));
+
+        compressor = new ResponseCompressor(new CompressionPolicy().allow("image/png"));
+        assertTrue(compressor.compressible("image/png"));
+        assertFalse(compressor.compressible("image/jpeg"));
+    }
+
+    private HttpResponse response(String contentType) {
+        HttpResponse response = new DefaultHttpResponse(HTTP_1_1, OK);
+        response.setHeader("Content-Type", contentType);
+        return response;
+    }
+
+    private byte[] bytes(ChannelBuffer buffer) {
+        byte[] bytes = new byte[buffer.readableBytes()];
+        buffer.getBytes(buffer.readerIndex(), bytes);
+        return bytes;
+    }
+
+    private String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toString("UTF-8");
+    }
+}
@@ -0,0 +1,77 @@
+package org.webbitserver.netty;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.DefaultChannelConfig;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
+import org.jboss.netty.util.CharsetUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.NOT_FOUND;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.OK;
+import static org.jboss.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SingleBufferHttpResponseEncoderTest {
+    private final Channel channel = mock(Channel.class);
+
+    @Before
+    public void setUp() {
+        when(channel.getConfig()).thenReturn(new DefaultChannelConfig());
+    }
+
+    @Test
+    public void encodesLikeNettyInOneBuffer() throws Exception {
+        HttpResponse response = new DefaultHttpResponse(HTTP_1_1, NOT_FOUND);
+        response.addHeader("Server", "Webbit");
+        response.addHeader("Set-Cookie", "a=1");
+        response.addHeader("Set-Cookie", "b=2");
+        response.addHeader("X-Odd", "café");
+        response.setContent(ChannelBuffers.copiedBuffer("Not found", CharsetUtil.UTF_8));
+
+        ChannelBuffer encoded = (ChannelBuffer) new SingleBufferHttpResponseEncoder().encode(null, channel, response);
+        assertTrue(encoded.hasArray());
+        assertSameBytes(nettyEncoding(response), encoded);
+    }
+
+    @Test
+    public void encodesResponseWithoutContent() throws Exception {
+        HttpResponse response = new DefaultHttpResponse(HTTP_1_1, OK);
+        response.addHeader("Content-Length", 0);
+
+        ChannelBuffer encoded = (ChannelBuffer) new SingleBufferHttpResponseEncoder().encode(null, channel, response);
+        assertEquals("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n", encoded.toString(CharsetUtil.US_ASCII));
+    }
+
+    @Test
+    public void leavesLargeContentWhereItIs() throws Exception {
+        HttpResponse response = new DefaultHttpResponse(HTTP_1_1, OK);
+        byte[] content = new byte[100000];
+        Arrays.fill(content, (byte) 'x');
+        response.setContent(ChannelBuffers.wrappedBuffer(content));
+
+        ChannelBuffer encoded = (ChannelBuffer) new SingleBufferHttpResponseEncoder().encode(null, channel, response);
+        assertSameBytes(nettyEncoding(response), encoded);
+    }
+
+    private ChannelBuffer nettyEncoding(HttpResponse response) throws Exception {
+        return (ChannelBuffer) new HttpResponseEncoder() {
+            Object encode(HttpResponse response) throws Exception {
+                return super.encode(null, channel, response);
+            }
+        }.encode(response);
+    }
+
+    private static void assertSameBytes(ChannelBuffer expected, ChannelBuffer actual) {
+        assertEquals(expected.toString(CharsetUtil.ISO_8859_1), actual.toString(CharsetUtil.ISO_8859_1));
+    }
+}
@@ -0,0 +1,128 @@
+package org.webbitserver.netty;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.After;
+import org.junit.Test;
+import org.webbitserver.WebServer;
+import org.webbitserver.handler.StringHttpHandler;
+import org.webbitserver.helpers.SniConfig;
+import org.webbitserver.helpers.SslConfig;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.webbitserver.WebServers.createWebServer;
+
+public class SniTest {
+
+    private final WebServer webServer = createWebServer(59504);
+    private final List<String> handshakes = new CopyOnWriteArrayList<String>();
+
+    @After
+    public void die() throws InterruptedException, ExecutionException {
+        webServer.stop().get();
+    }
+
+    @Test
+    public void readsServerNameFromClientHello() throws Exception {
+        SSLEngine client = trustingClientContext().createSSLEngine("www.example.com", 443);
+        client.setUseClientMode(true);
+        ByteBuffer clientHello = ByteBuffer.allocate(client.getSession().getPacketBufferSize());
+        client.wrap(ByteBuffer.allocate(0), clientHello);
+        clientHello.flip();
+
+        assertEquals("www.example.com", SniHandler.serverName(ChannelBuffers.wrappedBuffer(clientHello), 5, clientHello.remaining() - 5));
+    }
+
+    @Test
+    public void ignoresTruncatedClientHello() throws Exception {
+        assertNull(SniHandler.serverName(ChannelBuffers.wrappedBuffer(new byte[]{1, 0, 0, 40, 3, 3}), 0, 6));
+    }
+
+    @Test
+    public void choosesCertificateByServerNameAndPicksUpReplacements() throws Exception {
+        SniConfig sniConfig = new SniConfig(sslConfig("default"))
+                .host("a.example.com", sslConfig("a"))
+                .host("*.b.example.com", sslConfig("b"));
+        webServer.setupSsl(sniConfig).add(new StringHttpHandler("text/plain", "body")).start().get();
+
+        handshake("a.example.com");
+        handshake("x.b.example.com");
+        handshake("unknown.example.com");
+        sniConfig.host("a.example.com", sslConfig("a-renewed"));
+        handshake("a.example.com");
+
+        assertEquals(asList("a", "b", "default", "a-renewed"), handshakes);
+    }
+
+    @Test
+    public void closesConnectionWhenNoCertificateMatches() throws Exception {
+        webServer.setupSsl(new SniConfig().host("a.example.com", sslConfig("a"))).start().get();
+
+        try {
+            handshake("unknown.example.com");
+            fail("handshake should have failed");
+        } catch (IOException expected) {
+        }
+        handshake("a.example.com");
+        assertEquals(asList("a"), handshakes);
+    }
+
+    private void handshake(String hostName) throws Exception {
+        Socket plain = new Socket(InetAddress.getLocalHost(), 59504);
+        SSLSocket socket = (SSLSocket) trustingClientContext().getSocketFactory().createSocket(plain, hostName, 59504, true);
+        try {
+            socket.setSoTimeout(10000);
+            socket.startHandshake();
+        } finally {
+            socket.close();
+        }
+    }
+
+    private SslConfig sslConfig(final String name) throws IOException {
+        InputStream keyStore = getClass().getResourceAsStream("/ssl/keystore");
+        try {
+            return new SslConfig(keyStore, "webbit", "webbit").engineFactory(new SslConfig.EngineFactory() {
+                @Override
+                public SSLEngine createSSLEngine(SSLContext sslContext) {
+                    handshakes.add(name);
+                    return sslContext.createSSLEngine();
+                }
+            });
+        } finally {
+            keyStore.close();
+        }
+    }
+
+    private static SSLContext trustingClientContext() throws Exception {
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, new TrustManager[]{new X509TrustManager() {
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+
+            public void checkClientTrusted(X509Certificate[] certs, String authType) {
+            }
+
+            public void checkServerTrusted(X509Certificate[] certs, String authType) {
+            }
+        }}, null);
+        return context;
+    }
+}
@@ -13,6 +13,7 @@ import java.util.Map;
 import java.util.Set;
 
 import org.junit.Test;
+import org.webbitserver.HttpRequest;
 
 public class StubHttpRequestTest {
 
@@ -50,6 +51,28 @@ public class StubHttpRequestTest {
 		assertEquals(expected, target.allHeaders());
 	}
 
+	@Test
+	public void testVisitHeaders() throws Exception {
+		StubHttpRequest target = new StubHttpRequest()
+				.header("Host", "example.com")
+				.header("Cookie", "a=1")
+				.header("Accept", "*/*");
+
+		final List<String> visited = new ArrayList<String>();
+		target.visitHeaders(new HttpRequest.HeaderVisitor() {
+			@Override
+			public boolean header(String name, String value) {
+				visited.add(name + "=" + value);
+				return !name.equals("Cookie");
+			}
+		});
+
+		List<String> expected = new ArrayList<String>();
+		expected.add("Host=example.com");
+		expected.add("Cookie=a=1");
+		assertEquals(expected, visited);
+	}
+
 	@Test
 	public void testQueryParam() throws Exception {
 		StubHttpRequest target = new StubHttpRequest();
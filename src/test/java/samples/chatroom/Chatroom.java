@@ -3,10 +3,7 @@ package samples.chatroom;
 import com.google.gson.Gson;
 import org.webbitserver.BaseWebSocketHandler;
 import org.webbitserver.WebSocketConnection;
-import org.webbitserver.WebSocketHandler;
-
-import java.util.HashSet;
-import java.util.Set;
+import org.webbitserver.helpers.PubSubHub;
 
 public class Chatroom extends BaseWebSocketHandler {
 
@@ -14,6 +11,8 @@ public class Chatroom extends BaseWebSocketHandler {
 
     public static final String USERNAME_KEY = "username";
 
+    private static final String ROOM = "chatroom";
+
     static class Incoming {
         enum Action {LOGIN, SAY}
 
@@ -30,12 +29,7 @@ public class Chatroom extends BaseWebSocketHandler {
         String message;
     }
 
-    private Set<WebSocketConnection> connections = new HashSet<WebSocketConnection>();
-
-    @Override
-    public void onOpen(WebSocketConnection connection) throws Exception {
-        connections.add(connection);
-    }
+    private final PubSubHub hub = new PubSubHub();
 
     @Override
     public void onMessage(WebSocketConnection connection, String msg) throws Exception {
@@ -52,6 +46,7 @@ public class Chatroom extends BaseWebSocketHandler {
 
     private void login(WebSocketConnection connection, String username) {
         connection.data(USERNAME_KEY, username); // associate username with connection
+        hub.subscribe(ROOM, connection); // only broadcast to those who have completed login
 
         Outgoing outgoing = new Outgoing();
         outgoing.action = Outgoing.Action.JOIN;
@@ -71,16 +66,12 @@ public class Chatroom extends BaseWebSocketHandler {
     }
 
     private void broadcast(Outgoing outgoing) {
-        String jsonStr = this.json.toJson(outgoing);
-        for (WebSocketConnection connection : connections) {
-            if (connection.data(USERNAME_KEY) != null) { // only broadcast to those who have completed login
-                connection.send(jsonStr);
-            }
-        }
+        hub.publish(ROOM, json.toJson(outgoing));
     }
 
     @Override
     public void onClose(WebSocketConnection connection) throws Exception {
+        hub.unsubscribeAll(connection);
         String username = (String) connection.data(USERNAME_KEY);
         if (username != null) {
             Outgoing outgoing = new Outgoing();
@@ -88,6 +79,5 @@ public class Chatroom extends BaseWebSocketHandler {
             outgoing.username = username;
             broadcast(outgoing);
         }
-        connections.remove(connection);
     }
 }
@@ -5,10 +5,9 @@ import org.webbitserver.EventSourceHandler;
 import org.webbitserver.EventSourceMessage;
 import org.webbitserver.WebServer;
 import org.webbitserver.handler.EmbeddedResourceHandler;
+import org.webbitserver.helpers.PubSubHub;
 
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 
@@ -18,17 +17,19 @@ import static org.webbitserver.WebServers.createWebServer;
 
 public class Main {
     public static class Pusher {
-        private List<EventSourceConnection> connections = new ArrayList<EventSourceConnection>();
+        private static final String TOPIC = "time";
+
+        private final PubSubHub hub = new PubSubHub();
         private int count = 1;
 
         public void addConnection(EventSourceConnection connection) {
             connection.data("id", count++);
-            connections.add(connection);
+            hub.subscribe(TOPIC, connection);
             broadcast("Client " + connection.data("id") + " joined");
         }
 
         public void removeConnection(EventSourceConnection connection) {
-            connections.remove(connection);
+            hub.unsubscribeAll(connection);
             broadcast("Client " + connection.data("id") + " left");
         }
 
@@ -45,9 +46,7 @@ public class Main {
         }
 
         private void broadcast(String message) {
-            for (EventSourceConnection connection : connections) {
-                connection.send(new EventSourceMessage(message));
-            }
+            hub.publish(TOPIC, new EventSourceMessage(message));
         }
     }
 